@@ -0,0 +1,122 @@
+package net.lobby_simulator_companion.loop;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two sets of JMH results (as written with "-rf json"), typically from two different releases,
+ * and fails if any benchmark got worse than the given threshold.
+ * <p>
+ * Usage: BenchmarkComparator &lt;baseline.json&gt; &lt;current.json&gt; [threshold]
+ * <p>
+ * The threshold is a ratio (0.10 means 10%). Scores are compared according to their mode: higher is better
+ * for throughput, and lower is better for the rest (average time, single shot, etc.).
+ * Differences within the error margins of both measurements are not considered regressions.
+ *
+ * @author NickyRamone
+ */
+public final class BenchmarkComparator {
+
+    private static final double DEFAULT_THRESHOLD = 0.10;
+
+    private static final class Result {
+        String mode;
+        double score;
+        double error;
+        String unit;
+    }
+
+
+    private BenchmarkComparator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args[0].isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Usage: BenchmarkComparator <baseline.json> <current.json> [threshold]");
+        }
+
+        Map<String, Result> baseline = readResults(Paths.get(args[0]));
+        Map<String, Result> current = readResults(Paths.get(args[1]));
+        double threshold = args.length > 2 && !args[2].isEmpty() ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        int regressions = 0;
+
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Result> entry : new TreeMap<>(current).entrySet()) {
+            Result newResult = entry.getValue();
+            Result oldResult = baseline.get(entry.getKey());
+
+            if (oldResult == null || !oldResult.unit.equals(newResult.unit)) {
+                System.out.printf("%-90s %14s %14.3f %9s%n", entry.getKey(), "-", newResult.score, "new");
+                continue;
+            }
+
+            double change = (newResult.score - oldResult.score) / oldResult.score;
+            double worsening = "thrpt".equals(newResult.mode) ? -change : change;
+            boolean significant = Math.abs(newResult.score - oldResult.score) > oldResult.error + newResult.error;
+            boolean regression = worsening > threshold && significant;
+            if (regression) {
+                regressions++;
+            }
+
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), oldResult.score,
+                    newResult.score, change * 100, newResult.unit, regression ? "  <-- REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            throw new IllegalStateException(String.format("%d benchmark(s) regressed more than %.0f%%.",
+                    regressions, threshold * 100));
+        }
+    }
+
+    private static Map<String, Result> readResults(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        JsonArray benchmarks;
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            benchmarks = new JsonParser().parse(reader).getAsJsonArray();
+        }
+
+        for (JsonElement element : benchmarks) {
+            JsonObject benchmark = element.getAsJsonObject();
+            JsonObject metric = benchmark.getAsJsonObject("primaryMetric");
+            Result result = new Result();
+            result.mode = benchmark.get("mode").getAsString();
+            result.score = metric.get("score").getAsDouble();
+            result.error = metric.get("scoreError").isJsonPrimitive()
+                    && metric.get("scoreError").getAsJsonPrimitive().isNumber()
+                    ? metric.get("scoreError").getAsDouble() : 0;
+            result.unit = metric.get("scoreUnit").getAsString();
+
+            StringBuilder key = new StringBuilder(benchmark.get("benchmark").getAsString());
+            JsonObject params = benchmark.getAsJsonObject("params");
+            if (params != null) {
+                new TreeMap<>(toStringMap(params)).forEach((name, value) ->
+                        key.append(':').append(name).append('=').append(value));
+            }
+            results.put(key.toString(), result);
+        }
+
+        return results;
+    }
+
+    private static Map<String, String> toStringMap(JsonObject object) {
+        Map<String, String> map = new LinkedHashMap<>();
+        object.entrySet().forEach(e -> map.put(e.getKey(), e.getValue().getAsString()));
+
+        return map;
+    }
+
+}
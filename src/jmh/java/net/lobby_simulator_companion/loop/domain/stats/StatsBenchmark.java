@@ -0,0 +1,73 @@
+package net.lobby_simulator_companion.loop.domain.stats;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import net.lobby_simulator_companion.loop.domain.RealmMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the stats operations that run on every game session: incrementing all the periods at once, and
+ * cloning the whole set (as done when taking a snapshot for display or storage).
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatsBenchmark {
+
+    private static final Killer[] KILLERS = Killer.values();
+    private static final RealmMap[] REALM_MAPS = RealmMap.values();
+
+    private Stats stats;
+    private int counter;
+
+
+    @Setup
+    public void setUp() {
+        stats = new Stats();
+
+        // populate every killer and map, so that clones carry realistic maps
+        for (Killer killer : KILLERS) {
+            for (RealmMap realmMap : REALM_MAPS) {
+                stats.incrementMatchesPlayed(killer, realmMap);
+                stats.incrementSecondsPlayed(600, killer, realmMap);
+                stats.incrementEscapes(killer, realmMap);
+            }
+        }
+    }
+
+    @Benchmark
+    public Stats incrementMatch() {
+        int i = counter++;
+        Killer killer = KILLERS[i % KILLERS.length];
+        RealmMap realmMap = REALM_MAPS[i % REALM_MAPS.length];
+        stats.incrementLobbiesFound();
+        stats.incrementSecondsInQueue(30);
+        stats.incrementSecondsWaited(90);
+        stats.incrementMatchesPlayed(killer, realmMap);
+        stats.incrementSecondsPlayed(600, killer, realmMap);
+        stats.incrementEscapes(killer, realmMap);
+
+        return stats;
+    }
+
+    @Benchmark
+    public Stats cloneStats() {
+        return stats.clone();
+    }
+
+}
@@ -0,0 +1,138 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.Killer;
+import net.lobby_simulator_companion.loop.domain.LoopData;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.RealmMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load and save the whole app data with the {@link LoopRepository} (either as encrypted JSON, like the app
+ * does by default, or in the binary format), for different amounts of stored players; and to save a change to a
+ * single player.
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LoopRepositoryBenchmark {
+
+    private static final long FIRST_STEAM_ID = 76561197960265728L;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int players;
+
+    @Param({"json", "binary"})
+    private String format;
+
+    private Path storageDir;
+    private LoopRepository repository;
+    private LoopData loopData;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("loop-bench_");
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.toString());
+        properties.setProperty("storage.file", "loop.dat");
+        properties.setProperty("storage.file.legacy", "loop.hosts.dat");
+        properties.setProperty("storage.read.encrypted", "true");
+        properties.setProperty("storage.write.encrypted", "true");
+        properties.setProperty("storage.format", format);
+        repository = new LoopRepository(new AppProperties(properties));
+
+        loopData = new LoopData();
+        loopData.addPlayers(generatePlayers(players));
+        loopData.getStats().incrementMatchesPlayed(Killer.NURSE, RealmMap.UNIDENTIFIED);
+        repository.save(loopData);
+        System.out.printf("%n%s file with %d players: %d bytes%n", format, players, repository.getSnapshotSize());
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : storageDir.toFile().listFiles()) {
+            file.delete();
+        }
+        storageDir.toFile().delete();
+    }
+
+    private static List<Player> generatePlayers(int count) {
+        Random random = new Random(42);
+        List<Player> result = new ArrayList<>(count);
+        Player.Rating[] ratings = Player.Rating.values();
+
+        for (int i = 0; i < count; i++) {
+            Player player = new Player();
+            player.setSteamId64(String.valueOf(FIRST_STEAM_ID + i));
+            player.setDbdPlayerId(new UUID(random.nextLong(), random.nextLong()).toString());
+            player.addName("player" + i);
+            if (random.nextInt(4) == 0) {
+                player.addName("alias" + random.nextInt(count));
+            }
+            player.setRating(ratings[random.nextInt(ratings.length)]);
+            if (random.nextInt(10) == 0) {
+                player.setDescription("Camps and tunnels. Avoid this one at all costs.");
+            }
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                player.incrementTimesEncountered();
+                player.incrementMatchesPlayed();
+                player.incrementSecondsPlayed(random.nextInt(900));
+            }
+            result.add(player);
+        }
+
+        return result;
+    }
+
+
+    @Benchmark
+    public LoopData load() throws IOException {
+        return repository.load();
+    }
+
+    @Benchmark
+    public LoopData save() throws IOException {
+        repository.save(loopData);
+
+        return loopData;
+    }
+
+    @Benchmark
+    public Player saveChange() throws IOException {
+        Player player = loopData.getPlayer(String.valueOf(FIRST_STEAM_ID));
+        player.incrementTimesEncountered();
+        repository.saveChanges(Collections.singletonList(player), null);
+
+        return player;
+    }
+
+}
@@ -0,0 +1,101 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to open the {@link PlayerRepository} (which is what it costs at startup) and to look up a player,
+ * for different amounts of stored players.
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PlayerRepositoryBenchmark {
+
+    private static final long FIRST_STEAM_ID = 76561197960265728L;
+    private static final int PLAYERS_PER_SAVE = 10000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int players;
+
+    private Path storageDir;
+    private AppProperties properties;
+    private PlayerRepository repository;
+    private final Random random = new Random(42);
+
+
+    @Setup
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("loop-bench_");
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.toString());
+        properties.setProperty("storage.file", "loop.dat");
+        this.properties = new AppProperties(properties);
+
+        repository = new PlayerRepository(this.properties);
+        List<Player> batch = new ArrayList<>(PLAYERS_PER_SAVE);
+        for (int i = 0; i < players; i++) {
+            Player player = new Player();
+            player.setSteamId64(String.valueOf(FIRST_STEAM_ID + i));
+            player.setDbdPlayerId(new UUID(random.nextLong(), random.nextLong()).toString());
+            player.addName("player" + i);
+            player.incrementTimesEncountered();
+            batch.add(player);
+            if (batch.size() == PLAYERS_PER_SAVE) {
+                repository.save(batch);
+                batch.clear();
+            }
+        }
+        repository.save(batch);
+        repository.close();
+        System.out.printf("%nPlayer data with %d players: %d bytes%n", players, repository.getDataSize());
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : storageDir.toFile().listFiles()) {
+            file.delete();
+        }
+        storageDir.toFile().delete();
+    }
+
+
+    @Benchmark
+    public PlayerRepository open() throws IOException {
+        return new PlayerRepository(properties);
+    }
+
+    @Benchmark
+    public Player find() throws IOException {
+        return repository.find(String.valueOf(FIRST_STEAM_ID + random.nextInt(players)));
+    }
+
+}
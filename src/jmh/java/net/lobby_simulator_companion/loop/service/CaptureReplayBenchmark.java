@@ -0,0 +1,106 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapNativeException;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time it takes the capture engine to go through a recorded capture, replayed as fast as possible.
+ * Dividing it by the number of packets in the file gives the sustainable packet rate.
+ * <p>
+ * It needs a capture file and the address of the host it was recorded on:
+ * <pre>
+ *   mvn -P benchmark test-compile exec:exec@run -Djmh.args="CaptureReplay -p file=lobby.pcap -p localAddr=192.168.1.10"
+ * </pre>
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureReplayBenchmark {
+
+    @Param("")
+    private String file;
+
+    @Param("192.168.1.10")
+    private String localAddr;
+
+    private final SnifferListener snifferListener = new SnifferListener() {
+        @Override
+        public void notifyMatchConnect(Connection connection) {
+        }
+
+        @Override
+        public void notifyMatchDisconnect() {
+        }
+
+        @Override
+        public void handleException(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+    private OfflineCapture capture;
+
+
+    @Setup(Level.Invocation)
+    public void setUp() throws PcapNativeException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("No capture file. Pass one with: -p file=<path>");
+        }
+        capture = OfflineCapture.open(new File(file), OfflineCapture.Pace.AS_FAST_AS_POSSIBLE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        capture.close();
+    }
+
+
+    @Benchmark
+    public long p2pReplay() throws UnknownHostException, PcapNativeException, NotOpenException {
+        return replay(CaptureEngine.Mode.P2P);
+    }
+
+    @Benchmark
+    public long dedicatedServerReplay() throws UnknownHostException, PcapNativeException, NotOpenException {
+        return replay(CaptureEngine.Mode.DEDICATED_SERVER);
+    }
+
+    @Benchmark
+    public long bothModesReplay() throws UnknownHostException, PcapNativeException, NotOpenException {
+        return replay(CaptureEngine.Mode.P2P, CaptureEngine.Mode.DEDICATED_SERVER);
+    }
+
+    private long replay(CaptureEngine.Mode... modes)
+            throws UnknownHostException, PcapNativeException, NotOpenException {
+        CaptureEngine engine = new CaptureEngine(InetAddress.getByName(localAddr), capture, modes);
+        engine.addListener(snifferListener);
+        engine.start();
+
+        return capture.getPacketCount();
+    }
+
+}
@@ -0,0 +1,162 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IllegalRawDataException;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.EtherType;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.IpVersion;
+import org.pcap4j.packet.namednumber.UdpPort;
+import org.pcap4j.util.MacAddress;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-packet cost of the capture engine, fed with synthetic raw Ethernet frames instead of a live capture.
+ * Each operation covers both sides of the packet ring: capturing the frame and processing it, with a single detector
+ * and with both (which should cost about the same).
+ * <p>
+ * For reference, it also measures what it costs pcap4j to fully decode one of those frames into packet objects
+ * (which is what the managers used to do for every captured packet).
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionManagerBenchmark {
+
+    private static final int STUN_REQUEST_PAYLOAD_SIZE = 56;
+    private static final int WIREGUARD_TRANSPORT_PAYLOAD_SIZE = 148;
+
+    private CaptureEngine p2pEngine;
+    private CaptureEngine dedicatedServerEngine;
+    private CaptureEngine combinedEngine;
+    private byte[] stunRequestFrame;
+    private byte[] serverFrame;
+
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        Inet4Address localAddr = (Inet4Address) InetAddress.getByName("192.168.1.10");
+        Inet4Address peerAddr = (Inet4Address) InetAddress.getByName("81.34.120.7");
+        Inet4Address serverAddr = (Inet4Address) InetAddress.getByName("35.159.49.240");
+        SnifferListener snifferListener = new SnifferListener() {
+            @Override
+            public void notifyMatchConnect(Connection connection) {
+            }
+
+            @Override
+            public void notifyMatchDisconnect() {
+            }
+
+            @Override
+            public void handleException(Exception e) {
+            }
+        };
+
+        // not started, so that connections never expire
+        TimingWheel timingWheel = new TimingWheel();
+        p2pEngine = new CaptureEngine(localAddr, null, timingWheel,
+                Collections.singletonList(new P2pDetector()));
+        dedicatedServerEngine = new CaptureEngine(localAddr, null, timingWheel,
+                Collections.singletonList(new DedicatedServerDetector()));
+        combinedEngine = new CaptureEngine(localAddr, null, timingWheel,
+                Arrays.asList(new P2pDetector(), new DedicatedServerDetector()));
+        stunRequestFrame = buildFrame(localAddr, 50123, peerAddr, 3478, new byte[STUN_REQUEST_PAYLOAD_SIZE]);
+
+        // the dedicated server detector needs to see the handshake first, so that it tracks the server traffic
+        byte[] handshakeInit = new byte[148];
+        handshakeInit[0] = 1;
+        byte[] handshakeFrame = buildFrame(localAddr, 50124, serverAddr, 7779, handshakeInit);
+        for (CaptureEngine engine : new CaptureEngine[]{p2pEngine, dedicatedServerEngine, combinedEngine}) {
+            engine.addListener(snifferListener);
+            engine.capturePacket(handshakeFrame);
+            engine.processPendingPackets();
+        }
+        byte[] transportData = new byte[WIREGUARD_TRANSPORT_PAYLOAD_SIZE];
+        transportData[0] = 4;
+        serverFrame = buildFrame(serverAddr, 7779, localAddr, 50124, transportData);
+    }
+
+    private static byte[] buildFrame(Inet4Address srcAddr, int srcPort, Inet4Address dstAddr, int dstPort,
+                                     byte[] payload) {
+        UdpPacket.Builder udpBuilder = new UdpPacket.Builder()
+                .srcPort(UdpPort.getInstance((short) srcPort))
+                .dstPort(UdpPort.getInstance((short) dstPort))
+                .srcAddr(srcAddr)
+                .dstAddr(dstAddr)
+                .payloadBuilder(new UnknownPacket.Builder().rawData(payload))
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+
+        IpV4Packet.Builder ipBuilder = new IpV4Packet.Builder()
+                .version(IpVersion.IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .ttl((byte) 64)
+                .protocol(IpNumber.UDP)
+                .srcAddr(srcAddr)
+                .dstAddr(dstAddr)
+                .payloadBuilder(udpBuilder)
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+
+        return new EthernetPacket.Builder()
+                .srcAddr(MacAddress.getByName("00:11:22:33:44:55"))
+                .dstAddr(MacAddress.getByName("66:77:88:99:aa:bb"))
+                .type(EtherType.IPV4)
+                .payloadBuilder(ipBuilder)
+                .paddingAtBuild(true)
+                .build()
+                .getRawData();
+    }
+
+
+    @Benchmark
+    public int p2pStunRequestFrame() {
+        p2pEngine.capturePacket(stunRequestFrame);
+        return p2pEngine.processPendingPackets();
+    }
+
+    @Benchmark
+    public int dedicatedServerTrafficFrame() {
+        dedicatedServerEngine.capturePacket(serverFrame);
+        return dedicatedServerEngine.processPendingPackets();
+    }
+
+    @Benchmark
+    public int combinedStunRequestAndServerTrafficFrames() {
+        combinedEngine.capturePacket(stunRequestFrame);
+        combinedEngine.capturePacket(serverFrame);
+        return combinedEngine.processPendingPackets();
+    }
+
+    @Benchmark
+    public Packet pcap4jDecodeFrame() throws IllegalRawDataException {
+        return EthernetPacket.newPacket(serverFrame, 0, serverFrame.length);
+    }
+
+}
@@ -0,0 +1,124 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the log read path of the {@link DbdLogMonitor} (byte-level reading, line classification,
+ * rule matching and event publishing), in lines per second.
+ * <p>
+ * The log is synthetic but realistic: mostly noise taken from actual game logs, with around one line in a
+ * thousand matching one of the rules.
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogParserBenchmark {
+
+    private static final int LINES = 200_000;
+
+    private static final String[] NOISE = {
+            "LogNet: UChannel::CleanUp: ChIndex == 0. Closing connection. [UChannel] ChIndex: 0, Closing: 0 "
+                    + "[UNetConnection] RemoteAddr: 35.159.49.240:7779, Name: IpConnection_2147482391",
+            "LogOnline: Verbose: Mirrors: [FOnlineAsyncTaskMirrorsGetQueueStatus] Successful: true, Response code: 200",
+            "LogHttp: Warning: 000001FA8AC7B1C0: request failed, libcurl error: 0 (No error)",
+            "LogAnimation: Warning: SetKeyPrefix: Invalid key name used for anim notify state track",
+            "LogBlueprintUserMessages: [BP_Menu_Lobby_C_2147470101] Refresh party members, count=4",
+            "LogTexture: Display: Building textures: T_UI_Perk_Icon_Sprint (BC7, 256X256)",
+            "LogDBDGeneral: Display: Item Cost 2000 , bloodpoints 54000 multiplier 1.000000",
+            "LogSlate: FSceneViewport::OnFocusLost() reason 2",
+            "LogOnlineSession: Verbose: Mirrors: Session:GameSession Updating session settings, bPresence: 1"
+    };
+
+    private static final String[] SIGNAL = {
+            "LogHttp: --- REQUEST: [POST https://latest.live.dbd.bhvronline.com/api/v1/queue] ---",
+            "LogNet: Browse: 35.159.49.240:7779//Game/Maps/OfflineLobby?UseDedicatedServer?GameType=0",
+            "Mirrors: [FOnlineSessionMirrors::AddSessionPlayer] Session:GameSession PlayerId:ab-cd-ef-1|76561198961125794",
+            "LogCustomization: --> CA_Head01",
+            "ProceduralLevelGeneration: InitLevel: Theme: Hospital Map: Hos_Treatment",
+            "LogLoad: LoadMap: //Game/Maps/ProceduralLevel",
+            "LogHttp: PUT https://latest.live.dbd.bhvronline.com/api/v1/softWallet/put/analytics",
+            "LogOnline: FOnlineAsyncTaskMirrorsDestroyMatch"
+    };
+
+    private Path logFile;
+    private FileChannel channel;
+    private LogLineReader reader;
+    private LineClassifier classifier;
+    private byte[] noiseLine;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("loop-bench_", ".log");
+        Random random = new Random(42);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < LINES; i++) {
+                String body = random.nextInt(1000) == 0
+                        ? SIGNAL[random.nextInt(SIGNAL.length)]
+                        : NOISE[random.nextInt(NOISE.length)];
+                writer.write(String.format("[2020.06.11-18.%02d.%02d:%03d][%3d]%s\r\n",
+                        (i / 60000) % 60, (i / 1000) % 60, i % 1000, i % 1000, body));
+            }
+        }
+
+        LogEventBus eventBus = new LogEventBus();
+        eventBus.subscribe(Runnable::run, e -> {
+        });
+        DbdLogParser parser = new DbdLogParser(eventBus::publish);
+        classifier = parser.getClassifier();
+        reader = new LogLineReader(classifier, parser);
+        channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        noiseLine = ("[2020.06.11-18.24.15:123][ 42]" + NOISE[0]).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.delete(logFile);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long readLog() throws IOException {
+        reader.reset(0);
+        while (reader.read(channel) > 0) {
+            // keep reading
+        }
+
+        return reader.getLinesRead();
+    }
+
+    @Benchmark
+    public int classifyNoiseLine() {
+        return classifier.classify(noiseLine, 0, noiseLine.length);
+    }
+
+}
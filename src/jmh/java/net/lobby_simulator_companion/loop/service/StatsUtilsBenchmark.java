@@ -0,0 +1,54 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rating a distribution of matches with {@link StatsUtils#rateDistribution}, for different amounts
+ * of buckets.
+ *
+ * @author NickyRamone
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsUtilsBenchmark {
+
+    @Param({"5", "20", "100"})
+    private int buckets;
+
+    private List<Integer> distribution;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        distribution = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            distribution.add(random.nextInt(50));
+        }
+    }
+
+    @Benchmark
+    public float rateDistribution() {
+        return StatsUtils.rateDistribution(distribution);
+    }
+
+}
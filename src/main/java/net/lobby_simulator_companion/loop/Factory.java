@@ -4,19 +4,31 @@ import net.lobby_simulator_companion.loop.config.AppProperties;
 import net.lobby_simulator_companion.loop.config.Settings;
 import net.lobby_simulator_companion.loop.repository.ExtremeIpDao;
 import net.lobby_simulator_companion.loop.repository.LoopRepository;
+import net.lobby_simulator_companion.loop.repository.PlayerRepository;
 import net.lobby_simulator_companion.loop.repository.ServerDao;
 import net.lobby_simulator_companion.loop.repository.SteamProfileDao;
+import net.lobby_simulator_companion.loop.service.CaptureEngine;
+import net.lobby_simulator_companion.loop.service.CaptureOptions;
 import net.lobby_simulator_companion.loop.service.DbdLogMonitor;
+import net.lobby_simulator_companion.loop.service.LogCheckpoint;
+import net.lobby_simulator_companion.loop.service.LogMonitorMetrics;
 import net.lobby_simulator_companion.loop.service.LoopDataService;
 import net.lobby_simulator_companion.loop.ui.DebugPanel;
 import net.lobby_simulator_companion.loop.ui.KillerPanel;
 import net.lobby_simulator_companion.loop.ui.MainWindow;
 import net.lobby_simulator_companion.loop.ui.ServerPanel;
 import net.lobby_simulator_companion.loop.ui.StatsPanel;
+import net.lobby_simulator_companion.loop.util.FileUtil;
+import org.pcap4j.core.PcapHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -107,9 +119,14 @@ public final class Factory {
                 () -> new LoopRepository(getAppProperties()));
     }
 
+    public static PlayerRepository getPlayerRepository() {
+        return getInstance(PlayerRepository.class, unchecked(
+                () -> new PlayerRepository(getAppProperties())));
+    }
+
     public static LoopDataService getLoopDataService() {
         return getInstance(LoopDataService.class, unchecked(
-                () -> new LoopDataService(getLoopRepository())));
+                () -> new LoopDataService(getLoopRepository(), getPlayerRepository(), SwingUtilities::invokeLater)));
     }
 
     public static SteamProfileDao getSteamProfileDao() {
@@ -128,16 +145,72 @@ public final class Factory {
 
 
     public static DbdLogMonitor getDbdLogMonitor() {
-        return getInstance(DbdLogMonitor.class, unchecked(() ->
-                getAppProperties().getBoolean("debug") ?
-                        new DbdLogMonitor(File.createTempFile("dbd-mock-log_", ".log"))
-                        : new DbdLogMonitor()));
+        return getInstance(DbdLogMonitor.class, unchecked(() -> {
+            DbdLogMonitor logMonitor;
+
+            if (getAppProperties().getBoolean("debug")) {
+                logMonitor = new DbdLogMonitor(File.createTempFile("dbd-mock-log_", ".log"));
+            } else {
+                LogCheckpoint checkpoint = getSettings().getBoolean("loop.feature.log_checkpoint", false) ?
+                        new LogCheckpoint(FileUtil.getLoopPath().resolve("log.checkpoint").toFile())
+                        : null;
+                logMonitor = new DbdLogMonitor(DbdLogMonitor.getDefaultLogFile(), checkpoint);
+            }
+            registerMBean(logMonitor.getMetrics(), LogMonitorMetrics.OBJECT_NAME);
+
+            return logMonitor;
+        }));
+    }
+
+    public static CaptureOptions getCaptureOptions() {
+        return getInstance(CaptureOptions.class, () -> {
+            Settings settings = getSettings();
+            return new CaptureOptions(
+                    settings.getInt("network.capture.buffer_size", CaptureOptions.DEFAULT_BUFFER_SIZE),
+                    PcapHandle.TimestampPrecision.valueOf(settings.get("network.capture.timestamp_precision",
+                            CaptureOptions.DEFAULT_TIMESTAMP_PRECISION.name())),
+                    settings.getInt("network.capture.dispatch_batch_size",
+                            CaptureOptions.DEFAULT_DISPATCH_BATCH_SIZE));
+        });
+    }
+
+    /**
+     * @return An engine capturing from the network interface of the configured address, with the configured
+     * connection mode; or null if there is no address configured or the interface can't be opened
+     * (in which case the app works without network information).
+     */
+    public static CaptureEngine getCaptureEngine() {
+        return getInstance(CaptureEngine.class, () -> {
+            Settings settings = getSettings();
+            String localAddress = settings.get("network.interface.address", "");
+            if (localAddress.isEmpty()) {
+                logger.info("No network interface address configured. Packet capture is disabled.");
+                return null;
+            }
+            try {
+                CaptureEngine.Mode mode = CaptureEngine.Mode.valueOf(
+                        settings.get("network.capture.mode", CaptureEngine.Mode.DEDICATED_SERVER.name()));
+                return new CaptureEngine(InetAddress.getByName(localAddress), getCaptureOptions(), mode);
+            } catch (Exception | LinkageError e) {
+                logger.error("Failed to open the network interface for {}. Packet capture is disabled.",
+                        localAddress, e);
+                return null;
+            }
+        });
+    }
+
+    private static void registerMBean(Object mBean, String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mBean, new ObjectName(objectName));
+        } catch (JMException e) {
+            logger.warn("Failed to register MBean {}.", objectName, e);
+        }
     }
 
     public static MainWindow getMainWindow() {
         return getInstance(MainWindow.class, () ->
                 new MainWindow(getSettings(), getAppProperties(), getDbdLogMonitor(), getLoopDataService(),
-                        getServerPanel(), getKillerPanel(), getStatsPanel()));
+                        getCaptureEngine(), getServerPanel(), getKillerPanel(), getStatsPanel()));
     }
 
     public static ServerPanel getServerPanel() {
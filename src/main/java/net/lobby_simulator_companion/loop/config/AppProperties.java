@@ -31,6 +31,14 @@ public class AppProperties {
         logger.info("App version: {}", properties.getProperty("app.version"));
     }
 
+    /**
+     * Uses the given properties as they are, without loading the bundled ones nor resolving the app home.
+     * Useful for running components in isolation (for example, in benchmarks).
+     */
+    public AppProperties(Properties properties) {
+        this.properties = properties;
+    }
+
     public String get(String key) {
         return (String) properties.get(key);
     }
@@ -13,23 +13,28 @@ public class Connection {
     private final int remotePort;
     private final long created;
     private long lastSeen;
+    private final TrafficCounters traffic;
 
     public Connection(InetAddress localAddr, int localPort, InetAddress remoteAddr, int remotePort) {
-        this.localAddr = localAddr;
-        this.localPort = localPort;
-        this.remoteAddr = remoteAddr;
-        this.remotePort = remotePort;
-        this.created = System.currentTimeMillis();
-        this.lastSeen = created;
+        this(localAddr, localPort, remoteAddr, remotePort, System.currentTimeMillis());
     }
 
     public Connection(InetAddress localAddr, int localPort, InetAddress remoteAddr, int remotePort, long created) {
+        this(localAddr, localPort, remoteAddr, remotePort, created, new TrafficCounters());
+    }
+
+    /**
+     * @param traffic Counters of the connection, in case they are kept elsewhere.
+     */
+    public Connection(InetAddress localAddr, int localPort, InetAddress remoteAddr, int remotePort, long created,
+                      TrafficCounters traffic) {
         this.localAddr = localAddr;
         this.localPort = localPort;
         this.remoteAddr = remoteAddr;
         this.remotePort = remotePort;
         this.created = created;
         this.lastSeen = created;
+        this.traffic = traffic;
     }
 
 
@@ -61,6 +66,10 @@ public class Connection {
         this.lastSeen = lastSeen;
     }
 
+    public TrafficCounters getTraffic() {
+        return traffic;
+    }
+
     @Override
     public String toString() {
         return "Connection{" +
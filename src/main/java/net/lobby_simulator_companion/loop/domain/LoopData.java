@@ -1,37 +1,123 @@
 package net.lobby_simulator_companion.loop.domain;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import net.lobby_simulator_companion.loop.domain.stats.Stats;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Container class for the app stored data.
+ * <p>
+ * Players are indexed by their Steam id (or by their legacy UID, if they don't have one yet). They are only found
+ * here when reading the data saved by older versions; players are now stored on their own, and read when needed.
  *
  * @author NickyRamone
  */
 public class LoopData {
 
-    private final int version = 3;
-    private final List<Player> players = new ArrayList<>();
-    private final Stats stats = new Stats();
+    private static final int VERSION = 3;
 
+    private final Map<String, Player> players;
+    private Stats stats = new Stats();
+
+
+    public LoopData() {
+        players = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param expectedPlayers Number of players about to be added (so that the index doesn't need to grow meanwhile).
+     */
+    public LoopData(int expectedPlayers) {
+        players = new ConcurrentHashMap<>(expectedPlayers);
+    }
 
     public int getVersion() {
-        return version;
+        return VERSION;
     }
 
-    public List<Player> getPlayers() {
-        return players;
+    public Collection<Player> getPlayers() {
+        return players.values();
+    }
+
+    public Player getPlayer(String steamId) {
+        return players.get(steamId);
+    }
+
+    /**
+     * Adds the player, replacing any other one with the same id.
+     */
+    public void addPlayer(Player player) {
+        players.put(getKey(player), player);
     }
 
     public void addPlayers(Collection<Player> players) {
-        this.players.addAll(players);
+        players.forEach(this::addPlayer);
+    }
+
+    private static String getKey(Player player) {
+        return player.getSteamId64() != null ? player.getSteamId64() : player.getUID();
     }
 
     public Stats getStats() {
         return stats;
     }
 
+
+    /**
+     * Reads and writes the data as JSON, streaming the players straight from and into the index (without
+     * reflection, nor intermediate lists).
+     */
+    public static final class Adapter extends TypeAdapter<LoopData> {
+
+        private final Player.Adapter playerAdapter = new Player.Adapter();
+        private final Stats.Adapter statsAdapter = new Stats.Adapter();
+
+
+        @Override
+        public void write(JsonWriter out, LoopData loopData) throws IOException {
+            out.beginObject();
+            out.name("version").value(VERSION);
+            out.name("players").beginArray();
+            for (Player player : loopData.players.values()) {
+                playerAdapter.write(out, player);
+            }
+            out.endArray();
+            out.name("stats");
+            statsAdapter.write(out, loopData.stats);
+            out.endObject();
+        }
+
+        @Override
+        public LoopData read(JsonReader in) throws IOException {
+            LoopData loopData = new LoopData();
+            in.beginObject();
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "players":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            loopData.addPlayer(playerAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    case "stats":
+                        loopData.stats = statsAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return loopData;
+        }
+    }
+
 }
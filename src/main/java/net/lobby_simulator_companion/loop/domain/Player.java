@@ -1,22 +1,58 @@
 package net.lobby_simulator_companion.loop.domain;
 
-import com.google.gson.annotations.SerializedName;
-
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
+
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 
 public class Player implements Serializable, Cloneable {
 
     public enum Rating {
-        @SerializedName("-1") THUMBS_DOWN,
-        @SerializedName("0") UNRATED,
-        @SerializedName("1") THUMBS_UP
+        THUMBS_DOWN("-1"),
+        UNRATED("0"),
+        THUMBS_UP("1");
+
+        /**
+         * How it's stored.
+         */
+        private final String code;
+
+        Rating(String code) {
+            this.code = code;
+        }
+
+        static Rating fromCode(String code) {
+            for (Rating rating : values()) {
+                if (rating.code.equals(code)) {
+                    return rating;
+                }
+            }
+
+            return UNRATED;
+        }
     }
 
     private static final int MAX_NAMES_STORED = 5;
 
+    /**
+     * Flags of the binary form, telling which fields are present and how they are stored.
+     */
+    private static final int BINARY_FLAG__STEAM_ID_AS_LONG = 1;
+    private static final int BINARY_FLAG__STEAM_ID_AS_STRING = 1 << 1;
+    private static final int BINARY_FLAG__UID = 1 << 2;
+    private static final int BINARY_FLAG__DBD_ID_AS_UUID = 1 << 3;
+    private static final int BINARY_FLAG__DBD_ID_AS_STRING = 1 << 4;
+    private static final int BINARY_FLAG__DESCRIPTION = 1 << 5;
+
 
     /**
      * The UID of this player, which is the user Steam Id.
@@ -73,9 +109,15 @@ public class Player implements Serializable, Cloneable {
 
 
     public Player() {
-        long currentTime = System.currentTimeMillis();
-        firstSeen = currentTime;
-        lastSeen = currentTime;
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a player that was first seen at the given time.
+     */
+    public Player(long seenTime) {
+        firstSeen = seenTime;
+        lastSeen = seenTime;
     }
 
     public String getUID() {
@@ -114,6 +156,14 @@ public class Player implements Serializable, Cloneable {
         lastSeen = System.currentTimeMillis();
     }
 
+    /**
+     * Records an encounter that happened at the given time (which is not necessarily the latest one).
+     */
+    public void updateSeen(long time) {
+        firstSeen = Math.min(firstSeen, time);
+        lastSeen = Math.max(lastSeen, time);
+    }
+
     public int getTimesEncountered() {
         return timesEncountered;
     }
@@ -220,6 +270,35 @@ public class Player implements Serializable, Cloneable {
         this.description = description;
     }
 
+    /**
+     * Adds the encounters and match results of another record of the same player.
+     * User-provided data (rating and description) is only taken from the other record if missing here.
+     */
+    public void merge(Player other) {
+        if (dbdPlayerId == null) {
+            dbdPlayerId = other.dbdPlayerId;
+        }
+        firstSeen = Math.min(firstSeen, other.firstSeen);
+        lastSeen = Math.max(lastSeen, other.lastSeen);
+        timesEncountered += other.timesEncountered;
+        matchesPlayed += other.matchesPlayed;
+        secondsPlayed += other.secondsPlayed;
+        escapes += other.escapes;
+        deaths += other.deaths;
+
+        for (String name : other.names) {
+            if (!names.contains(name)) {
+                addName(name);
+            }
+        }
+        if (rating == Rating.UNRATED) {
+            rating = other.rating;
+        }
+        if (description == null) {
+            description = other.description;
+        }
+    }
+
     @Override
     public Player clone() {
         Player clone = new Player();
@@ -233,7 +312,7 @@ public class Player implements Serializable, Cloneable {
         this.steamId64 = source.steamId64;
         this.timesEncountered = source.timesEncountered;
         this.dbdPlayerId = source.dbdPlayerId;
-        this.names = new ArrayList<>(this.names);
+        this.names = new ArrayList<>(source.names);
         this.description = source.description;
         this.rating = source.rating;
         this.matchesPlayed = source.matchesPlayed;
@@ -244,4 +323,222 @@ public class Player implements Serializable, Cloneable {
         this.lastSeen = source.lastSeen;
 
     }
+
+    /**
+     * Writes this player in a compact binary form: counters as varints, the Steam id as a 64-bit number and
+     * the DbD id as a 128-bit UUID (when they have the usual format, otherwise as strings), and names and notes as
+     * references to the encoder's dictionary.
+     */
+    public void writeBinary(BinaryEncoder out) {
+        int flags = 0;
+        if (steamId64 != null) {
+            flags |= isCanonicalLong(steamId64) ? BINARY_FLAG__STEAM_ID_AS_LONG : BINARY_FLAG__STEAM_ID_AS_STRING;
+        }
+        if (uid != null) {
+            flags |= BINARY_FLAG__UID;
+        }
+        if (dbdPlayerId != null) {
+            flags |= isCanonicalUuid(dbdPlayerId) ? BINARY_FLAG__DBD_ID_AS_UUID : BINARY_FLAG__DBD_ID_AS_STRING;
+        }
+        if (description != null) {
+            flags |= BINARY_FLAG__DESCRIPTION;
+        }
+        out.writeVarInt(flags);
+
+        if ((flags & BINARY_FLAG__STEAM_ID_AS_LONG) != 0) {
+            out.writeLong(Long.parseLong(steamId64));
+        } else if ((flags & BINARY_FLAG__STEAM_ID_AS_STRING) != 0) {
+            out.writeString(steamId64);
+        }
+        if ((flags & BINARY_FLAG__UID) != 0) {
+            out.writeString(uid);
+        }
+        if ((flags & BINARY_FLAG__DBD_ID_AS_UUID) != 0) {
+            UUID dbdUuid = UUID.fromString(dbdPlayerId);
+            out.writeLong(dbdUuid.getMostSignificantBits());
+            out.writeLong(dbdUuid.getLeastSignificantBits());
+        } else if ((flags & BINARY_FLAG__DBD_ID_AS_STRING) != 0) {
+            out.writeString(dbdPlayerId);
+        }
+
+        out.writeSignedVarLong(firstSeen);
+        out.writeSignedVarLong(lastSeen - firstSeen);
+        out.writeVarInt(timesEncountered);
+        out.writeVarInt(matchesPlayed);
+        out.writeVarInt(secondsPlayed);
+        out.writeVarInt(escapes);
+        out.writeVarInt(deaths);
+        out.writeVarInt(names.size());
+        for (String name : names) {
+            out.writeStringRef(name);
+        }
+        out.writeSignedVarLong(Integer.parseInt(rating.code));
+        if ((flags & BINARY_FLAG__DESCRIPTION) != 0) {
+            out.writeStringRef(description);
+        }
+    }
+
+    public static Player readBinary(BinaryDecoder in) throws IOException {
+        Player player = new Player(0);
+        int flags = in.readVarInt();
+
+        if ((flags & BINARY_FLAG__STEAM_ID_AS_LONG) != 0) {
+            player.steamId64 = Long.toString(in.readLong());
+        } else if ((flags & BINARY_FLAG__STEAM_ID_AS_STRING) != 0) {
+            player.steamId64 = in.readString();
+        }
+        if ((flags & BINARY_FLAG__UID) != 0) {
+            player.uid = in.readString();
+        }
+        if ((flags & BINARY_FLAG__DBD_ID_AS_UUID) != 0) {
+            player.dbdPlayerId = new UUID(in.readLong(), in.readLong()).toString();
+        } else if ((flags & BINARY_FLAG__DBD_ID_AS_STRING) != 0) {
+            player.dbdPlayerId = in.readString();
+        }
+
+        player.firstSeen = in.readSignedVarLong();
+        player.lastSeen = player.firstSeen + in.readSignedVarLong();
+        player.timesEncountered = in.readVarInt();
+        player.matchesPlayed = in.readVarInt();
+        player.secondsPlayed = in.readVarInt();
+        player.escapes = in.readVarInt();
+        player.deaths = in.readVarInt();
+        int nameCount = in.readVarInt();
+        for (int i = 0; i < nameCount; i++) {
+            player.names.add(in.readStringRef());
+        }
+        player.rating = Rating.fromCode(Long.toString(in.readSignedVarLong()));
+        if ((flags & BINARY_FLAG__DESCRIPTION) != 0) {
+            player.description = in.readStringRef();
+        }
+
+        return player;
+    }
+
+    /**
+     * @return true if the value is a number that reads back the same (no sign, nor leading zeros).
+     */
+    private static boolean isCanonicalLong(String value) {
+        try {
+            return Long.toString(Long.parseLong(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the value is a UUID that reads back the same (lower-case, with all its digits).
+     */
+    private static boolean isCanonicalUuid(String value) {
+        try {
+            return value.length() == 36 && UUID.fromString(value).toString().equals(value);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Reads and writes players as JSON, field by field, without reflection.
+     * Fields are written in the same order and form as Gson's reflective adapter did (null fields are omitted).
+     */
+    public static final class Adapter extends TypeAdapter<Player> {
+
+        @Override
+        public void write(JsonWriter out, Player player) throws IOException {
+            out.beginObject();
+            if (player.uid != null) {
+                out.name("uid").value(player.uid);
+            }
+            if (player.steamId64 != null) {
+                out.name("steamId64").value(player.steamId64);
+            }
+            if (player.dbdPlayerId != null) {
+                out.name("dbdPlayerId").value(player.dbdPlayerId);
+            }
+            out.name("firstSeen").value(player.firstSeen);
+            out.name("lastSeen").value(player.lastSeen);
+            out.name("timesEncountered").value(player.timesEncountered);
+            out.name("matchesPlayed").value(player.matchesPlayed);
+            out.name("secondsPlayed").value(player.secondsPlayed);
+            out.name("escapes").value(player.escapes);
+            out.name("deaths").value(player.deaths);
+            out.name("names").beginArray();
+            for (String name : player.names) {
+                out.value(name);
+            }
+            out.endArray();
+            out.name("rating").value(player.rating.code);
+            if (player.description != null) {
+                out.name("description").value(player.description);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Player read(JsonReader in) throws IOException {
+            Player player = new Player(0);
+            in.beginObject();
+
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "uid":
+                        player.uid = in.nextString();
+                        break;
+                    case "steamId64":
+                        player.steamId64 = in.nextString();
+                        break;
+                    case "dbdPlayerId":
+                        player.dbdPlayerId = in.nextString();
+                        break;
+                    case "firstSeen":
+                        player.firstSeen = in.nextLong();
+                        break;
+                    case "lastSeen":
+                        player.lastSeen = in.nextLong();
+                        break;
+                    case "timesEncountered":
+                        player.timesEncountered = in.nextInt();
+                        break;
+                    case "matchesPlayed":
+                        player.matchesPlayed = in.nextInt();
+                        break;
+                    case "secondsPlayed":
+                        player.secondsPlayed = in.nextInt();
+                        break;
+                    case "escapes":
+                        player.escapes = in.nextInt();
+                        break;
+                    case "deaths":
+                        player.deaths = in.nextInt();
+                        break;
+                    case "names":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            player.names.add(in.nextString());
+                        }
+                        in.endArray();
+                        break;
+                    case "rating":
+                        player.rating = Rating.fromCode(in.nextString());
+                        break;
+                    case "description":
+                        player.description = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return player;
+        }
+    }
+
 }
@@ -0,0 +1,142 @@
+package net.lobby_simulator_companion.loop.domain;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Keeps the fields away from whatever the JVM allocates before the counters (fields of a superclass are laid out
+ * first), so that they don't share a cache line with data written by other threads.
+ */
+abstract class TrafficCountersLeftPadding {
+    long p01, p02, p03, p04, p05, p06, p07, p08;
+}
+
+abstract class TrafficCountersFields extends TrafficCountersLeftPadding {
+    volatile long packetsIn;
+    volatile long packetsOut;
+    volatile long bytesIn;
+    volatile long bytesOut;
+    volatile long gapCount;
+    volatile long gapSum;
+    volatile long maxGap;
+    volatile long lostPackets;
+}
+
+abstract class TrafficCountersRightPadding extends TrafficCountersFields {
+    long p11, p12, p13, p14, p15, p16, p17, p18;
+}
+
+/**
+ * Traffic of a connection: packets and bytes in each direction, gaps between incoming packets, and the packets
+ * that were probably lost, judging by those gaps.
+ * <p>
+ * The counters are written by one thread (the one processing the captured packets) and read by any other
+ * (the UI, through {@link #snapshot()}). Since there is a single writer, increments don't need atomic
+ * read-modify-write instructions nor locks: the writer publishes every new value with an ordered store
+ * ({@link AtomicLongFieldUpdater#lazySet}), which is cheaper than a volatile one. The counters are padded so that
+ * the writer doesn't invalidate the cache lines of unrelated data that other threads are reading, and vice versa.
+ * <p>
+ * Only packets that pass the capture filter are counted.
+ *
+ * @author NickyRamone
+ */
+public final class TrafficCounters extends TrafficCountersRightPadding {
+
+    /**
+     * A gap over 2.5 times longer than the average one means packets were lost (the match server and peers send
+     * at a steady rate).
+     */
+    private static final int LOSS_GAP_FACTOR_X2 = 5;
+
+    /**
+     * The average gap is a moving average where every new gap weighs 1/16 (2^-4). It's kept in fixed point,
+     * scaled by 16, so that it stays exact, and it does not decay into (very slow) subnormal doubles while
+     * packets arrive in bursts.
+     */
+    private static final int GAP_SMOOTHING_SHIFT = 4;
+
+    /**
+     * Gaps this long (in microseconds) are pauses (like loading screens), not losses.
+     */
+    private static final long MAX_LOSS_GAP = 2_000_000;
+
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> PACKETS_IN =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "packetsIn");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> PACKETS_OUT =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "packetsOut");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> BYTES_IN =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "bytesIn");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> BYTES_OUT =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "bytesOut");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> GAP_COUNT =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "gapCount");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> GAP_SUM =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "gapSum");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> MAX_GAP =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "maxGap");
+    private static final AtomicLongFieldUpdater<TrafficCountersFields> LOST_PACKETS =
+            AtomicLongFieldUpdater.newUpdater(TrafficCountersFields.class, "lostPackets");
+
+    // only accessed by the writer
+    private long lastArrival = -1;
+    private long scaledAverageGap;
+
+
+    /**
+     * Only to be called from the writer thread.
+     *
+     * @param time  Capture time (epoch microseconds).
+     * @param bytes Size of the payload.
+     */
+    public void countIncoming(long time, int bytes) {
+        PACKETS_IN.lazySet(this, packetsIn + 1);
+        BYTES_IN.lazySet(this, bytesIn + bytes);
+
+        if (lastArrival >= 0 && time >= lastArrival) {
+            countGap(time - lastArrival);
+        }
+        lastArrival = time;
+    }
+
+    private void countGap(long gap) {
+        long averageGap = scaledAverageGap >> GAP_SMOOTHING_SHIFT;
+
+        // longer gaps are pauses (like a loading screen): neither loss nor the usual rate
+        if (gap <= MAX_LOSS_GAP) {
+            if (averageGap > 0 && gap * 2 > averageGap * LOSS_GAP_FACTOR_X2) {
+                // the packets we'd have received at the usual rate, except for the one that just arrived
+                LOST_PACKETS.lazySet(this, lostPackets + (gap + averageGap / 2) / averageGap - 1);
+            } else if (gapCount == 0) {
+                scaledAverageGap = gap << GAP_SMOOTHING_SHIFT;
+            } else {
+                // gaps of lost packets would inflate the average, and hide the next losses
+                scaledAverageGap += gap - averageGap;
+            }
+        }
+
+        GAP_COUNT.lazySet(this, gapCount + 1);
+        GAP_SUM.lazySet(this, gapSum + gap);
+        if (gap > maxGap) {
+            MAX_GAP.lazySet(this, gap);
+        }
+    }
+
+    /**
+     * Only to be called from the writer thread.
+     *
+     * @param bytes Size of the payload.
+     */
+    public void countOutgoing(int bytes) {
+        PACKETS_OUT.lazySet(this, packetsOut + 1);
+        BYTES_OUT.lazySet(this, bytesOut + bytes);
+    }
+
+    /**
+     * Can be called from any thread. The counters are read one after the other, so they may be off by
+     * the packets counted in the meantime.
+     */
+    public TrafficSnapshot snapshot() {
+        return new TrafficSnapshot(System.currentTimeMillis(), packetsIn, packetsOut, bytesIn, bytesOut,
+                gapCount, gapSum, maxGap, lostPackets);
+    }
+
+}
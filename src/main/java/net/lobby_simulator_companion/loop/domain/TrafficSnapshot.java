@@ -0,0 +1,105 @@
+package net.lobby_simulator_companion.loop.domain;
+
+/**
+ * The values of some {@link TrafficCounters} at a given time. Gaps are in microseconds.
+ *
+ * @author NickyRamone
+ */
+public final class TrafficSnapshot {
+
+    private final long time;
+    private final long packetsIn;
+    private final long packetsOut;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long gapCount;
+    private final long gapSum;
+    private final long maxGap;
+    private final long lostPackets;
+
+
+    TrafficSnapshot(long time, long packetsIn, long packetsOut, long bytesIn, long bytesOut, long gapCount,
+                    long gapSum, long maxGap, long lostPackets) {
+        this.time = time;
+        this.packetsIn = packetsIn;
+        this.packetsOut = packetsOut;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.gapCount = gapCount;
+        this.gapSum = gapSum;
+        this.maxGap = maxGap;
+        this.lostPackets = lostPackets;
+    }
+
+
+    /**
+     * @return What was counted between the given (earlier) snapshot and this one. The max gap is still the one
+     * of the whole connection.
+     */
+    public TrafficSnapshot since(TrafficSnapshot earlier) {
+        return new TrafficSnapshot(time - earlier.time, packetsIn - earlier.packetsIn,
+                packetsOut - earlier.packetsOut, bytesIn - earlier.bytesIn, bytesOut - earlier.bytesOut,
+                gapCount - earlier.gapCount, gapSum - earlier.gapSum, maxGap, lostPackets - earlier.lostPackets);
+    }
+
+    /**
+     * @return Epoch millis when it was taken (or the elapsed millis, for the result of {@link #since}).
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public long getPacketsIn() {
+        return packetsIn;
+    }
+
+    public long getPacketsOut() {
+        return packetsOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getMaxGap() {
+        return maxGap;
+    }
+
+    /**
+     * @return Average time between incoming packets, or 0 if there were less than two.
+     */
+    public long getAverageGap() {
+        return gapCount == 0 ? 0 : gapSum / gapCount;
+    }
+
+    public long getLostPackets() {
+        return lostPackets;
+    }
+
+    /**
+     * @return Fraction of the incoming packets that were probably lost.
+     */
+    public double getLossRate() {
+        long expected = packetsIn + lostPackets;
+
+        return expected == 0 ? 0 : (double) lostPackets / expected;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficSnapshot{" +
+                "time=" + time +
+                ", packetsIn=" + packetsIn +
+                ", packetsOut=" + packetsOut +
+                ", bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                ", averageGap=" + getAverageGap() +
+                ", maxGap=" + maxGap +
+                ", lostPackets=" + lostPackets +
+                '}';
+    }
+}
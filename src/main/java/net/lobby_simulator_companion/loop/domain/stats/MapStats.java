@@ -1,5 +1,13 @@
 package net.lobby_simulator_companion.loop.domain.stats;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
+
+import java.io.IOException;
+
 /**
  * @author NickyRamone
  */
@@ -42,6 +50,13 @@ public class MapStats {
         matchTime += seconds;
     }
 
+    public void merge(MapStats other) {
+        matches += other.matches;
+        escapes += other.escapes;
+        deaths += other.deaths;
+        matchTime += other.matchTime;
+    }
+
     @Override
     protected MapStats clone() {
         MapStats clone = new MapStats();
@@ -53,4 +68,62 @@ public class MapStats {
         return clone;
     }
 
+    void writeBinary(BinaryEncoder out) {
+        out.writeVarInt(matches);
+        out.writeVarInt(escapes);
+        out.writeVarInt(deaths);
+        out.writeVarInt(matchTime);
+    }
+
+    static MapStats readBinary(BinaryDecoder in) throws IOException {
+        MapStats stats = new MapStats();
+        stats.matches = in.readVarInt();
+        stats.escapes = in.readVarInt();
+        stats.deaths = in.readVarInt();
+        stats.matchTime = in.readVarInt();
+
+        return stats;
+    }
+
+
+    public static final class Adapter extends TypeAdapter<MapStats> {
+
+        @Override
+        public void write(JsonWriter out, MapStats stats) throws IOException {
+            out.beginObject();
+            out.name("matches").value(stats.matches);
+            out.name("escapes").value(stats.escapes);
+            out.name("deaths").value(stats.deaths);
+            out.name("matchTime").value(stats.matchTime);
+            out.endObject();
+        }
+
+        @Override
+        public MapStats read(JsonReader in) throws IOException {
+            MapStats stats = new MapStats();
+            in.beginObject();
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "matches":
+                        stats.matches = in.nextInt();
+                        break;
+                    case "escapes":
+                        stats.escapes = in.nextInt();
+                        break;
+                    case "deaths":
+                        stats.deaths = in.nextInt();
+                        break;
+                    case "matchTime":
+                        stats.matchTime = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return stats;
+        }
+    }
 }
@@ -1,12 +1,22 @@
 package net.lobby_simulator_companion.loop.domain.stats;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import net.lobby_simulator_companion.loop.domain.Killer;
 import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -89,6 +99,42 @@ public abstract class PeriodStats implements Cloneable {
         }
     }
 
+    /**
+     * Adds the values of the given stats to this one. Open-ended periods (the ones with no end) are extended
+     * back to the start of the other period, if earlier.
+     * <p>
+     * Since the other stats may have been collected in a different order, the current streaks are
+     * left as they are; only the maximum streaks are taken into account.
+     */
+    public void merge(PeriodStats other) {
+        if (periodEnd == null && other.periodStart != null && other.periodStart.isBefore(periodStart)) {
+            periodStart = other.periodStart;
+        }
+        lobbiesFound += other.lobbiesFound;
+        secondsQueued += other.secondsQueued;
+        matchesPlayed += other.matchesPlayed;
+        secondsPlayed += other.secondsPlayed;
+        secondsWaited += other.secondsWaited;
+        escapes += other.escapes;
+        deaths += other.deaths;
+        maxEscapesInARow = Math.max(maxEscapesInARow, other.maxEscapesInARow);
+        maxDeathsInARow = Math.max(maxDeathsInARow, other.maxDeathsInARow);
+
+        if (other.killersStats != null) {
+            other.killersStats.forEach((killer, stats) -> getOrCreateKillerStats(killer).merge(stats));
+        }
+        if (other.mapStats != null) {
+            other.mapStats.forEach((realmMap, stats) -> getOrCreateMapStats(realmMap).merge(stats));
+        }
+    }
+
+    /**
+     * @return true if the given time falls within this period.
+     */
+    public boolean covers(LocalDateTime time) {
+        return (periodEnd == null || !time.isAfter(periodEnd)) && !time.isBefore(periodStart);
+    }
+
     protected abstract LocalDateTime getPeriodStart(LocalDateTime now);
 
     protected abstract LocalDateTime getPeriodEnd(LocalDateTime now);
@@ -261,4 +307,223 @@ public abstract class PeriodStats implements Cloneable {
     @Override
     public abstract PeriodStats clone();
 
+    /**
+     * Writes these stats in a compact binary form. Times are stored as epoch seconds, like in JSON.
+     */
+    void writeBinary(BinaryEncoder out) {
+        ZoneOffset offset = OffsetDateTime.now().getOffset();
+        writeBinaryTime(out, periodStart, offset);
+        writeBinaryTime(out, periodEnd, offset);
+        out.writeVarInt(lobbiesFound);
+        out.writeVarInt(secondsQueued);
+        out.writeVarInt(secondsWaited);
+        out.writeVarInt(secondsPlayed);
+        out.writeVarInt(matchesPlayed);
+        out.writeVarInt(escapes);
+        out.writeVarInt(escapesInARow);
+        out.writeVarInt(maxEscapesInARow);
+        out.writeVarInt(deaths);
+        out.writeVarInt(deathsInARow);
+        out.writeVarInt(maxDeathsInARow);
+
+        Map<Killer, KillerStats> killersStats = this.killersStats != null ? this.killersStats : new HashMap<>();
+        out.writeVarInt(killersStats.size());
+        for (Map.Entry<Killer, KillerStats> entry : killersStats.entrySet()) {
+            out.writeStringRef(entry.getKey().toString());
+            entry.getValue().writeBinary(out);
+        }
+        Map<RealmMap, MapStats> mapStats = this.mapStats != null ? this.mapStats : new HashMap<>();
+        out.writeVarInt(mapStats.size());
+        for (Map.Entry<RealmMap, MapStats> entry : mapStats.entrySet()) {
+            out.writeStringRef(entry.getKey().toString());
+            entry.getValue().writeBinary(out);
+        }
+    }
+
+    /**
+     * Replaces the values of these stats with the ones read.
+     */
+    void readBinary(BinaryDecoder in) throws IOException {
+        ZoneOffset offset = OffsetDateTime.now().getOffset();
+        periodStart = readBinaryTime(in, offset);
+        periodEnd = readBinaryTime(in, offset);
+        lobbiesFound = in.readVarInt();
+        secondsQueued = in.readVarInt();
+        secondsWaited = in.readVarInt();
+        secondsPlayed = in.readVarInt();
+        matchesPlayed = in.readVarInt();
+        escapes = in.readVarInt();
+        escapesInARow = in.readVarInt();
+        maxEscapesInARow = in.readVarInt();
+        deaths = in.readVarInt();
+        deathsInARow = in.readVarInt();
+        maxDeathsInARow = in.readVarInt();
+
+        killersStats = new HashMap<>();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            Killer killer = Killer.valueOf(in.readStringRef().toUpperCase());
+            killersStats.put(killer, KillerStats.readBinary(in));
+        }
+        mapStats = new HashMap<>();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            RealmMap realmMap = RealmMap.valueOf(in.readStringRef().toUpperCase());
+            mapStats.put(realmMap, MapStats.readBinary(in));
+        }
+    }
+
+    private static void writeBinaryTime(BinaryEncoder out, LocalDateTime time, ZoneOffset offset) {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeSignedVarLong(time.toEpochSecond(offset));
+        }
+    }
+
+    private static LocalDateTime readBinaryTime(BinaryDecoder in, ZoneOffset offset) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readSignedVarLong(), 0, offset) : null;
+    }
+
+
+    /**
+     * Reads and writes period stats as JSON, field by field, without reflection.
+     * Fields are written in the same order and form as Gson's reflective adapter did: times as epoch seconds
+     * (in the current time zone), killers and maps by their lower-case names, and null fields omitted.
+     *
+     * @param <T> Type of period.
+     */
+    public static final class Adapter<T extends PeriodStats> extends TypeAdapter<T> {
+
+        private final Function<LocalDateTime, T> factory;
+        private final KillerStats.Adapter killerStatsAdapter = new KillerStats.Adapter();
+        private final MapStats.Adapter mapStatsAdapter = new MapStats.Adapter();
+
+
+        /**
+         * @param factory Creates the stats of the period that covers the given time.
+         */
+        public Adapter(Function<LocalDateTime, T> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            // the fields of a T are only accessible through its base type
+            PeriodStats stats = value;
+            ZoneOffset offset = OffsetDateTime.now().getOffset();
+            out.beginObject();
+            if (stats.periodStart != null) {
+                out.name("periodStart").value(stats.periodStart.toEpochSecond(offset));
+            }
+            if (stats.periodEnd != null) {
+                out.name("periodEnd").value(stats.periodEnd.toEpochSecond(offset));
+            }
+            out.name("lobbiesFound").value(stats.lobbiesFound);
+            out.name("secondsQueued").value(stats.secondsQueued);
+            out.name("secondsWaited").value(stats.secondsWaited);
+            out.name("secondsPlayed").value(stats.secondsPlayed);
+            out.name("matchesPlayed").value(stats.matchesPlayed);
+            out.name("escapes").value(stats.escapes);
+            out.name("escapesInARow").value(stats.escapesInARow);
+            out.name("maxEscapesInARow").value(stats.maxEscapesInARow);
+            out.name("deaths").value(stats.deaths);
+            out.name("deathsInARow").value(stats.deathsInARow);
+            out.name("maxDeathsInARow").value(stats.maxDeathsInARow);
+            if (stats.killersStats != null) {
+                out.name("killersStats").beginObject();
+                for (Map.Entry<Killer, KillerStats> entry : stats.killersStats.entrySet()) {
+                    out.name(entry.getKey().toString());
+                    killerStatsAdapter.write(out, entry.getValue());
+                }
+                out.endObject();
+            }
+            if (stats.mapStats != null) {
+                out.name("mapStats").beginObject();
+                for (Map.Entry<RealmMap, MapStats> entry : stats.mapStats.entrySet()) {
+                    out.name(entry.getKey().toString());
+                    mapStatsAdapter.write(out, entry.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            ZoneOffset offset = OffsetDateTime.now().getOffset();
+            T result = factory.apply(LocalDateTime.now());
+            PeriodStats stats = result;
+            in.beginObject();
+
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "periodStart":
+                        stats.periodStart = LocalDateTime.ofEpochSecond(in.nextLong(), 0, offset);
+                        break;
+                    case "periodEnd":
+                        stats.periodEnd = LocalDateTime.ofEpochSecond(in.nextLong(), 0, offset);
+                        break;
+                    case "lobbiesFound":
+                        stats.lobbiesFound = in.nextInt();
+                        break;
+                    case "secondsQueued":
+                        stats.secondsQueued = in.nextInt();
+                        break;
+                    case "secondsWaited":
+                        stats.secondsWaited = in.nextInt();
+                        break;
+                    case "secondsPlayed":
+                        stats.secondsPlayed = in.nextInt();
+                        break;
+                    case "matchesPlayed":
+                        stats.matchesPlayed = in.nextInt();
+                        break;
+                    case "escapes":
+                        stats.escapes = in.nextInt();
+                        break;
+                    case "escapesInARow":
+                        stats.escapesInARow = in.nextInt();
+                        break;
+                    case "maxEscapesInARow":
+                        stats.maxEscapesInARow = in.nextInt();
+                        break;
+                    case "deaths":
+                        stats.deaths = in.nextInt();
+                        break;
+                    case "deathsInARow":
+                        stats.deathsInARow = in.nextInt();
+                        break;
+                    case "maxDeathsInARow":
+                        stats.maxDeathsInARow = in.nextInt();
+                        break;
+                    case "killersStats":
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            Killer killer = Killer.valueOf(in.nextName().toUpperCase());
+                            stats.killersStats.put(killer, killerStatsAdapter.read(in));
+                        }
+                        in.endObject();
+                        break;
+                    case "mapStats":
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            RealmMap realmMap = RealmMap.valueOf(in.nextName().toUpperCase());
+                            stats.mapStats.put(realmMap, mapStatsAdapter.read(in));
+                        }
+                        in.endObject();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return result;
+        }
+    }
+
 }
@@ -1,16 +1,14 @@
 package net.lobby_simulator_companion.loop.domain.stats;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import net.lobby_simulator_companion.loop.domain.Killer;
 import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.stream.Stream;
@@ -86,6 +84,16 @@ public class Stats {
         Arrays.stream(periodsStats).forEach(s -> s.incrementDeaths(killer, realmMap));
     }
 
+    /**
+     * Merges stats collected at the given time into every period that covers it.
+     * The global period always takes them, extending its start if needed.
+     */
+    public void merge(LocalDateTime time, PeriodStats periodStats) {
+        Arrays.stream(periodsStats)
+                .filter(s -> s.getPeriodEnd() == null || s.covers(time))
+                .forEach(s -> s.merge(periodStats));
+    }
+
     @Override
     public Stats clone() {
         Stats clone = new Stats();
@@ -108,51 +116,73 @@ public class Stats {
     }
 
 
-    public static final class Serializer implements JsonSerializer<Stats> {
-        @Override
-        public JsonElement serialize(Stats src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject jsonObj = new JsonObject();
-
-            for (Stats.Period period : Stats.Period.values()) {
-                jsonObj.add(period.name().toLowerCase(), context.serialize(src.get(period)));
-            }
+    /**
+     * Writes the stats of every period in a compact binary form, preceded by the number of periods.
+     */
+    public void writeBinary(BinaryEncoder out) {
+        out.writeVarInt(periodsStats.length);
+        for (PeriodStats periodStats : periodsStats) {
+            periodStats.writeBinary(out);
+        }
+    }
 
-            return jsonObj;
+    public static Stats readBinary(BinaryDecoder in) throws IOException {
+        Stats result = new Stats();
+        int periodCount = in.readVarInt();
+        if (periodCount != result.periodsStats.length) {
+            throw new IOException("Unexpected number of periods: " + periodCount);
+        }
+        for (PeriodStats periodStats : result.periodsStats) {
+            periodStats.readBinary(in);
         }
+
+        return result;
     }
 
 
-    public static final class Deserializer implements JsonDeserializer<Stats> {
+    /**
+     * Reads and writes the stats as JSON, as an object with the stats of every period by its lower-case name.
+     */
+    public static final class Adapter extends TypeAdapter<Stats> {
+
+        private final PeriodStats.Adapter<?>[] periodAdapters = new PeriodStats.Adapter<?>[Period.values().length];
+
+
+        public Adapter() {
+            periodAdapters[Period.DAILY.ordinal()] = new PeriodStats.Adapter<DailyStats>(DailyStats::new);
+            periodAdapters[Period.WEEKLY.ordinal()] = new PeriodStats.Adapter<WeeklyStats>(WeeklyStats::new);
+            periodAdapters[Period.MONTHLY.ordinal()] = new PeriodStats.Adapter<MonthlyStats>(MonthlyStats::new);
+            periodAdapters[Period.YEARLY.ordinal()] = new PeriodStats.Adapter<YearlyStats>(YearlyStats::new);
+            periodAdapters[Period.GLOBAL.ordinal()] = new PeriodStats.Adapter<GlobalStats>(GlobalStats::new);
+        }
+
+        @Override
+        public void write(JsonWriter out, Stats stats) throws IOException {
+            out.beginObject();
+            for (Period period : Period.values()) {
+                out.name(period.name().toLowerCase());
+                writePeriod(out, periodAdapters[period.ordinal()], stats.get(period));
+            }
+            out.endObject();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T extends PeriodStats> void writePeriod(JsonWriter out, PeriodStats.Adapter<T> adapter,
+                                                                PeriodStats periodStats) throws IOException {
+            // every period is always of the same type
+            adapter.write(out, (T) periodStats);
+        }
 
         @Override
-        public Stats deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+        public Stats read(JsonReader in) throws IOException {
             Stats result = new Stats();
+            in.beginObject();
 
-            JsonObject jsonObj = json.getAsJsonObject();
-            jsonObj.entrySet().stream().forEach(e -> {
-                Stats.Period period = Stats.Period.valueOf(e.getKey().toUpperCase());
-                PeriodStats periodStats = null;
-
-                switch (period) {
-                    case DAILY:
-                        periodStats = context.deserialize(e.getValue(), DailyStats.class);
-                        break;
-                    case WEEKLY:
-                        periodStats = context.deserialize(e.getValue(), WeeklyStats.class);
-                        break;
-                    case MONTHLY:
-                        periodStats = context.deserialize(e.getValue(), MonthlyStats.class);
-                        break;
-                    case YEARLY:
-                        periodStats = context.deserialize(e.getValue(), YearlyStats.class);
-                        break;
-                    case GLOBAL:
-                        periodStats = context.deserialize(e.getValue(), GlobalStats.class);
-                        break;
-                }
-
-                result.set(period, periodStats);
-            });
+            while (in.hasNext()) {
+                Period period = Period.valueOf(in.nextName().toUpperCase());
+                result.set(period, periodAdapters[period.ordinal()].read(in));
+            }
+            in.endObject();
 
             return result;
         }
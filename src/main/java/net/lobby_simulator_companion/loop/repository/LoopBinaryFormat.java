@@ -0,0 +1,163 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.domain.LoopData;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.stats.Stats;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Compact binary alternative to the JSON data file.
+ * <p>
+ * Layout:
+ * <pre>
+ * header:   [int magic "LOOP"][byte format version][int data version][byte section count]
+ * sections: [byte section id][int offset][int length] for every section (offsets from the start of the file)
+ * STRINGS:  [varint count][string]... (the dictionary, referenced from the other sections by index)
+ * PLAYERS:  [varint count][player]...
+ * STATS:    [stats]
+ * </pre>
+ * Numbers are varints, and names, descriptions and killer/map keys are stored only once, in the dictionary.
+ * Sections with an unknown id are skipped, so that new ones can be added without breaking older readers.
+ *
+ * @author NickyRamone
+ */
+final class LoopBinaryFormat {
+
+    static final int MAGIC = 0x4C4F4F50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 10;
+    private static final int SECTION_ENTRY_SIZE = 9;
+
+    private static final byte SECTION__STRINGS = 1;
+    private static final byte SECTION__PLAYERS = 2;
+    private static final byte SECTION__STATS = 3;
+
+
+    private LoopBinaryFormat() {
+    }
+
+    /**
+     * @return Whether the data starts like a file in this format.
+     */
+    static boolean matches(byte[] header) {
+        return header.length >= 4 && readInt(header, 0) == MAGIC;
+    }
+
+    static void write(LoopData loopData, OutputStream outputStream) throws IOException {
+        BinaryEncoder strings = new BinaryEncoder();
+        BinaryEncoder players = strings.newSection();
+        BinaryEncoder stats = strings.newSection();
+
+        players.writeVarInt(loopData.getPlayers().size());
+        for (Player player : loopData.getPlayers()) {
+            player.writeBinary(players);
+        }
+        loopData.getStats().writeBinary(stats);
+
+        // the dictionary is complete only after the other sections have been written
+        List<String> dictionary = strings.getDictionary();
+        strings.writeVarInt(dictionary.size());
+        for (String string : dictionary) {
+            strings.writeString(string);
+        }
+
+        BinaryEncoder[] sections = {strings, players, stats};
+        byte[] sectionIds = {SECTION__STRINGS, SECTION__PLAYERS, SECTION__STATS};
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(loopData.getVersion());
+        out.writeByte(sections.length);
+
+        int offset = HEADER_SIZE + sections.length * SECTION_ENTRY_SIZE;
+        for (int i = 0; i < sections.length; i++) {
+            out.writeByte(sectionIds[i]);
+            out.writeInt(offset);
+            out.writeInt(sections[i].size());
+            offset += sections[i].size();
+        }
+        for (BinaryEncoder section : sections) {
+            section.writeTo(out);
+        }
+        out.flush();
+    }
+
+    static LoopData read(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || !matches(data)) {
+            throw new IOException("Not a binary data file.");
+        }
+        int formatVersion = data[4];
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary format version: " + formatVersion);
+        }
+        int sectionCount = data[9] & 0xFF;
+        if (data.length < HEADER_SIZE + sectionCount * SECTION_ENTRY_SIZE) {
+            throw new IOException("Truncated section table.");
+        }
+
+        BinaryDecoder strings = null;
+        BinaryDecoder players = null;
+        BinaryDecoder stats = null;
+        for (int i = 0; i < sectionCount; i++) {
+            int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            int offset = readInt(data, entry + 1);
+            int length = readInt(data, entry + 5);
+            if (offset < 0 || length < 0 || offset > data.length - length) {
+                throw new IOException("Section out of bounds: " + data[entry]);
+            }
+            BinaryDecoder section = new BinaryDecoder(data, offset, length);
+
+            switch (data[entry]) {
+                case SECTION__STRINGS:
+                    strings = section;
+                    break;
+                case SECTION__PLAYERS:
+                    players = section;
+                    break;
+                case SECTION__STATS:
+                    stats = section;
+                    break;
+                default:
+                    // added by a newer version
+            }
+        }
+        if (strings == null || players == null || stats == null) {
+            throw new IOException("Missing sections.");
+        }
+
+        int stringCount = strings.readVarInt();
+        if (stringCount < 0 || stringCount > strings.remaining()) {
+            throw new IOException("Invalid dictionary size: " + stringCount);
+        }
+        String[] dictionary = new String[stringCount];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = strings.readString();
+        }
+        players.setDictionary(dictionary);
+        stats.setDictionary(dictionary);
+
+        int playerCount = players.readVarInt();
+        if (playerCount < 0 || playerCount > players.remaining()) {
+            throw new IOException("Invalid number of players: " + playerCount);
+        }
+        LoopData loopData = new LoopData(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            loopData.addPlayer(Player.readBinary(players));
+        }
+        loopData.getStats().copyFrom(Stats.readBinary(stats));
+
+        return loopData;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+}
@@ -0,0 +1,149 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of records, each one framed as: length (4 bytes, of what follows the checksum),
+ * CRC-32 checksum (4 bytes, of what follows), type (1 byte) and payload.
+ * <p>
+ * Records are only ever appended, so that writing one costs the same no matter how big the file is. If the app dies
+ * while appending, the last record will be incomplete (or its checksum won't match); it's discarded when reading,
+ * together with anything after it.
+ *
+ * @author NickyRamone
+ */
+final class LoopJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopJournal.class);
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * A larger length means we are reading garbage.
+     */
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+
+    static final class Record {
+        private final byte type;
+        private final byte[] payload;
+
+        Record(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        byte getType() {
+            return type;
+        }
+
+        byte[] getPayload() {
+            return payload;
+        }
+    }
+
+
+    private final File file;
+
+
+    LoopJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends the records with a single write, and makes sure they reach the disk.
+     */
+    void append(List<Record> records) throws IOException {
+        int size = 0;
+        for (Record record : records) {
+            size += RECORD_HEADER_SIZE + 1 + record.payload.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (Record record : records) {
+            crc.reset();
+            crc.update(record.type);
+            crc.update(record.payload);
+            buffer.putInt(1 + record.payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record.type);
+            buffer.put(record.payload);
+        }
+        buffer.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            channel.position(channel.size());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Reads all the valid records. If the journal ends with a torn or corrupt record, it's cut off there so that
+     * new records are not appended after it.
+     */
+    List<Record> read() throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long fileSize = raf.length();
+            long validSize = 0;
+            CRC32 crc = new CRC32();
+
+            while (validSize + RECORD_HEADER_SIZE <= fileSize) {
+                raf.seek(validSize);
+                int length = raf.readInt();
+                int checksum = raf.readInt();
+                if (length < 1 || length > MAX_RECORD_SIZE || validSize + RECORD_HEADER_SIZE + length > fileSize) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                raf.readFully(data);
+                crc.reset();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                byte[] payload = new byte[length - 1];
+                System.arraycopy(data, 1, payload, 0, payload.length);
+                records.add(new Record(data[0], payload));
+                validSize += RECORD_HEADER_SIZE + length;
+            }
+
+            if (validSize < fileSize) {
+                logger.warn("Discarding {} bytes of incomplete or corrupt records at the end of the journal.",
+                        fileSize - validSize);
+                raf.setLength(validSize);
+            }
+        }
+
+        return records;
+    }
+
+    long size() {
+        return file.length();
+    }
+
+    void clear() throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete journal " + file);
+        }
+    }
+
+}
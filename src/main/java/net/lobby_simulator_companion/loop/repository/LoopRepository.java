@@ -2,44 +2,54 @@ package net.lobby_simulator_companion.loop.repository;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializer;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import net.lobby_simulator_companion.loop.config.AppProperties;
-import net.lobby_simulator_companion.loop.domain.Killer;
 import net.lobby_simulator_companion.loop.domain.LoopData;
-import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.domain.Player;
 import net.lobby_simulator_companion.loop.domain.stats.Stats;
 import net.lobby_simulator_companion.loop.util.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESKeySpec;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.OffsetDateTime;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * File-based repository for Loop-data storage.
+ * <p>
+ * The data is stored as a full snapshot plus a journal of the changes made since the snapshot was written,
+ * so that saving a change doesn't require rewriting everything. When loading, the journal is replayed on top of
+ * the snapshot.
+ * <p>
+ * The snapshot is either JSON (optionally encrypted) or, if so configured, a compact binary file. The format is
+ * detected when loading, so switching it just takes effect on the next full save.
  *
  * @author NickyRamone, ShadowMoose
  */
@@ -49,11 +59,26 @@ public class LoopRepository {
     private static final byte[] CIPHER_KEY_MATERIAL = new byte[]{2, 3, -57, 11, 73, 57, -66, 21};
     private static final String PROPERTY__READ_ENCRYPTED = "storage.read.encrypted";
     private static final String PROPERTY__WRITE_ENCRYPTED = "storage.write.encrypted";
+    private static final String PROPERTY__FORMAT = "storage.format";
+    private static final String FORMAT__BINARY = "binary";
+    private static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Journal record types. Every record holds the whole state of what changed, so that replaying it twice
+     * (for example, if the app dies after writing a snapshot, but before clearing the journal) does no harm.
+     */
+    private static final byte RECORD__PLAYER = 1;
+    private static final byte RECORD__STATS = 2;
+    private static final byte RECORD_FLAG__ENCRYPTED = (byte) 0x80;
 
     private AppProperties properties;
     private File saveFile;
     private File legacySaveFile;
+    private final LoopJournal journal;
     private final Gson gson;
+    private final Gson journalGson;
     private final String jsonIndent;
 
 
@@ -61,7 +86,10 @@ public class LoopRepository {
         this.properties = properties;
         saveFile = Paths.get(properties.get("app.home")).resolve(properties.get("storage.file")).toFile();
         legacySaveFile = Paths.get(properties.get("app.home")).resolve(properties.get("storage.file.legacy")).toFile();
+        journal = new LoopJournal(new File(saveFile.getPath() + JOURNAL_FILE_SUFFIX));
         GsonBuilder gsonBuilder = new GsonBuilder();
+        configureSerializers(gsonBuilder);
+        journalGson = gsonBuilder.create();
 
         if (properties.getBoolean(PROPERTY__WRITE_ENCRYPTED)) {
             jsonIndent = "";
@@ -69,30 +97,14 @@ public class LoopRepository {
             gsonBuilder.setPrettyPrinting();
             jsonIndent = "    ";
         }
-
-        configureSerializers(gsonBuilder);
         gson = gsonBuilder.create();
     }
 
     private void configureSerializers(GsonBuilder gsonBuilder) {
-
-        JsonSerializer<LocalDateTime> dateTimeSerializer = (o, type, jsonSerializationContext) ->
-                new JsonPrimitive(o.toEpochSecond(OffsetDateTime.now().getOffset()));
-        JsonDeserializer<LocalDateTime> dateTimeDeserializer = (jsonElement, type, jsonDeserializationContext) ->
-                LocalDateTime.ofEpochSecond(jsonElement.getAsLong(), 0, OffsetDateTime.now().getOffset());
-        gsonBuilder.registerTypeAdapter(LocalDateTime.class, dateTimeSerializer);
-        gsonBuilder.registerTypeAdapter(LocalDateTime.class, dateTimeDeserializer);
-
-        // Gson serializes map keys using toString()
-        JsonDeserializer<Killer> killerDeserializer = (jsonElement, type, context) ->
-                Killer.valueOf(jsonElement.getAsString().toUpperCase());
-        gsonBuilder.registerTypeAdapter(Killer.class, killerDeserializer);
-        JsonDeserializer<RealmMap> realmMapDeserializer = (jsonElement, type, context) ->
-                RealmMap.valueOf(jsonElement.getAsString().toUpperCase());
-        gsonBuilder.registerTypeAdapter(RealmMap.class, realmMapDeserializer);
-
-        gsonBuilder.registerTypeAdapter(Stats.class, new Stats.Serializer());
-        gsonBuilder.registerTypeAdapter(Stats.class, new Stats.Deserializer());
+        // streaming adapters, since reflection is much slower and builds intermediate objects
+        gsonBuilder.registerTypeAdapter(LoopData.class, new LoopData.Adapter());
+        gsonBuilder.registerTypeAdapter(Player.class, new Player.Adapter());
+        gsonBuilder.registerTypeAdapter(Stats.class, new Stats.Adapter());
     }
 
 
@@ -101,22 +113,65 @@ public class LoopRepository {
         LoopData loopData;
 
         try {
-            Cipher cipher = getCipher(true);
             File dataFile = saveFile.exists() ? saveFile : legacySaveFile;
-            JsonReader reader = createJsonReader(dataFile, cipher);
-            loopData = gson.fromJson(reader, LoopData.class);
-            reader.close();
+            if (isBinaryFile(dataFile)) {
+                loopData = LoopBinaryFormat.read(Files.readAllBytes(dataFile.toPath()));
+            } else {
+                Cipher cipher = getCipher(true);
+                JsonReader reader = createJsonReader(dataFile, cipher);
+                loopData = gson.fromJson(reader, LoopData.class);
+                reader.close();
+            }
         } catch (FileNotFoundException e1) {
             throw e1;
         } catch (Exception e2) {
             throw new IOException("Failed to load data. File corrupt?", e2);
         }
+        replayJournal(loopData);
         logger.info("Loaded {} players.",
                 loopData.getPlayers().size());
 
         return loopData;
     }
 
+    private static boolean isBinaryFile(File file) throws IOException {
+        byte[] header = new byte[4];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(header);
+        } catch (EOFException e) {
+            return false;
+        }
+
+        return LoopBinaryFormat.matches(header);
+    }
+
+    private void replayJournal(LoopData loopData) throws IOException {
+        List<LoopJournal.Record> records = journal.read();
+        if (records.isEmpty()) {
+            return;
+        }
+        logger.info("Replaying {} changes from the journal...", records.size());
+
+        try {
+            for (LoopJournal.Record record : records) {
+                String json = readRecordPayload(record);
+
+                switch (record.getType() & ~RECORD_FLAG__ENCRYPTED) {
+                    case RECORD__PLAYER:
+                        loopData.addPlayer(journalGson.fromJson(json, Player.class));
+                        break;
+                    case RECORD__STATS:
+                        loopData.getStats().copyFrom(journalGson.fromJson(json, Stats.class));
+                        break;
+                    default:
+                        logger.warn("Ignoring journal record of unknown type {}.", record.getType());
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Failed to replay the journal. File corrupt?", e);
+        }
+    }
+
     public void save(LoopData loopData) throws IOException {
         // Keep a rolling backup of the Peers file, for safety.
         logger.debug("Saving data ({} players)...",
@@ -126,35 +181,123 @@ public class LoopRepository {
             FileUtil.saveFile(this.saveFile, "");
         }
 
-        JsonWriter writer = createJsonWriter();
-        writer.setIndent(jsonIndent);
-        gson.toJson(loopData, LoopData.class, writer);
-        writer.close();
+        // written aside and then swapped, so that the data file is either the old one or the new one, never a mix
+        File tempFile = new File(saveFile.getPath() + TEMP_FILE_SUFFIX);
+        try {
+            if (FORMAT__BINARY.equals(properties.get(PROPERTY__FORMAT))) {
+                try (OutputStream out = new SyncedFileOutputStream(tempFile)) {
+                    LoopBinaryFormat.write(loopData, out);
+                }
+            } else {
+                try (JsonWriter writer = createJsonWriter(new SyncedFileOutputStream(tempFile))) {
+                    writer.setIndent(jsonIndent);
+                    gson.toJson(loopData, LoopData.class, writer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            tempFile.delete();
+            throw e;
+        }
+        try {
+            Files.move(tempFile.toPath(), saveFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.warn("Atomic file replacement not supported. Replacing data file non-atomically.");
+            Files.move(tempFile.toPath(), saveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // the snapshot includes everything in the journal
+        journal.clear();
+    }
+
+    /**
+     * Appends the given changes to the journal, which is much cheaper than saving everything.
+     *
+     * @param players Players that were added or modified.
+     * @param stats   The stats, if they were modified; otherwise, null.
+     */
+    public void saveChanges(Collection<Player> players, Stats stats) throws IOException {
+        List<LoopJournal.Record> records = new ArrayList<>(players.size() + 1);
+
+        for (Player player : players) {
+            records.add(createRecord(RECORD__PLAYER, journalGson.toJson(player, Player.class)));
+        }
+        if (stats != null) {
+            records.add(createRecord(RECORD__STATS, journalGson.toJson(stats, Stats.class)));
+        }
+        if (!records.isEmpty()) {
+            journal.append(records);
+        }
+    }
+
+    private LoopJournal.Record createRecord(byte type, String json) throws IOException {
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+
+        if (properties.getBoolean(PROPERTY__WRITE_ENCRYPTED)) {
+            try {
+                payload = getCipher(false).doFinal(payload);
+            } catch (Exception e) {
+                logger.error("Failed to encrypt journal record.", e);
+                throw new IOException(e.getMessage());
+            }
+            type |= RECORD_FLAG__ENCRYPTED;
+        }
+
+        return new LoopJournal.Record(type, payload);
+    }
+
+    private String readRecordPayload(LoopJournal.Record record) throws Exception {
+        byte[] payload = record.getPayload();
+
+        // every record says whether it's encrypted, since the setting may have changed since it was written
+        if ((record.getType() & RECORD_FLAG__ENCRYPTED) != 0) {
+            payload = getCipher(true).doFinal(payload);
+        }
+
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Size in bytes of the changes saved since the last full save.
+     */
+    public long getJournalSize() {
+        return journal.size();
+    }
+
+    /**
+     * @return Size in bytes of the last full save.
+     */
+    public long getSnapshotSize() {
+        return saveFile.length();
     }
 
 
+    /**
+     * The whole file is decrypted at once, which is much faster than through a {@link javax.crypto.CipherInputStream}
+     * (it works on 512-byte chunks), and it's read by a {@link Utf8JsonReader}, which doesn't need the input
+     * decoded to chars first.
+     */
     private JsonReader createJsonReader(File file, Cipher cipher) throws IOException {
         InputStream inputStream;
 
         if (properties.getBoolean(PROPERTY__READ_ENCRYPTED)) {
-            CipherInputStream decStream;
-            FileInputStream fis = new FileInputStream(file);
+            byte[] plain;
             try {
-                decStream = new CipherInputStream(fis, cipher);
-            } catch (Exception e) {
-                logger.error("Failed to create encrypted stream.", e);
+                plain = cipher.doFinal(Files.readAllBytes(file.toPath()));
+            } catch (GeneralSecurityException e) {
+                logger.error("Failed to decrypt data file.", e);
                 throw new IOException(e.getMessage());
             }
-            inputStream = new GZIPInputStream(decStream);
+            inputStream = new GZIPInputStream(new ByteArrayInputStream(plain), READ_BUFFER_SIZE);
         } else {
             inputStream = new FileInputStream(file);
         }
 
-        return gson.newJsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        return new Utf8JsonReader(inputStream);
     }
 
 
-    private JsonWriter createJsonWriter() throws IOException {
+    private JsonWriter createJsonWriter(OutputStream fileOutputStream) throws IOException {
         OutputStream outputStream;
 
         if (properties.getBoolean(PROPERTY__WRITE_ENCRYPTED)) {
@@ -165,12 +308,40 @@ public class LoopRepository {
                 logger.error("Failed to configure encryption.", e);
                 throw new IOException(e.getMessage());
             }
-            outputStream = new GZIPOutputStream(new CipherOutputStream(new FileOutputStream(saveFile), cipher));
+            outputStream = new GZIPOutputStream(new CipherOutputStream(fileOutputStream, cipher));
         } else {
-            outputStream = new FileOutputStream(this.saveFile.getAbsolutePath());
+            outputStream = fileOutputStream;
+        }
+
+        // JsonWriter writes every token separately, and the encoder would allocate a buffer for each one
+        return gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Makes sure that everything reached the disk before closing, so that the file is complete by the time
+     * it replaces the previous one.
+     */
+    private static final class SyncedFileOutputStream extends FileOutputStream {
+        private boolean closed;
+
+        SyncedFileOutputStream(File file) throws FileNotFoundException {
+            super(file);
         }
 
-        return gson.newJsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flush();
+                getFD().sync();
+            } finally {
+                super.close();
+            }
+        }
     }
 
 
@@ -0,0 +1,576 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.util.BinaryDecoder;
+import net.lobby_simulator_companion.loop.util.BinaryEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * File-based storage of players, which are read one at a time, when needed, instead of loading all of them.
+ * <p>
+ * Players are appended to a data file in binary form (see {@link Player#writeBinary(BinaryEncoder)}), framed like
+ * the records of the {@link LoopJournal}; saving a player again appends a new version of it, and the old one
+ * becomes garbage (which is dropped by compacting the file once there is as much garbage as players).
+ * <p>
+ * The only thing kept in memory is an index of where the last version of each player is: the Steam ids and offsets
+ * as sorted arrays of longs (16 bytes per player), plus a small map with the players saved since the arrays were
+ * built. The arrays are stored in an index file on close, so that opening the repository doesn't need to read the
+ * data file (only the part that was appended after the index was stored, if the app didn't close cleanly).
+ * <p>
+ * Writes (saving, compacting, storing the index) are serialized by their own lock, and only take the lock of
+ * the index (which is what {@link #find} waits for) to update it in memory: appending, syncing and copying
+ * the file while compacting are done without it, so that reads don't wait for them.
+ *
+ * @author NickyRamone
+ */
+public class PlayerRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlayerRepository.class);
+    private static final String DATA_FILE_SUFFIX = ".players";
+    private static final String INDEX_FILE_SUFFIX = ".players.idx";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4C4F4F50;
+    private static final int DATA_FORMAT_VERSION = 1;
+    private static final int INDEX_FORMAT_VERSION = 1;
+    private static final int DATA_HEADER_SIZE = 13;
+    private static final int INDEX_HEADER_SIZE = 33;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The recently saved players are merged into the sorted index once there are this many of them (or more, for
+     * large indexes), to keep the map small.
+     */
+    private static final int MIN_RECENT_TO_MERGE = 4096;
+    private static final long MIN_DATA_SIZE_TO_COMPACT = 1024 * 1024;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final Random random = new Random();
+    private final Object writeLock = new Object();
+
+    /**
+     * Identifies the current data file, so that an index written for a previous one is not used.
+     */
+    private long dataFileId;
+    private long dataSize;
+
+    /**
+     * Size of the last version of every player (headers included), to know how much garbage the data file has.
+     */
+    private long liveSize;
+
+    private long[] sortedIds = new long[0];
+    private long[] sortedOffsets = new long[0];
+
+    /**
+     * Players saved after the sorted index was built, and players whose Steam id is not a plain number.
+     */
+    private final Map<String, Long> recentOffsets = new HashMap<>();
+
+
+    public PlayerRepository(AppProperties properties) throws IOException {
+        File saveFile = Paths.get(properties.get("app.home")).resolve(properties.get("storage.file")).toFile();
+        dataFile = new File(saveFile.getPath() + DATA_FILE_SUFFIX);
+        indexFile = new File(saveFile.getPath() + INDEX_FILE_SUFFIX);
+        open();
+    }
+
+    private void open() throws IOException {
+        if (!dataFile.exists()) {
+            dataFileId = random.nextLong();
+            createDataFile(dataFile, dataFileId);
+            dataSize = DATA_HEADER_SIZE;
+            liveSize = 0;
+            return;
+        }
+        dataFileId = readDataFileId();
+
+        long indexedSize;
+        try {
+            indexedSize = readIndex();
+        } catch (IOException e) {
+            logger.warn("Player index not valid ({}). Rebuilding it...", e.getMessage());
+            sortedIds = new long[0];
+            sortedOffsets = new long[0];
+            recentOffsets.clear();
+            liveSize = 0;
+            indexedSize = DATA_HEADER_SIZE;
+        }
+        scanRecords(indexedSize);
+
+        if (indexedSize == DATA_HEADER_SIZE && size() > 0) {
+            writeIndex();
+        }
+        logger.info("Opened player repository with {} players.", size());
+    }
+
+    private static void createDataFile(File file, long fileId) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeByte(DATA_FORMAT_VERSION);
+            out.writeLong(fileId);
+        }
+    }
+
+    private long readDataFileId() throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(dataFile))) {
+            if (in.readInt() != MAGIC || in.readByte() != DATA_FORMAT_VERSION) {
+                throw new IOException("Not a player data file: " + dataFile);
+            }
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Reads the records appended after the given position into the index. If the file ends with a torn or corrupt
+     * record, it's cut off there.
+     */
+    private void scanRecords(long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            long fileSize = raf.length();
+            long validSize = position;
+            CRC32 crc = new CRC32();
+
+            while (validSize + RECORD_HEADER_SIZE <= fileSize) {
+                raf.seek(validSize);
+                int length = raf.readInt();
+                int checksum = raf.readInt();
+                if (length < 1 || length > MAX_RECORD_SIZE || validSize + RECORD_HEADER_SIZE + length > fileSize) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                raf.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                String steamId = decodePlayer(payload).getSteamId64();
+                if (steamId != null) {
+                    indexRecord(raf, steamId, validSize, RECORD_HEADER_SIZE + length);
+                }
+                validSize += RECORD_HEADER_SIZE + length;
+            }
+
+            if (validSize < fileSize) {
+                logger.warn("Discarding {} bytes of incomplete or corrupt players at the end of {}.",
+                        fileSize - validSize, dataFile.getName());
+                raf.setLength(validSize);
+            }
+            dataSize = validSize;
+        }
+    }
+
+    private void indexRecord(RandomAccessFile raf, String steamId, long offset, int recordSize) throws IOException {
+        long previousOffset = getOffset(steamId);
+        if (previousOffset >= 0) {
+            raf.seek(previousOffset);
+            liveSize -= RECORD_HEADER_SIZE + raf.readInt();
+        }
+        liveSize += recordSize;
+        recentOffsets.put(steamId, offset);
+    }
+
+    /**
+     * @return Offset of the last version of the player, or -1 if there's none.
+     */
+    private long getOffset(String steamId) {
+        Long offset = recentOffsets.get(steamId);
+        if (offset != null) {
+            return offset;
+        }
+        if (isCanonicalId(steamId)) {
+            int index = Arrays.binarySearch(sortedIds, Long.parseLong(steamId));
+            if (index >= 0) {
+                return sortedOffsets[index];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return The stored player, or null if there's none with that id.
+     */
+    public synchronized Player find(String steamId) throws IOException {
+        long offset = getOffset(steamId);
+        if (offset < 0) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+            raf.seek(offset);
+            int length = raf.readInt();
+            int checksum = raf.readInt();
+            if (length < 1 || length > MAX_RECORD_SIZE) {
+                throw new IOException("Invalid player record at " + offset);
+            }
+            byte[] payload = new byte[length];
+            raf.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Corrupt player record at " + offset);
+            }
+
+            return decodePlayer(payload);
+        }
+    }
+
+    /**
+     * Appends the players with a single write, and makes sure they reach the disk. Players without a Steam id
+     * are ignored.
+     */
+    public void save(Collection<Player> players) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        // relative offset and size of the record of each player
+        Map<String, int[]> records = new HashMap<>();
+        CRC32 crc = new CRC32();
+
+        for (Player player : players) {
+            if (player.getSteamId64() == null) {
+                logger.warn("Ignoring player without a Steam id.");
+                continue;
+            }
+            byte[] payload = encodePlayer(player);
+            crc.reset();
+            crc.update(payload);
+            records.put(player.getSteamId64(), new int[]{out.size(), RECORD_HEADER_SIZE + payload.length});
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                // past the end of what is indexed, so readers don't care
+                FileChannel channel = raf.getChannel();
+                ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                channel.position(dataSize);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+
+                synchronized (this) {
+                    for (Map.Entry<String, int[]> entry : records.entrySet()) {
+                        int[] record = entry.getValue();
+                        indexRecord(raf, entry.getKey(), dataSize + record[0], record[1]);
+                    }
+                    dataSize += buffer.size();
+                }
+            }
+
+            if (dataSize >= Math.max(MIN_DATA_SIZE_TO_COMPACT, 2 * liveSize)) {
+                compact();
+            } else if (recentOffsets.size() >= Math.max(MIN_RECENT_TO_MERGE, sortedIds.length / 8)) {
+                writeIndex();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        int recentCount = 0;
+        for (String steamId : recentOffsets.keySet()) {
+            if (!isCanonicalId(steamId) || Arrays.binarySearch(sortedIds, Long.parseLong(steamId)) < 0) {
+                recentCount++;
+            }
+        }
+
+        return sortedIds.length + recentCount;
+    }
+
+    /**
+     * @return Size in bytes of the data file.
+     */
+    public synchronized long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Stores the index, so that the next time it doesn't need to be rebuilt.
+     */
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            writeIndex();
+        }
+    }
+
+
+    /**
+     * Merges the recently saved players into the sorted index, and stores it.
+     */
+    private void writeIndex() throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            mergeRecentOffsets();
+            bytes = encodeIndex();
+        }
+
+        File tempFile = new File(indexFile.getPath() + TEMP_FILE_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(bytes);
+        }
+        replace(tempFile, indexFile);
+    }
+
+    private byte[] encodeIndex() throws IOException {
+        ByteArrayOutputStream otherEntries = new ByteArrayOutputStream();
+        DataOutputStream otherOut = new DataOutputStream(otherEntries);
+        otherOut.writeInt(recentOffsets.size());
+        for (Map.Entry<String, Long> entry : recentOffsets.entrySet()) {
+            otherOut.writeUTF(entry.getKey());
+            otherOut.writeLong(entry.getValue());
+        }
+
+        int count = sortedIds.length;
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + 16 * count + otherEntries.size() + 4);
+        buffer.putInt(MAGIC).put((byte) INDEX_FORMAT_VERSION).putLong(dataFileId).putLong(dataSize)
+                .putLong(liveSize).putInt(count);
+        // ids and offsets as two blocks, so that they can be read in bulk
+        buffer.asLongBuffer().put(sortedIds).put(sortedOffsets);
+        buffer.position(buffer.position() + 16 * count);
+        buffer.put(otherEntries.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        return buffer.array();
+    }
+
+    /**
+     * Reads the stored index, if it belongs to the current data file.
+     *
+     * @return Size of the data file by the time the index was stored.
+     */
+    private long readIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return DATA_HEADER_SIZE;
+        }
+
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        if (bytes.length < INDEX_HEADER_SIZE + 4) {
+            throw new IOException("truncated");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if (buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("corrupt");
+        }
+        if (buffer.getInt() != MAGIC || buffer.get() != INDEX_FORMAT_VERSION) {
+            throw new IOException("unknown format");
+        }
+        long fileId = buffer.getLong();
+        long indexedSize = buffer.getLong();
+        if (fileId != dataFileId || indexedSize > dataFile.length()) {
+            throw new IOException("written for another data file");
+        }
+        liveSize = buffer.getLong();
+        int count = buffer.getInt();
+        if (count < 0 || count > (bytes.length - INDEX_HEADER_SIZE - 4) / 16) {
+            throw new IOException("invalid size");
+        }
+
+        sortedIds = new long[count];
+        sortedOffsets = new long[count];
+        LongBuffer longs = buffer.asLongBuffer();
+        longs.get(sortedIds);
+        longs.get(sortedOffsets);
+        buffer.position(buffer.position() + 16 * count);
+        DataInputStream otherIn = new DataInputStream(
+                new ByteArrayInputStream(bytes, buffer.position(), bytes.length - 4 - buffer.position()));
+        for (int i = otherIn.readInt(); i > 0; i--) {
+            recentOffsets.put(otherIn.readUTF(), otherIn.readLong());
+        }
+
+        return indexedSize;
+    }
+
+    private void mergeRecentOffsets() {
+        long[] recentIds = recentOffsets.keySet().stream()
+                .filter(PlayerRepository::isCanonicalId)
+                .mapToLong(Long::parseLong)
+                .sorted()
+                .toArray();
+        long[] ids = new long[sortedIds.length + recentIds.length];
+        long[] offsets = new long[ids.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+
+        while (i < sortedIds.length || j < recentIds.length) {
+            if (j == recentIds.length || (i < sortedIds.length && sortedIds[i] < recentIds[j])) {
+                ids[count] = sortedIds[i];
+                offsets[count++] = sortedOffsets[i++];
+            } else {
+                if (i < sortedIds.length && sortedIds[i] == recentIds[j]) {
+                    // replaced by the recent one
+                    i++;
+                }
+                ids[count] = recentIds[j];
+                offsets[count++] = recentOffsets.remove(Long.toString(recentIds[j++]));
+            }
+        }
+        sortedIds = Arrays.copyOf(ids, count);
+        sortedOffsets = Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Rewrites the data file with only the last version of every player. Must be called holding the write lock,
+     * so that the index does not change while the file is copied (readers can still use it in the meantime).
+     */
+    private void compact() throws IOException {
+        int sortedCount;
+        List<String> otherIds;
+        long[] oldOffsets;
+
+        synchronized (this) {
+            mergeRecentOffsets();
+            logger.debug("Compacting player data ({} bytes, {} in use)...", dataSize, liveSize);
+            sortedCount = sortedIds.length;
+            otherIds = new ArrayList<>(recentOffsets.keySet());
+            oldOffsets = Arrays.copyOf(sortedOffsets, sortedCount + otherIds.size());
+            for (int i = sortedCount; i < oldOffsets.length; i++) {
+                oldOffsets[i] = recentOffsets.get(otherIds.get(i - sortedCount));
+            }
+        }
+
+        // copied in the order they are in the file, so that it's read sequentially
+        Integer[] order = new Integer[oldOffsets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(oldOffsets[a], oldOffsets[b]));
+
+        long newFileId = random.nextLong();
+        File tempFile = new File(dataFile.getPath() + TEMP_FILE_SUFFIX);
+        createDataFile(tempFile, newFileId);
+        long newSize = DATA_HEADER_SIZE;
+        long[] newOffsets = new long[order.length];
+
+        try (RandomAccessFile source = new RandomAccessFile(dataFile, "r");
+             FileOutputStream fos = new FileOutputStream(tempFile, true);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (int index : order) {
+                source.seek(oldOffsets[index]);
+                int length = source.readInt();
+                byte[] record = new byte[RECORD_HEADER_SIZE + length];
+                source.seek(oldOffsets[index]);
+                source.readFully(record);
+                out.write(record);
+                newOffsets[index] = newSize;
+                newSize += record.length;
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        // the file and the offsets are swapped together, so that readers don't mix them up
+        synchronized (this) {
+            replace(tempFile, dataFile);
+            sortedOffsets = Arrays.copyOf(newOffsets, sortedCount);
+            for (int i = sortedCount; i < newOffsets.length; i++) {
+                recentOffsets.put(otherIds.get(i - sortedCount), newOffsets[i]);
+            }
+            dataFileId = newFileId;
+            dataSize = newSize;
+            liveSize = newSize - DATA_HEADER_SIZE;
+        }
+        writeIndex();
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Every record carries its own dictionary, so that it can be read on its own.
+     */
+    private static byte[] encodePlayer(Player player) throws IOException {
+        BinaryEncoder strings = new BinaryEncoder();
+        BinaryEncoder fields = strings.newSection();
+        player.writeBinary(fields);
+        List<String> dictionary = strings.getDictionary();
+        strings.writeVarInt(dictionary.size());
+        for (String string : dictionary) {
+            strings.writeString(string);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(strings.size() + fields.size());
+        strings.writeTo(out);
+        fields.writeTo(out);
+
+        return out.toByteArray();
+    }
+
+    private static Player decodePlayer(byte[] payload) throws IOException {
+        BinaryDecoder in = new BinaryDecoder(payload, 0, payload.length);
+        int stringCount = in.readVarInt();
+        if (stringCount < 0 || stringCount > in.remaining()) {
+            throw new IOException("Invalid dictionary size: " + stringCount);
+        }
+        String[] dictionary = new String[stringCount];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        in.setDictionary(dictionary);
+
+        return Player.readBinary(in);
+    }
+
+    private static boolean isCanonicalId(String steamId) {
+        if (steamId.isEmpty() || steamId.length() > 19 || (steamId.charAt(0) == '0' && steamId.length() > 1)) {
+            return false;
+        }
+        for (int i = 0; i < steamId.length(); i++) {
+            char c = steamId.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return steamId.length() < 19 || steamId.compareTo(Long.toString(Long.MAX_VALUE)) <= 0;
+    }
+
+}
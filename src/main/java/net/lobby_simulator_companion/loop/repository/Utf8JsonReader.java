@@ -0,0 +1,707 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@link JsonReader} that works on the UTF-8 bytes of a stream, for loading the data file with the same
+ * type adapters that write it.
+ * <p>
+ * Gson's own reader decodes the whole input into chars first, and builds every name and string through a new
+ * StringBuilder, so each player costs a dozen temporary objects only for its field names. This one reads
+ * straight from its byte buffer instead: object member names come from a small cache (so they are the same
+ * instances every time, and don't allocate), strings are built in one go, and numbers are parsed into primitives
+ * without building strings.
+ * <p>
+ * Only strict JSON is accepted, which is what Gson writes.
+ *
+ * @author NickyRamone
+ */
+final class Utf8JsonReader extends JsonReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int NAME_CACHE_SIZE = 512;
+    private static final int MAX_CACHED_NAMES = NAME_CACHE_SIZE / 2;
+
+    /**
+     * The superclass requires a reader, but never gets to use it.
+     */
+    private static final Reader UNREADABLE_READER = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    private static final int PEEKED_STRING = 8;
+    private static final int PEEKED_NAME = 9;
+    private static final int PEEKED_NUMBER = 10;
+    private static final int PEEKED_END_DOCUMENT = 11;
+
+    private static final int SCOPE_EMPTY_ARRAY = 1;
+    private static final int SCOPE_NONEMPTY_ARRAY = 2;
+    private static final int SCOPE_EMPTY_OBJECT = 3;
+    private static final int SCOPE_DANGLING_NAME = 4;
+    private static final int SCOPE_NONEMPTY_OBJECT = 5;
+    private static final int SCOPE_EMPTY_DOCUMENT = 6;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 7;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+
+    /**
+     * Position in the stream of the start of the buffer, for error messages.
+     */
+    private long bufferOffset;
+
+    private int peeked = PEEKED_NONE;
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    /**
+     * Bytes of the last string or number read. They are in the buffer, unless they spanned more than one fill
+     * of it (then they are copied to the scratch array).
+     */
+    private byte[] token;
+    private int tokenStart;
+    private int tokenLength;
+    private boolean tokenAscii;
+    private boolean tokenEscaped;
+    private byte[] scratch = new byte[256];
+
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+    private final int[] nameHashes = new int[NAME_CACHE_SIZE];
+    private int cachedNames;
+
+
+    Utf8JsonReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    Utf8JsonReader(InputStream in, int bufferSize) {
+        super(UNREADABLE_READER);
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        stack[stackSize++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(PEEKED_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(PEEKED_END_ARRAY, JsonToken.END_ARRAY);
+        stackSize--;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(PEEKED_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(PEEKED_END_OBJECT, JsonToken.END_OBJECT);
+        stackSize--;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        int p = peeked();
+
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        switch (peeked()) {
+            case PEEKED_BEGIN_OBJECT:
+                return JsonToken.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT:
+                return JsonToken.END_OBJECT;
+            case PEEKED_BEGIN_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY:
+                return JsonToken.END_ARRAY;
+            case PEEKED_TRUE:
+            case PEEKED_FALSE:
+                return JsonToken.BOOLEAN;
+            case PEEKED_NULL:
+                return JsonToken.NULL;
+            case PEEKED_STRING:
+                return JsonToken.STRING;
+            case PEEKED_NAME:
+                return JsonToken.NAME;
+            case PEEKED_NUMBER:
+                return JsonToken.NUMBER;
+            default:
+                return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(PEEKED_NAME, JsonToken.NAME);
+        readString();
+
+        return tokenEscaped || !tokenAscii ? decodeString() : cachedName();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        int p = peeked();
+        if (p == PEEKED_STRING) {
+            peeked = PEEKED_NONE;
+            readString();
+            return decodeString();
+        }
+        if (p == PEEKED_NUMBER) {
+            peeked = PEEKED_NONE;
+            readNumber();
+            return tokenString();
+        }
+        throw unexpected(JsonToken.STRING);
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        int p = peeked();
+        if (p == PEEKED_TRUE || p == PEEKED_FALSE) {
+            peeked = PEEKED_NONE;
+            return p == PEEKED_TRUE;
+        }
+        throw unexpected(JsonToken.BOOLEAN);
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(PEEKED_NULL, JsonToken.NULL);
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        String value = nextNumberString();
+        double result = Double.parseDouble(value);
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + result + location());
+        }
+
+        return result;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        if (peeked() == PEEKED_NUMBER) {
+            peeked = PEEKED_NONE;
+            readNumber();
+            return tokenAsLong();
+        }
+
+        return parseLong(nextNumberString());
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Expected an int but was " + value + location());
+        }
+
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peeked()) {
+                case PEEKED_BEGIN_ARRAY:
+                    push(SCOPE_EMPTY_ARRAY);
+                    depth++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    push(SCOPE_EMPTY_OBJECT);
+                    depth++;
+                    break;
+                case PEEKED_END_ARRAY:
+                case PEEKED_END_OBJECT:
+                    stackSize--;
+                    depth--;
+                    break;
+                case PEEKED_NAME:
+                case PEEKED_STRING:
+                    readString();
+                    break;
+                case PEEKED_NUMBER:
+                    readNumber();
+                    break;
+                default:
+                    // literals are consumed when peeked
+            }
+            peeked = PEEKED_NONE;
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + location();
+    }
+
+
+    private int peeked() throws IOException {
+        return peeked != PEEKED_NONE ? peeked : doPeek();
+    }
+
+    private void expect(int expected, JsonToken token) throws IOException {
+        if (peeked() != expected) {
+            throw unexpected(token);
+        }
+        peeked = PEEKED_NONE;
+    }
+
+    private IllegalStateException unexpected(JsonToken expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek() + location());
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Consumes the separators before the next token, and the token itself if it's a literal or a bracket.
+     * Names and strings are left after their opening quote, and numbers before their first character.
+     */
+    private int doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+
+        if (scope == SCOPE_EMPTY_ARRAY) {
+            stack[stackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+        } else if (scope == SCOPE_NONEMPTY_ARRAY) {
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = PEEKED_END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Unterminated array");
+            }
+        } else if (scope == SCOPE_EMPTY_OBJECT || scope == SCOPE_NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = SCOPE_DANGLING_NAME;
+            if (scope == SCOPE_NONEMPTY_OBJECT) {
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = PEEKED_END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+            c = nextNonWhitespace();
+            if (c == '"') {
+                return peeked = PEEKED_NAME;
+            } else if (c == '}' && scope == SCOPE_EMPTY_OBJECT) {
+                return peeked = PEEKED_END_OBJECT;
+            }
+            throw syntaxError("Expected name");
+        } else if (scope == SCOPE_DANGLING_NAME) {
+            stack[stackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == SCOPE_EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+            if (skipWhitespace() < 0) {
+                throw new EOFException("End of input" + location());
+            }
+        } else if (skipWhitespace() < 0) {
+            return peeked = PEEKED_END_DOCUMENT;
+        } else {
+            throw syntaxError("Expected end of document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '"':
+                return peeked = PEEKED_STRING;
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case ']':
+                if (scope == SCOPE_EMPTY_ARRAY) {
+                    return peeked = PEEKED_END_ARRAY;
+                }
+                throw syntaxError("Unexpected value");
+            case 't':
+                expectLiteral("rue");
+                return peeked = PEEKED_TRUE;
+            case 'f':
+                expectLiteral("alse");
+                return peeked = PEEKED_FALSE;
+            case 'n':
+                expectLiteral("ull");
+                return peeked = PEEKED_NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return peeked = PEEKED_NUMBER;
+                }
+                throw syntaxError("Unexpected value");
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (peekByte() != rest.charAt(i)) {
+                throw syntaxError("Unexpected value");
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * @return The next byte without consuming it, or -1 at the end of the input.
+     */
+    private int peekByte() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos];
+    }
+
+    /**
+     * @return The next byte that is not whitespace (without consuming it), or -1 at the end of the input.
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = peekByte();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = skipWhitespace();
+        if (c < 0) {
+            throw new EOFException("End of input" + location());
+        }
+        pos++;
+
+        return c;
+    }
+
+    /**
+     * Refills the buffer once everything in it was consumed.
+     *
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        while ((n = in.read(buffer)) == 0) {
+            // keep trying
+        }
+        if (n > 0) {
+            limit = n;
+        }
+
+        return n > 0;
+    }
+
+    /**
+     * Reads the bytes of a string, from after the opening quote up to the closing one (which is consumed),
+     * leaving escape sequences as they are.
+     */
+    private void readString() throws IOException {
+        int start = pos;
+        int copied = 0;
+        boolean ascii = true;
+        boolean escaped = false;
+        boolean escapeNext = false;
+
+        while (true) {
+            if (pos == limit) {
+                copied = copyToScratch(copied, start, pos - start);
+                if (!fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                start = pos;
+                continue;
+            }
+            byte b = buffer[pos++];
+            if (escapeNext) {
+                escapeNext = false;
+            } else if (b == '"') {
+                break;
+            } else if (b == '\\') {
+                escaped = true;
+                escapeNext = true;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+
+        int length = pos - 1 - start;
+        if (copied == 0) {
+            setToken(buffer, start, length);
+        } else {
+            setToken(scratch, 0, copyToScratch(copied, start, length));
+        }
+        tokenAscii = ascii;
+        tokenEscaped = escaped;
+    }
+
+    /**
+     * Reads the characters of a number, leaving the next byte unconsumed.
+     */
+    private void readNumber() throws IOException {
+        int start = pos;
+        int copied = 0;
+
+        while (true) {
+            if (pos == limit) {
+                copied = copyToScratch(copied, start, pos - start);
+                if (!fill()) {
+                    break;
+                }
+                start = pos;
+                continue;
+            }
+            byte b = buffer[pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        if (copied == 0) {
+            setToken(buffer, start, pos - start);
+        } else {
+            setToken(scratch, 0, copyToScratch(copied, start, pos - start));
+        }
+        tokenAscii = true;
+        tokenEscaped = false;
+    }
+
+    private void setToken(byte[] bytes, int start, int length) {
+        token = bytes;
+        tokenStart = start;
+        tokenLength = length;
+    }
+
+    /**
+     * @return The number of bytes in the scratch array after appending these.
+     */
+    private int copyToScratch(int copied, int start, int length) {
+        if (copied + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, copied + length));
+        }
+        System.arraycopy(buffer, start, scratch, copied, length);
+
+        return copied + length;
+    }
+
+    private String tokenString() {
+        return new String(token, tokenStart, tokenLength,
+                tokenAscii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    private String decodeString() throws IOException {
+        String value = tokenString();
+
+        return tokenEscaped ? unescape(value) : value;
+    }
+
+    private String unescape(String value) throws IOException {
+        StringBuilder builder = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw syntaxError("Unterminated escape sequence");
+            }
+            c = value.charAt(i);
+            switch (c) {
+                case 'u':
+                    if (i + 4 >= value.length()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw syntaxError("Malformed escape sequence");
+                    }
+                    i += 4;
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    builder.append(c);
+                    break;
+                default:
+                    throw syntaxError("Invalid escape sequence");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return The name in the cache with the bytes of the last token (which must be ASCII); it's added first if
+     * it's not there and the cache is not full.
+     */
+    private String cachedName() {
+        int hash = 0;
+        for (int i = 0; i < tokenLength; i++) {
+            // same as String.hashCode(), for ASCII
+            hash = 31 * hash + token[tokenStart + i];
+        }
+
+        int slot = hash & (NAME_CACHE_SIZE - 1);
+        for (String name; (name = nameCache[slot]) != null; slot = (slot + 1) & (NAME_CACHE_SIZE - 1)) {
+            if (nameHashes[slot] == hash && tokenEquals(name)) {
+                return name;
+            }
+        }
+
+        String name = tokenString();
+        if (cachedNames < MAX_CACHED_NAMES) {
+            nameCache[slot] = name;
+            nameHashes[slot] = hash;
+            cachedNames++;
+        }
+
+        return name;
+    }
+
+    private boolean tokenEquals(String name) {
+        if (name.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (name.charAt(i) != token[tokenStart + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String nextNumberString() throws IOException {
+        int p = peeked();
+        if (p != PEEKED_NUMBER && p != PEEKED_STRING) {
+            throw unexpected(JsonToken.NUMBER);
+        }
+
+        return nextString();
+    }
+
+    /**
+     * Plain integers with up to 18 digits (which can't overflow) are parsed straight from the bytes.
+     */
+    private long tokenAsLong() throws IOException {
+        boolean negative = tokenLength > 0 && token[tokenStart] == '-';
+        int digits = negative ? tokenLength - 1 : tokenLength;
+        if (digits < 1 || digits > 18) {
+            return parseLong(tokenString());
+        }
+
+        long value = 0;
+        for (int i = tokenLength - digits; i < tokenLength; i++) {
+            int digit = token[tokenStart + i] - '0';
+            if (digit < 0 || digit > 9) {
+                return parseLong(tokenString());
+            }
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Like Gson, takes numbers written as doubles too, as long as they have no fraction.
+     */
+    private long parseLong(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(value);
+            long result = (long) asDouble;
+            if (result != asDouble) {
+                throw new NumberFormatException("Expected a long but was " + value + location());
+            }
+
+            return result;
+        }
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + location());
+    }
+
+    private String location() {
+        return " at byte " + (bufferOffset + pos);
+    }
+
+}
@@ -0,0 +1,431 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapNativeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Captures the packets of one network interface (or capture file) for any number of {@link ConnectionDetector}s
+ * (P2P, dedicated server), so that running several of them costs about the same as running one: there is a single
+ * handle, whose filter is the union of the detectors' filters, a single copy of every packet into
+ * the {@link PacketRing}, and a single processing thread that passes each packet to every detector.
+ * <p>
+ * Detectors report matches to the engine's listeners. Everything a detector does (processing packets, handling
+ * its timeouts) runs on the processing thread, so detectors need no synchronization other than for what they
+ * expose to other threads.
+ *
+ * @author NickyRamone
+ */
+public final class CaptureEngine implements ConnectionManager {
+
+    public enum Mode {
+        P2P,
+        DEDICATED_SERVER;
+
+        ConnectionDetector newDetector() {
+            return this == P2P ? new P2pDetector() : new DedicatedServerDetector();
+        }
+    }
+
+    private static final int PROCESSOR_WAIT_MS = 100;
+    private static final long REPLAY_WAIT_NANOS = 50_000;
+
+    /**
+     * When a replay is over, time is moved forward by this much (longer than the timeout of any connection),
+     * so that the remaining connections expire.
+     */
+    private static final long REPLAY_END_MS = 60_000;
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureEngine.class);
+
+    private final InetAddress localAddr;
+    private final long localAddrHigh;
+    private final long localAddrLow;
+    private final CaptureSource capture;
+    private final boolean replay;
+    private long replayTime;
+    private int linkType = PacketHeader.LINK_TYPE_ETHERNET;
+    private final ConnectionDetector[] detectors;
+    private final List<SnifferListener> listeners = new CopyOnWriteArrayList<>();
+    private final SnifferListener fanOut = new FanOutListener();
+    private final PacketRing ring = new PacketRing();
+    private final Consumer<PacketRing.Slot> processor = this::processPacket;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final TimingWheel timingWheel;
+    private volatile boolean processing;
+    private volatile Thread processorThread;
+
+
+    /**
+     * Notifies every listener of the engine.
+     */
+    private final class FanOutListener implements SnifferListener {
+        @Override
+        public void notifyMatchConnect(Connection connection) {
+            for (SnifferListener listener : listeners) {
+                listener.notifyMatchConnect(connection);
+            }
+        }
+
+        @Override
+        public void notifyMatchDisconnect() {
+            for (SnifferListener listener : listeners) {
+                listener.notifyMatchDisconnect();
+            }
+        }
+
+        @Override
+        public void handleException(Exception e) {
+            for (SnifferListener listener : listeners) {
+                listener.handleException(e);
+            }
+        }
+    }
+
+
+    /**
+     * Captures live from the network interface that owns the given address.
+     */
+    public CaptureEngine(InetAddress localAddr, CaptureOptions captureOptions, Mode... modes)
+            throws PcapNativeException, NotOpenException, InvalidNetworkInterfaceException {
+        this(localAddr, captureOptions, newDetectors(modes));
+    }
+
+    private CaptureEngine(InetAddress localAddr, CaptureOptions captureOptions, List<ConnectionDetector> detectors)
+            throws PcapNativeException, NotOpenException, InvalidNetworkInterfaceException {
+        this(localAddr, LiveCapture.open(localAddr, getSnapLength(detectors), captureOptions), detectors);
+    }
+
+    /**
+     * @param captureSource Either a live capture or a replay (see {@link OfflineCapture}). In the latter case,
+     *                      connections expire according to the capture times of the packets, and {@link #start()}
+     *                      returns once all the packets were processed and the last connection expired.
+     */
+    public CaptureEngine(InetAddress localAddr, CaptureSource captureSource, Mode... modes)
+            throws PcapNativeException, NotOpenException {
+        this(localAddr, captureSource, newDetectors(modes));
+    }
+
+    private CaptureEngine(InetAddress localAddr, CaptureSource captureSource, List<ConnectionDetector> detectors)
+            throws PcapNativeException, NotOpenException {
+        this(localAddr, captureSource, captureSource.isLive() ? TimingWheel.getDefault() : TimingWheel.manual(),
+                detectors);
+        linkType = capture.getLinkType();
+        capture.setFilter(getFilter());
+    }
+
+    /**
+     * Builds an engine without a capture source, so that packets can be fed directly to
+     * {@link #capturePacket(byte[])} and processed with {@link #processPendingPackets()} (for example,
+     * from benchmarks).
+     */
+    CaptureEngine(InetAddress localAddr, CaptureSource capture, TimingWheel timingWheel,
+                  List<ConnectionDetector> detectors) {
+        if (detectors.isEmpty()) {
+            throw new IllegalArgumentException("At least one detector is needed.");
+        }
+        this.localAddr = localAddr;
+        this.localAddrHigh = PacketHeader.addressHigh(localAddr);
+        this.localAddrLow = PacketHeader.addressLow(localAddr);
+        this.capture = capture;
+        this.replay = capture != null && !capture.isLive();
+        this.timingWheel = timingWheel;
+        this.detectors = detectors.toArray(new ConnectionDetector[0]);
+
+        for (ConnectionDetector detector : this.detectors) {
+            detector.attach(this);
+        }
+    }
+
+    private static List<ConnectionDetector> newDetectors(Mode... modes) {
+        return Arrays.stream(modes).distinct().map(Mode::newDetector).collect(Collectors.toList());
+    }
+
+    private static int getSnapLength(List<ConnectionDetector> detectors) {
+        return detectors.stream().mapToInt(ConnectionDetector::getSnapLength).max().orElse(0);
+    }
+
+
+    public void addListener(SnifferListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SnifferListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The union of the detectors' filters, so that a packet is copied once no matter how many detectors want it.
+     */
+    private String getFilter() {
+        if (detectors.length == 1) {
+            return detectors[0].getFilter();
+        }
+
+        StringBuilder filter = new StringBuilder();
+        for (ConnectionDetector detector : detectors) {
+            if (filter.length() > 0) {
+                filter.append(" or ");
+            }
+            filter.append('(').append(detector.getFilter()).append(')');
+        }
+
+        return filter.toString();
+    }
+
+    /**
+     * Called by a detector whose filter changed. We check every packet anyway, so it does not matter if some
+     * packets that passed the previous filter are still delivered.
+     */
+    void updateFilter() {
+        if (capture != null) {
+            capture.requestFilter(getFilter());
+        }
+    }
+
+
+    @Override
+    public void start() {
+        Thread thread = new Thread(this::processPackets, "packet-processor");
+        thread.setDaemon(true);
+        processing = true;
+        processorThread = thread;
+        thread.start();
+
+        try {
+            logger.info("Started sniffing packets.");
+            capture.run(this::capturePacket);
+        } catch (Exception e) {
+            fanOut.handleException(e);
+        }
+
+        if (replay) {
+            finishProcessing(thread);
+        }
+    }
+
+    /**
+     * Waits for the processing thread to process whatever is left.
+     */
+    private void finishProcessing(Thread processorThread) {
+        processing = false;
+        LockSupport.unpark(processorThread);
+        try {
+            processorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs on the capture thread. Only the headers are copied, into the ring; packets are processed
+     * in another thread, so that a slow listener can't make the capture fall behind.
+     *
+     * @param frame Raw bytes of the captured frame, starting at the link layer header.
+     */
+    void capturePacket(byte[] frame) {
+        // a replay can wait for the processing thread instead of dropping packets
+        while (replay && processing && ring.isFull()) {
+            LockSupport.parkNanos(REPLAY_WAIT_NANOS);
+        }
+        PacketRing.Slot slot = ring.claim();
+
+        if (slot != null && slot.parse(frame, linkType)) {
+            slot.captureTime = captureTime();
+            ring.publish();
+        }
+    }
+
+    /**
+     * @return Capture time of the packet being captured, in epoch microseconds.
+     */
+    private long captureTime() {
+        return capture != null ? capture.getCaptureTime() : System.currentTimeMillis() * 1000;
+    }
+
+    private void processPackets() {
+        while (processing) {
+            if (processPendingPackets() == 0) {
+                ring.await(PROCESSOR_WAIT_MS);
+            }
+        }
+        processPendingPackets();
+
+        if (replay) {
+            // the capture is over: let the remaining connections expire
+            timingWheel.advanceTo(replayTime + REPLAY_END_MS);
+            runTasks();
+        }
+        logger.info("Stopped processing packets ({}).", ring);
+    }
+
+    /**
+     * Also runs the tasks that detectors queued (like expiring connections).
+     *
+     * @return Number of packets processed.
+     */
+    int processPendingPackets() {
+        runTasks();
+
+        return ring.drain(processor);
+    }
+
+    private void processPacket(PacketRing.Slot packet) {
+        if (replay) {
+            advanceReplayTime(packet.captureTime / 1000);
+        }
+
+        for (ConnectionDetector detector : detectors) {
+            detector.processPacket(packet);
+        }
+    }
+
+    /**
+     * When replaying, time is given by the packets: expire the connections that were due before this one.
+     */
+    private void advanceReplayTime(long time) {
+        if (time > replayTime) {
+            replayTime = time;
+            timingWheel.advanceTo(time);
+            runTasks();
+        }
+    }
+
+    /**
+     * Queues a task to be run on the processing thread (for example, by a timeout, which runs on the timing wheel
+     * thread). Can be called from any thread.
+     */
+    void runOnProcessor(Runnable task) {
+        tasks.add(task);
+        LockSupport.unpark(processorThread);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+
+    InetAddress getLocalAddr() {
+        return localAddr;
+    }
+
+    long getLocalAddrHigh() {
+        return localAddrHigh;
+    }
+
+    long getLocalAddrLow() {
+        return localAddrLow;
+    }
+
+    SnifferListener getListener() {
+        return fanOut;
+    }
+
+    TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * @return true if the packets come from a capture file instead of a live capture.
+     */
+    boolean isReplay() {
+        return replay;
+    }
+
+
+    @Override
+    public void stop() {
+        processing = false;
+        if (capture != null) {
+            logger.info("Cleaning up sniffer...");
+            try {
+                capture.stop();
+            } catch (NotOpenException e) {
+                logger.error("Failed when attempting to stop sniffer.", e);
+            }
+        }
+    }
+
+    /**
+     * @return Latency to the match host or server, from the first detector that is connected to one.
+     */
+    @Override
+    public LatencyTracker getLatency() {
+        for (ConnectionDetector detector : detectors) {
+            LatencyTracker latency = detector.getLatency();
+            if (latency != null) {
+                return latency;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Traffic counters of the connection to the match host or server, from the first detector that is
+     * connected to one.
+     */
+    @Override
+    public TrafficCounters getTraffic() {
+        for (ConnectionDetector detector : detectors) {
+            TrafficCounters traffic = detector.getTraffic();
+            if (traffic != null) {
+                return traffic;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return A snapshot of the connections of every detector.
+     */
+    public List<Connection> getConnections() {
+        List<Connection> result = new ArrayList<>();
+        for (ConnectionDetector detector : detectors) {
+            result.addAll(detector.getConnections());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The ring through which packets go from the capture thread to the processing thread, to check how
+     * full it gets and how many packets it dropped.
+     */
+    public PacketRing getPacketRing() {
+        return ring;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        for (ConnectionDetector detector : detectors) {
+            detector.close();
+        }
+        if (capture != null) {
+            capture.close();
+        }
+        logger.info("Freed network interface handle.");
+    }
+
+}
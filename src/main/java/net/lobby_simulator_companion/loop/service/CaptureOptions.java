@@ -0,0 +1,58 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.pcap4j.core.PcapHandle;
+
+/**
+ * Tunables of a live packet capture (see {@link LiveCapture}).
+ *
+ * @author NickyRamone
+ */
+public final class CaptureOptions {
+
+    public static final int DEFAULT_BUFFER_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_DISPATCH_BATCH_SIZE = 64;
+    public static final PcapHandle.TimestampPrecision DEFAULT_TIMESTAMP_PRECISION = PcapHandle.TimestampPrecision.NANO;
+
+    private final int bufferSize;
+    private final PcapHandle.TimestampPrecision timestampPrecision;
+    private final int dispatchBatchSize;
+
+
+    public CaptureOptions() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_TIMESTAMP_PRECISION, DEFAULT_DISPATCH_BATCH_SIZE);
+    }
+
+    /**
+     * @param bufferSize         Size (in bytes) of the kernel buffer where captured packets wait to be read.
+     * @param timestampPrecision Precision of the capture timestamps. If the platform does not support it,
+     *                           microsecond precision is used instead.
+     * @param dispatchBatchSize  Maximum number of packets handled on every read from the kernel buffer.
+     */
+    public CaptureOptions(int bufferSize, PcapHandle.TimestampPrecision timestampPrecision, int dispatchBatchSize) {
+        if (bufferSize <= 0 || dispatchBatchSize <= 0) {
+            throw new IllegalArgumentException("Buffer size and dispatch batch size must be positive.");
+        }
+        this.bufferSize = bufferSize;
+        this.timestampPrecision = timestampPrecision;
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public PcapHandle.TimestampPrecision getTimestampPrecision() {
+        return timestampPrecision;
+    }
+
+    public int getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureOptions{bufferSize=" + bufferSize + ", timestampPrecision=" + timestampPrecision
+                + ", dispatchBatchSize=" + dispatchBatchSize + "}";
+    }
+}
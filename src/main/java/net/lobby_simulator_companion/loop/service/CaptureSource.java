@@ -0,0 +1,55 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.RawPacketListener;
+
+/**
+ * Where the connection managers get their packets from: a network interface ({@link LiveCapture}),
+ * or a capture file recorded earlier ({@link OfflineCapture}).
+ * <p>
+ * Except for the filter requests and {@link #stop()}, all methods are called from the capture thread.
+ *
+ * @author NickyRamone
+ */
+public interface CaptureSource {
+
+    /**
+     * @return The data link type (DLT) of the captured frames.
+     */
+    int getLinkType();
+
+    void setFilter(String filterExpr) throws PcapNativeException, NotOpenException;
+
+    /**
+     * Replaces the capture filter from a thread other than the capture one. The filter is applied by the capture
+     * thread before its next read. Packets that passed the previous filter may still be delivered for a while.
+     */
+    void requestFilter(String filterExpr);
+
+    /**
+     * Passes packets to the given listener until the source is stopped or runs out of packets.
+     */
+    void run(RawPacketListener listener) throws PcapNativeException, NotOpenException;
+
+    /**
+     * Only valid while handling a packet.
+     *
+     * @return The capture time (epoch microseconds) of the packet being handled.
+     */
+    long getCaptureTime();
+
+    /**
+     * @return false if the packets were captured in the past, in which case capture times (not the current time)
+     * are what tells how much time went by.
+     */
+    boolean isLive();
+
+    /**
+     * Can be called from any thread.
+     */
+    void stop() throws NotOpenException;
+
+    void close();
+
+}
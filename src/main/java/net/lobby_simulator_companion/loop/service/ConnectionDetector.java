@@ -0,0 +1,55 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+
+import java.util.List;
+
+/**
+ * Detects match connections of a given kind (P2P, dedicated server) among the packets captured by
+ * a {@link CaptureEngine}.
+ * <p>
+ * Except for {@link #getConnections()}, {@link #getLatency()}, {@link #getTraffic()} and {@link #close()}, all
+ * methods are called from the engine's processing thread (or before it starts).
+ *
+ * @author NickyRamone
+ */
+interface ConnectionDetector {
+
+    /**
+     * @return Number of bytes of every packet this detector needs (from the start of the frame).
+     */
+    int getSnapLength();
+
+    /**
+     * @return BPF expression for the packets this detector wants in its current state. When it changes, the detector
+     * must call {@link CaptureEngine#updateFilter()}. Packets that don't match may still be passed to the detector
+     * (they may be for another detector).
+     */
+    String getFilter();
+
+    /**
+     * Called once, before any packet is processed.
+     */
+    void attach(CaptureEngine engine);
+
+    void processPacket(PacketRing.Slot packet);
+
+    /**
+     * @return A snapshot of the current connections.
+     */
+    List<Connection> getConnections();
+
+    /**
+     * @return Latency to the match host or server, or null if not connected.
+     */
+    LatencyTracker getLatency();
+
+    /**
+     * @return Traffic counters of the connection to the match host or server, or null if not connected.
+     */
+    TrafficCounters getTraffic();
+
+    void close();
+
+}
@@ -1,5 +1,7 @@
 package net.lobby_simulator_companion.loop.service;
 
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+
 /**
  * @author NickyRamone
  */
@@ -11,4 +13,19 @@ public interface ConnectionManager {
 
     void close();
 
+    /**
+     * Can be called from any thread.
+     *
+     * @return Latency to the match host or server, measured from the traffic of the current match;
+     * or null if not connected to a match.
+     */
+    LatencyTracker getLatency();
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return Traffic counters of the connection to the match host or server; or null if not connected to a match.
+     */
+    TrafficCounters getTraffic();
+
 }
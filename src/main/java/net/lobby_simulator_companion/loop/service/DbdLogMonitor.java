@@ -4,93 +4,62 @@ import net.lobby_simulator_companion.loop.domain.Killer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.AbstractMap;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * DBD log parser daemon.
- * Parses logs to extract information about the killer we are playing against.
+ * Parses logs to extract information about the killer we are playing against (see {@link DbdLogParser}).
  * <p>
- * TODO: Stop using {@link Observer} and opt for {@link java.beans.PropertyChangeListener} and {@link java.beans.PropertyChangeSupport}.
+ * The log is tailed through positional reads on a {@link FileChannel} (see {@link LogLineReader}), so that only
+ * the lines that may be relevant to us get decoded. When there is nothing left to read,
+ * the thread parks on a {@link WatchService} registered on the log folder, so that new entries are picked up
+ * as soon as the game writes them. Since file change notifications are not guaranteed to be delivered
+ * (for example, while the game keeps the file open and the OS defers metadata updates), the wait is bounded
+ * by a fallback poll period.
+ * <p>
+ * On startup, all the existing entries are skipped (seeking straight to the end of the file), unless a
+ * {@link LogCheckpoint} for the same log file is available, in which case we resume from where we left off.
+ * When the game re-creates the log, the new file is read from its beginning, since everything in it is new.
+ * <p>
+ * Detected events are published through a {@link LogEventBus}, so that the parsing thread is never blocked by
+ * (nor has to allocate for) the listeners.
+ * <p>
+ * When the reader falls far behind the end of the log (after a burst of writes, or when resuming or re-reading
+ * a whole file), everything it is about to process is already stale, so it switches to a catch-up mode where
+ * runs of repeated state events are merged (see {@link EventCoalescer}), and listeners only get the resulting
+ * state. Per-event delivery resumes once the reader is close to the end again.
  *
  * @author NickyRamone
  */
-public class DbdLogMonitor extends Observable implements Runnable {
+public class DbdLogMonitor implements Runnable {
 
-    private static final int LOG_POLLING_PERIOD_MS = 1000;
+    private static final int LOG_FALLBACK_POLL_MS = 1000;
+    private static final long CHECKPOINT_SAVE_PERIOD_MS = 5000;
+    private static final long CATCH_UP_START_LAG_BYTES = 512 * 1024;
+    private static final long CATCH_UP_END_LAG_BYTES = 64 * 1024;
 
     private static final Logger logger = LoggerFactory.getLogger(DbdLogMonitor.class);
 
-    private static final Path USER_APPDATA_PATH = Paths.get(System.getenv("APPDATA")).getParent();
     private static final String DEFAULT_LOG_PATH = "Local/DeadByDaylight/Saved/Logs/DeadByDaylight.log";
-    private static final File DEFAULT_LOG_FILE = USER_APPDATA_PATH.resolve(DEFAULT_LOG_PATH).toFile();
-
-    private static final String REGEX__LOBBY_ADD_PLAYER = "AddSessionPlayer.*Session:GameSession PlayerId:([0-9a-f\\-]+)\\|([0-9]+)";
-    private static final Pattern PATTERN__LOBBY_ADD_PLAYER = Pattern.compile(REGEX__LOBBY_ADD_PLAYER);
-
-    private static final String REGEX__KILLER_OUTFIT = "LogCustomization: --> ([a-zA-Z0-9]+)_[a-zA-Z0-9]+";
-    private static final Pattern PATTERN__KILLER_OUTFIT = Pattern.compile(REGEX__KILLER_OUTFIT);
-
-    private static final String REGEX__SERVER_CONNECT =
-            "Browse: ([0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3})(?::([0-9]{1,5}))?"
-                    + "//Game/Maps/OfflineLobby\\?UseDedicatedServer";
-    private static final Pattern PATTERN__SERVER_CONNECT = Pattern.compile(REGEX__SERVER_CONNECT);
-
-    private static final String REGEX__MATCH_WAIT = "(POST https://.+?/api/v1/queue\\])|"
-            + "(\\[PartyContextComponent::UpdateReadyButtonStateInfo\\] Ready button updated : 1)";
-    private static final Pattern PATTERN__MATCH_WAIT = Pattern.compile(REGEX__MATCH_WAIT);
-
-    private static final String REGEX__MATCH_WAIT_CANCEL = "RESPONSE: code 200.+?POST https://.+?/api/v1/queue/cancel\\]";
-    private static final Pattern PATTERN__MATCH_WAIT_CANCEL = Pattern.compile(REGEX__MATCH_WAIT_CANCEL);
-
-    private static final String REGEX__MAP_GENERATION = "ProceduralLevelGeneration: InitLevel: Theme: .* Map: ([^\\s]+)";
-    private static final Pattern PATTERN__MAP_GENERATION = Pattern.compile(REGEX__MAP_GENERATION);
-
-
-    private static final Map<Killer, String[]> KILLER_TO_OUTFIT_MAPPING = Stream.of(new Object[][]{
-            {Killer.CANNIBAL, new String[]{"CA"}},
-            {Killer.CLOWN, new String[]{"GK", "Clown"}},
-            {Killer.DEATHSLINGER, new String[]{"UkraineKiller", "UK"}},
-            {Killer.DEMOGORGON, new String[]{"QK"}},
-            {Killer.DOCTOR, new String[]{"DO", "DOW04", "Killer07"}},
-            {Killer.GHOSTFACE, new String[]{"OK"}},
-            {Killer.HAG, new String[]{"HA", "WI", "Witch"}},
-            {Killer.HILLBILLY, new String[]{"HB", "TC", "Hillbilly"}},
-            {Killer.HUNTRESS, new String[]{"BE"}},
-            {Killer.LEGION, new String[]{"KK", "Legion"}},
-            {Killer.NIGHTMARE, new String[]{"SD"}},
-            {Killer.NURSE, new String[]{"TN", "Nurse", "NR"}},
-            {Killer.ONI, new String[]{"SwedenKiller"}},
-            {Killer.PIG, new String[]{"FK"}},
-            {Killer.PLAGUE, new String[]{"MK", "Plague"}},
-            {Killer.SHAPE, new String[]{"MM"}},
-            {Killer.SPIRIT, new String[]{"HK", "Spirit"}},
-            {Killer.TRAPPER, new String[]{"TR", "TRW03", "TRW04", "Chuckles", "S01", "Trapper"}},
-            {Killer.WRAITH, new String[]{"TW", "WR", "Wraith"}}
-
-    }).collect(Collectors.toMap(e -> (Killer) e[0], e -> (String[]) e[1]));
-
-    private static final Map<String, Killer> OUTFIT_TO_KILLER_MAPPING =
-            KILLER_TO_OUTFIT_MAPPING.entrySet().stream()
-                    .flatMap(e -> Stream.of(e.getValue()).map(v -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), v)))
-                    .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
 
+    /**
+     * An event detected in the log, along with its (type-dependent) payload.
+     * <p>
+     * Instances are reusable slots owned by the {@link LogEventBus}; listeners must not keep references to them
+     * beyond the callback in which they receive them.
+     */
     public static final class Event {
         public enum Type {
             MATCH_WAIT,
@@ -104,263 +73,303 @@ public class DbdLogMonitor extends Observable implements Runnable {
             SERVER_DISCONNECT
         }
 
-        public final Type type;
-        public final Object argument;
+        /**
+         * Sequence number of the event held by this slot, or -1 while the slot is being written.
+         */
+        volatile long sequence = -1;
+        volatile Type type;
+        volatile long time;
+        volatile Killer killer;
+        volatile PlayerDto player;
+        volatile String mapId;
+        volatile String serverAddress;
+        volatile int serverPort;
+        volatile long publishNanos;
+
+        Event() {
+        }
+
+        /**
+         * Copies this slot into the given event, provided that it still holds the event with the given sequence.
+         *
+         * @return false if the slot was (or started being) overwritten with another event.
+         */
+        boolean copyTo(Event target, long expectedSequence) {
+            if (sequence != expectedSequence) {
+                return false;
+            }
+            target.type = type;
+            target.time = time;
+            target.killer = killer;
+            target.player = player;
+            target.mapId = mapId;
+            target.serverAddress = serverAddress;
+            target.serverPort = serverPort;
+            target.publishNanos = publishNanos;
+            target.sequence = expectedSequence;
+
+            return sequence == expectedSequence;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return When the event happened (epoch millis), according to the timestamp of the log entry
+         * where it was detected.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * For {@link Type#KILLER_CHARACTER} events.
+         */
+        public Killer getKiller() {
+            return killer;
+        }
+
+        /**
+         * For {@link Type#KILLER_PLAYER} events.
+         */
+        public PlayerDto getPlayer() {
+            return player;
+        }
+
+        /**
+         * For {@link Type#MAP_GENERATE} events.
+         */
+        public String getMapId() {
+            return mapId;
+        }
 
-        public Event(Type type, Object argument) {
-            this.type = type;
-            this.argument = argument;
+        /**
+         * For {@link Type#SERVER_CONNECT} events.
+         */
+        public String getServerAddress() {
+            return serverAddress;
+        }
+
+        /**
+         * For {@link Type#SERVER_CONNECT} events; zero if unknown.
+         */
+        public int getServerPort() {
+            return serverPort;
         }
 
         @Override
         public String toString() {
             return "Event{" +
                     "type=" + type +
-                    ", argument=" + argument +
+                    ", time=" + time +
+                    ", killer=" + killer +
+                    ", player=" + player +
+                    ", mapId=" + mapId +
+                    ", serverAddress=" + serverAddress +
+                    ", serverPort=" + serverPort +
                     '}';
         }
     }
 
-    private boolean connected;
-    private boolean notifiedDisconnect; // to avoid reporting disconnection repeatedly
     private File logFile;
-    private List<Function<String, Boolean>> lineProcessors;
-    private BufferedReader reader;
-    private long logSize;
-    private PlayerDto lastPlayer;
-    private PlayerDto lastKillerPlayer;
-    private Killer lastKiller;
+    private final DbdLogParser parser;
+    private final EventCoalescer coalescer;
+    private final LogLineReader lineReader;
+    private final LogEventBus eventBus = new LogEventBus();
+    private WatchService watchService;
+    private FileChannel channel;
+    private boolean logRecreated;
+    private final LogCheckpoint checkpoint;
+    private String logFileId;
+    private long lastCheckpointSave;
 
 
     public DbdLogMonitor() throws IOException {
-        this(DEFAULT_LOG_FILE);
+        this(getDefaultLogFile());
     }
 
     public DbdLogMonitor(File logFile) throws IOException {
+        this(logFile, null);
+    }
+
+    /**
+     * @param checkpoint If not null, used for resuming the reading of the log from where it was left off
+     *                   in a previous execution.
+     */
+    public DbdLogMonitor(File logFile, LogCheckpoint checkpoint) throws IOException {
         this.logFile = logFile;
+        this.checkpoint = checkpoint;
 
-        lineProcessors = Arrays.asList(
-                this::checkForServerConnect,
-                this::checkForKiller,
-                this::checkForPlayer,
-                this::checkForMatchWait,
-                this::checkForMatchWaitCancel,
-                this::checkForMatchStart,
-                this::checkForMapGeneration,
-                this::checkForMatchEnd,
-                this::checkForServerDisconnect
-        );
+        coalescer = new EventCoalescer(eventBus::publish);
+        parser = new DbdLogParser(coalescer);
+        coalescer.setMetrics(parser.getMetrics());
+        lineReader = new LogLineReader(parser.getClassifier(), parser);
 
         initReader();
     }
 
-
     private void initReader() throws IOException {
-        if (reader != null) {
-            reader.close();
+        openLog();
+        long startPosition = channel.size();
+
+        if (checkpoint != null) {
+            long resumePosition = checkpoint.getResumeOffset(logFileId, startPosition);
+            if (resumePosition >= 0) {
+                logger.info("Resuming log processing from checkpoint at offset {}.", resumePosition);
+                startPosition = resumePosition;
+            }
+        }
+
+        // unless resuming, skip all entries in the log file, since they are old and cannot be related
+        // to any active connection.
+        lineReader.reset(startPosition);
+
+        if (watchService == null) {
+            Path logDir = logFile.getAbsoluteFile().toPath().getParent();
+            watchService = logDir.getFileSystem().newWatchService();
+            logDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
         }
-        reader = new BufferedReader(new FileReader(logFile));
+    }
+
+    private void reopenReader() throws IOException {
+        // the game may still have written a few lines to the old file before letting it go
+        while (readLines()) ;
+
+        openLog();
+        lineReader.reset(0);
+        logger.info("Log file was re-created. Reading it from the beginning.");
+    }
 
-        // consume all entries in the log file, since they are old and cannot be related to any active connection.
-        while (reader.readLine() != null) ;
+    private void openLog() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+        logFileId = checkpoint != null ? LogCheckpoint.identify(logFile.toPath()) : null;
     }
 
 
     @Override
     public void run() {
-        String line;
-
         while (true) {
             try {
-                long currentLogSize = logFile.length();
-
-                if (currentLogSize < logSize) {
-                    // the log file has been recreated (probably due to DBD being restarted),
-                    // so we need to re-instantiate the reader
-                    initReader();
+                if (logRecreated || logFile.length() < lineReader.getPosition()) {
+                    // the log file has been recreated (probably due to DBD being restarted)
+                    logRecreated = false;
+                    reopenReader();
                 }
-                logSize = currentLogSize;
-                line = reader.readLine();
-
-                if (line != null) {
-                    connected = true;
-                    notifiedDisconnect = false;
-                    processLine(line);
-                } else {
+
+                boolean dataRead = readLines();
+                saveCheckpoint();
+
+                if (!dataRead) {
                     // for now, there are no more entries in the file
-                    Thread.sleep(LOG_POLLING_PERIOD_MS);
+                    awaitLogChange();
                 }
             } catch (IOException e) {
                 logger.error("Encountered error while processing log file.", e);
+                try {
+                    awaitLogChange();
+                } catch (InterruptedException e2) {
+                    // ignore
+                }
             } catch (InterruptedException e) {
                 // ignore
             }
         }
     }
 
-    private void processLine(String line) {
-        for (Function<String, Boolean> lineProcessor : lineProcessors) {
-            if (lineProcessor.apply(line)) {
-                break;
-            }
-        }
-    }
-
-
-    private Boolean checkForServerConnect(String logLine) {
-        Matcher matcher = PATTERN__SERVER_CONNECT.matcher(logLine);
-        if (!matcher.find()) {
-            return false;
-        }
-
-        String serverAddress = matcher.group(1);
-        int serverPort = matcher.group(2) != null ? Integer.valueOf(matcher.group(2)) : 0;
-        Event event = new Event(Event.Type.SERVER_CONNECT,
-                InetSocketAddress.createUnresolved(serverAddress, serverPort));
-        setChanged();
-        notifyObservers(event);
-
-        return true;
-    }
-
-    private Boolean checkForKiller(String logLine) {
-        Matcher matcher = PATTERN__KILLER_OUTFIT.matcher(logLine);
-        if (!matcher.find()) {
-            return false;
-        }
-
-        String outfitCode = matcher.group(1);
-        Killer killer = OUTFIT_TO_KILLER_MAPPING.get(outfitCode);
-
-        if (killer == null) {
-            // it's a survivor
-            lastPlayer = null;
-        } else if (lastPlayer == null && lastKillerPlayer == null) {
-            // no killer player where to assign this outfit
-        } else if (lastPlayer == null && !killer.equals(lastKiller)) {
-            // change of outfit for current killer
-            lastKiller = killer;
-            Event event = new Event(Event.Type.KILLER_CHARACTER, killer);
-            setChanged();
-            notifyObservers(event);
-        } else if (lastPlayer != null && !lastPlayer.equals(lastKillerPlayer)) {
-            // new killer player
-            logger.debug("Detected new killer player: {}", lastPlayer);
-            lastKillerPlayer = lastPlayer;
-            Event event = new Event(Event.Type.KILLER_PLAYER, lastKillerPlayer);
-            setChanged();
-            notifyObservers(event);
-
-            lastKiller = killer;
-            event = new Event(Event.Type.KILLER_CHARACTER, killer);
-            setChanged();
-            notifyObservers(event);
+    /**
+     * Reads the log from the last known position and processes every complete line found.
+     *
+     * @return true if any data was read; false if we are at the end of the file.
+     */
+    private boolean readLines() throws IOException {
+        long startTime = System.nanoTime();
+        long linesBefore = lineReader.getLinesRead();
+        int bytesRead = lineReader.read(channel);
+
+        if (bytesRead > 0) {
+            parser.getMetrics().recordRead(bytesRead, lineReader.getLinesRead() - linesBefore,
+                    System.nanoTime() - startTime);
         }
+        updateCatchUpMode();
 
-        lastPlayer = null;
-        return true;
+        return bytesRead > 0;
     }
 
-    private Boolean checkForPlayer(String logLine) {
-        Matcher matcher = PATTERN__LOBBY_ADD_PLAYER.matcher(logLine);
-        if (!matcher.find()) {
-            return false;
+    private void updateCatchUpMode() throws IOException {
+        long lag = Math.max(0, channel.size() - lineReader.getPosition());
+        LogMonitorMetrics metrics = parser.getMetrics();
+        metrics.recordReaderLag(lag);
+
+        if (!coalescer.isEnabled() && lag > CATCH_UP_START_LAG_BYTES) {
+            logger.debug("Log reader is {} bytes behind. Catching up.", lag);
+            coalescer.setEnabled(true);
+        } else if (coalescer.isEnabled() && lag <= CATCH_UP_END_LAG_BYTES) {
+            logger.debug("Log reader caught up.");
+            coalescer.setEnabled(false);
         }
-
-        String dbdPlayerId = matcher.group(1);
-        String steamUserId = matcher.group(2);
-        logger.debug("Detected user connecting to lobby. dbd-id: {}; steam-id: {}", dbdPlayerId, steamUserId);
-        lastPlayer = new PlayerDto(steamUserId, dbdPlayerId);
-
-        return true;
+        metrics.recordCatchUp(coalescer.isEnabled());
     }
 
+    private void awaitLogChange() throws InterruptedException {
+        WatchKey key = watchService.poll(LOG_FALLBACK_POLL_MS, TimeUnit.MILLISECONDS);
 
-    private Boolean checkForMatchWait(String logLine) {
-        Matcher matcher = PATTERN__MATCH_WAIT.matcher(logLine);
-        if (!matcher.find()) {
-            return false;
+        if (key != null) {
+            // any event means that we should try reading again, but we also need to know
+            // if the log has been re-created, since it may happen without the file getting any smaller
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && logFile.getName().equals(String.valueOf(event.context()))) {
+                    logRecreated = true;
+                }
+            }
+            key.reset();
         }
-
-        Event event = new Event(Event.Type.MATCH_WAIT, null);
-        setChanged();
-        notifyObservers(event);
-
-        return true;
     }
 
-    private Boolean checkForMatchWaitCancel(String logLine) {
-        boolean result = false;
-        Matcher matcher = PATTERN__MATCH_WAIT_CANCEL.matcher(logLine);
-
-        if (matcher.find()
-                || logLine.contains("[MirrorsSocialPresence::DestroyParty]")
-                || logLine.contains("[PartyContextComponent::OnQuickmatchComplete] result : UnknownError")
-                || logLine.contains("[UDBDGameInstance::RegisterDisconnectError]") // NAT error?
-        ) {
-            Event event = new Event(Event.Type.MATCH_WAIT_CANCEL, null);
-            setChanged();
-            notifyObservers(event);
-            result = true;
+    /**
+     * Saves how far we have processed the log, but not more often than every few seconds.
+     */
+    private void saveCheckpoint() {
+        if (checkpoint == null) {
+            return;
         }
 
-        return result;
-    }
-
-    private Boolean checkForMatchStart(String logLine) {
-        if (logLine.contains("//Game/Maps/ProceduralLevel")) {
-            Event event = new Event(Event.Type.MATCH_START, null);
-            setChanged();
-            notifyObservers(event);
-            return true;
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointSave >= CHECKPOINT_SAVE_PERIOD_MS) {
+            checkpoint.save(logFileId, lineReader.getLinePosition());
+            lastCheckpointSave = now;
         }
-        return false;
     }
 
-    private Boolean checkForMapGeneration(String logLine) {
-        Matcher matcher = PATTERN__MAP_GENERATION.matcher(logLine);
-
-        if (!matcher.find()) {
-            return false;
-        }
-
-        String mapId = matcher.group(1);
-        logger.debug("Detected map generation for '{}'", mapId);
-        Event event = new Event(Event.Type.MAP_GENERATE, mapId);
-        setChanged();
-        notifyObservers(event);
-
-        return true;
+    /**
+     * Subscribes a listener to the events detected in the log.
+     *
+     * @param executor Where the listener is run: for example, {@code SwingUtilities::invokeLater} for the EDT,
+     *                 or {@code Runnable::run} for the log monitor thread itself.
+     */
+    public LogEventBus.Subscription subscribe(Executor executor, Consumer<Event> listener) {
+        return eventBus.subscribe(executor, listener);
     }
 
-    private Boolean checkForMatchEnd(String logLine) {
-        if (logLine.contains("/api/v1/softWallet/put/analytics")) {
-            Event event = new Event(Event.Type.MATCH_END, null);
-            setChanged();
-            notifyObservers(event);
-            return true;
-        }
-        return false;
+    public LogEventBus getEventBus() {
+        return eventBus;
     }
 
-    private Boolean checkForServerDisconnect(String logLine) {
-        // the first check detects disconnection while the second detects leaving the post-game chat screen
-        if (logLine.contains("SetIsDisconnected from: false to: true") ||
-                logLine.contains("FOnlineAsyncTaskMirrorsDestroyMatch")) {
-
-            Event event = new Event(Event.Type.SERVER_DISCONNECT, null);
-            setChanged();
-            notifiedDisconnect = true;
-            notifyObservers(event);
-            return true;
-        }
-        return false;
+    public LogMonitorMetrics getMetrics() {
+        return parser.getMetrics();
     }
 
     public void resetKiller() {
-        lastPlayer = null;
-        lastKillerPlayer = null;
-        lastKiller = null;
+        parser.resetKiller();
+    }
+
+    public static File getDefaultLogFile() {
+        Path userAppDataPath = Paths.get(System.getenv("APPDATA")).getParent();
+        return userAppDataPath.resolve(DEFAULT_LOG_PATH).toFile();
     }
 
     public File getLogFile() {
@@ -0,0 +1,318 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts game events out of DBD log lines.
+ * <p>
+ * This holds the rules (and the state they need, like the last player seen) that turn log entries into
+ * {@link DbdLogMonitor.Event}s, independently of where the lines come from: the live log tailed by
+ * the {@link DbdLogMonitor}, or archived logs processed by the {@link LogImporter}.
+ * Lines are expected to be fed through a {@link LogLineReader} built with {@link #getClassifier()}.
+ * <p>
+ * This class is not thread-safe; every source of lines needs its own instance.
+ *
+ * @author NickyRamone
+ */
+public class DbdLogParser implements LogLineReader.LineHandler {
+
+    public interface EventHandler {
+        void handleEvent(DbdLogMonitor.Event.Type type, long time, Killer killer, PlayerDto player,
+                         String mapId, String serverAddress, int serverPort);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(DbdLogParser.class);
+
+    private static final String REGEX__LOBBY_ADD_PLAYER = "AddSessionPlayer.*Session:GameSession PlayerId:([0-9a-f\\-]+)\\|([0-9]+)";
+    private static final Pattern PATTERN__LOBBY_ADD_PLAYER = Pattern.compile(REGEX__LOBBY_ADD_PLAYER);
+
+    private static final String REGEX__KILLER_OUTFIT = "LogCustomization: --> ([a-zA-Z0-9]+)_[a-zA-Z0-9]+";
+    private static final Pattern PATTERN__KILLER_OUTFIT = Pattern.compile(REGEX__KILLER_OUTFIT);
+
+    private static final String REGEX__SERVER_CONNECT =
+            "Browse: ([0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3})(?::([0-9]{1,5}))?"
+                    + "//Game/Maps/OfflineLobby\\?UseDedicatedServer";
+    private static final Pattern PATTERN__SERVER_CONNECT = Pattern.compile(REGEX__SERVER_CONNECT);
+
+    private static final String REGEX__MATCH_WAIT = "(POST https://.+?/api/v1/queue\\])|"
+            + "(\\[PartyContextComponent::UpdateReadyButtonStateInfo\\] Ready button updated : 1)";
+    private static final Pattern PATTERN__MATCH_WAIT = Pattern.compile(REGEX__MATCH_WAIT);
+
+    private static final String REGEX__MATCH_WAIT_CANCEL = "RESPONSE: code 200.+?POST https://.+?/api/v1/queue/cancel\\]";
+    private static final Pattern PATTERN__MATCH_WAIT_CANCEL = Pattern.compile(REGEX__MATCH_WAIT_CANCEL);
+
+    private static final String REGEX__MAP_GENERATION = "ProceduralLevelGeneration: InitLevel: Theme: .* Map: ([^\\s]+)";
+    private static final Pattern PATTERN__MAP_GENERATION = Pattern.compile(REGEX__MAP_GENERATION);
+
+
+    private static final Map<Killer, String[]> KILLER_TO_OUTFIT_MAPPING = Stream.of(new Object[][]{
+            {Killer.CANNIBAL, new String[]{"CA"}},
+            {Killer.CLOWN, new String[]{"GK", "Clown"}},
+            {Killer.DEATHSLINGER, new String[]{"UkraineKiller", "UK"}},
+            {Killer.DEMOGORGON, new String[]{"QK"}},
+            {Killer.DOCTOR, new String[]{"DO", "DOW04", "Killer07"}},
+            {Killer.GHOSTFACE, new String[]{"OK"}},
+            {Killer.HAG, new String[]{"HA", "WI", "Witch"}},
+            {Killer.HILLBILLY, new String[]{"HB", "TC", "Hillbilly"}},
+            {Killer.HUNTRESS, new String[]{"BE"}},
+            {Killer.LEGION, new String[]{"KK", "Legion"}},
+            {Killer.NIGHTMARE, new String[]{"SD"}},
+            {Killer.NURSE, new String[]{"TN", "Nurse", "NR"}},
+            {Killer.ONI, new String[]{"SwedenKiller"}},
+            {Killer.PIG, new String[]{"FK"}},
+            {Killer.PLAGUE, new String[]{"MK", "Plague"}},
+            {Killer.SHAPE, new String[]{"MM"}},
+            {Killer.SPIRIT, new String[]{"HK", "Spirit"}},
+            {Killer.TRAPPER, new String[]{"TR", "TRW03", "TRW04", "Chuckles", "S01", "Trapper"}},
+            {Killer.WRAITH, new String[]{"TW", "WR", "Wraith"}}
+
+    }).collect(Collectors.toMap(e -> (Killer) e[0], e -> (String[]) e[1]));
+
+    private static final Map<String, Killer> OUTFIT_TO_KILLER_MAPPING =
+            KILLER_TO_OUTFIT_MAPPING.entrySet().stream()
+                    .flatMap(e -> Stream.of(e.getValue()).map(v -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), v)))
+                    .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+
+    private final EventHandler eventHandler;
+    private final List<Function<String, Boolean>> lineProcessors = new ArrayList<>();
+    private final List<String> lineProcessorNames = new ArrayList<>();
+    private final LineClassifier classifier;
+    private final LogMonitorMetrics metrics;
+    private long lastLogTimestamp;
+    private long logTime;
+    private PlayerDto lastPlayer;
+    private PlayerDto lastKillerPlayer;
+    private Killer lastKiller;
+
+
+    public DbdLogParser(EventHandler eventHandler) {
+        this.eventHandler = eventHandler;
+
+        LineClassifier.Builder classifierBuilder = new LineClassifier.Builder();
+        addLineProcessor(classifierBuilder, "server-connect", this::checkForServerConnect, "Browse: ");
+        addLineProcessor(classifierBuilder, "killer", this::checkForKiller, "LogCustomization: --> ");
+        addLineProcessor(classifierBuilder, "player", this::checkForPlayer, "AddSessionPlayer");
+        addLineProcessor(classifierBuilder, "match-wait", this::checkForMatchWait,
+                "/api/v1/queue]",
+                "[PartyContextComponent::UpdateReadyButtonStateInfo] Ready button updated : 1");
+        addLineProcessor(classifierBuilder, "match-wait-cancel", this::checkForMatchWaitCancel,
+                "/api/v1/queue/cancel]",
+                "[MirrorsSocialPresence::DestroyParty]",
+                "[PartyContextComponent::OnQuickmatchComplete] result : UnknownError",
+                "[UDBDGameInstance::RegisterDisconnectError]");
+        addLineProcessor(classifierBuilder, "match-start", this::checkForMatchStart, "//Game/Maps/ProceduralLevel");
+        addLineProcessor(classifierBuilder, "map-generation", this::checkForMapGeneration,
+                "ProceduralLevelGeneration: InitLevel: Theme: ");
+        addLineProcessor(classifierBuilder, "match-end", this::checkForMatchEnd, "/api/v1/softWallet/put/analytics");
+        addLineProcessor(classifierBuilder, "server-disconnect", this::checkForServerDisconnect,
+                "SetIsDisconnected from: false to: true",
+                "FOnlineAsyncTaskMirrorsDestroyMatch");
+        classifier = classifierBuilder.build();
+        metrics = new LogMonitorMetrics(lineProcessorNames);
+    }
+
+    /**
+     * Registers a line processor along with its anchors: literal strings of which at least one needs to be
+     * present in a line for the processor to possibly match it.
+     * Processors are evaluated in the order in which they are registered, and the name identifies them
+     * in the {@link LogMonitorMetrics}.
+     */
+    private void addLineProcessor(LineClassifier.Builder classifierBuilder, String name,
+                                  Function<String, Boolean> processor, String... anchors) {
+        classifierBuilder.addRule(anchors);
+        lineProcessors.add(processor);
+        lineProcessorNames.add(name);
+    }
+
+
+    public LineClassifier getClassifier() {
+        return classifier;
+    }
+
+    public LogMonitorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Most lines are not relevant to us, so we only get here for the lines that contain the anchors of
+     * at least one processor, and only run those processors.
+     */
+    @Override
+    public void handleLine(String line, int candidates) {
+        long startTime = System.nanoTime();
+
+        // entries that span multiple lines only have a timestamp in the first one
+        long lineTime = LogTimestamp.parse(line, -1);
+        if (lineTime >= 0) {
+            lastLogTimestamp = lineTime;
+        }
+        logTime = lastLogTimestamp != 0 ? lastLogTimestamp : System.currentTimeMillis();
+
+        long processorStartTime = System.nanoTime();
+        while (candidates != 0) {
+            int processorIdx = Integer.numberOfTrailingZeros(candidates);
+            boolean matched = lineProcessors.get(processorIdx).apply(line);
+            long processorEndTime = System.nanoTime();
+            metrics.recordRule(processorIdx, matched, processorEndTime - processorStartTime);
+
+            if (matched) {
+                break;
+            }
+            processorStartTime = processorEndTime;
+            candidates &= candidates - 1;
+        }
+        metrics.recordCandidateLine(System.nanoTime() - startTime);
+    }
+
+
+    private Boolean checkForServerConnect(String logLine) {
+        Matcher matcher = PATTERN__SERVER_CONNECT.matcher(logLine);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String serverAddress = matcher.group(1);
+        int serverPort = matcher.group(2) != null ? Integer.valueOf(matcher.group(2)) : 0;
+        eventHandler.handleEvent(DbdLogMonitor.Event.Type.SERVER_CONNECT, logTime, null, null, null, serverAddress, serverPort);
+
+        return true;
+    }
+
+    private Boolean checkForKiller(String logLine) {
+        Matcher matcher = PATTERN__KILLER_OUTFIT.matcher(logLine);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String outfitCode = matcher.group(1);
+        Killer killer = OUTFIT_TO_KILLER_MAPPING.get(outfitCode);
+
+        if (killer == null) {
+            // it's a survivor
+            lastPlayer = null;
+        } else if (lastPlayer == null && lastKillerPlayer == null) {
+            // no killer player where to assign this outfit
+        } else if (lastPlayer == null && !killer.equals(lastKiller)) {
+            // change of outfit for current killer
+            lastKiller = killer;
+            eventHandler.handleEvent(DbdLogMonitor.Event.Type.KILLER_CHARACTER, logTime, killer, null, null, null, 0);
+        } else if (lastPlayer != null && !lastPlayer.equals(lastKillerPlayer)) {
+            // new killer player
+            logger.debug("Detected new killer player: {}", lastPlayer);
+            lastKillerPlayer = lastPlayer;
+            eventHandler.handleEvent(DbdLogMonitor.Event.Type.KILLER_PLAYER, logTime, null, lastKillerPlayer, null, null, 0);
+
+            lastKiller = killer;
+            eventHandler.handleEvent(DbdLogMonitor.Event.Type.KILLER_CHARACTER, logTime, killer, null, null, null, 0);
+        }
+
+        lastPlayer = null;
+        return true;
+    }
+
+    private Boolean checkForPlayer(String logLine) {
+        Matcher matcher = PATTERN__LOBBY_ADD_PLAYER.matcher(logLine);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String dbdPlayerId = matcher.group(1);
+        String steamUserId = matcher.group(2);
+        logger.debug("Detected user connecting to lobby. dbd-id: {}; steam-id: {}", dbdPlayerId, steamUserId);
+        lastPlayer = new PlayerDto(steamUserId, dbdPlayerId);
+
+        return true;
+    }
+
+
+    private Boolean checkForMatchWait(String logLine) {
+        Matcher matcher = PATTERN__MATCH_WAIT.matcher(logLine);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        publish(DbdLogMonitor.Event.Type.MATCH_WAIT);
+
+        return true;
+    }
+
+    private Boolean checkForMatchWaitCancel(String logLine) {
+        boolean result = false;
+        Matcher matcher = PATTERN__MATCH_WAIT_CANCEL.matcher(logLine);
+
+        if (matcher.find()
+                || logLine.contains("[MirrorsSocialPresence::DestroyParty]")
+                || logLine.contains("[PartyContextComponent::OnQuickmatchComplete] result : UnknownError")
+                || logLine.contains("[UDBDGameInstance::RegisterDisconnectError]") // NAT error?
+        ) {
+            publish(DbdLogMonitor.Event.Type.MATCH_WAIT_CANCEL);
+            result = true;
+        }
+
+        return result;
+    }
+
+    private Boolean checkForMatchStart(String logLine) {
+        if (logLine.contains("//Game/Maps/ProceduralLevel")) {
+            publish(DbdLogMonitor.Event.Type.MATCH_START);
+            return true;
+        }
+        return false;
+    }
+
+    private Boolean checkForMapGeneration(String logLine) {
+        Matcher matcher = PATTERN__MAP_GENERATION.matcher(logLine);
+
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String mapId = matcher.group(1);
+        logger.debug("Detected map generation for '{}'", mapId);
+        eventHandler.handleEvent(DbdLogMonitor.Event.Type.MAP_GENERATE, logTime, null, null, mapId, null, 0);
+
+        return true;
+    }
+
+    private Boolean checkForMatchEnd(String logLine) {
+        if (logLine.contains("/api/v1/softWallet/put/analytics")) {
+            publish(DbdLogMonitor.Event.Type.MATCH_END);
+            return true;
+        }
+        return false;
+    }
+
+    private Boolean checkForServerDisconnect(String logLine) {
+        // the first check detects disconnection while the second detects leaving the post-game chat screen
+        if (logLine.contains("SetIsDisconnected from: false to: true") ||
+                logLine.contains("FOnlineAsyncTaskMirrorsDestroyMatch")) {
+
+            publish(DbdLogMonitor.Event.Type.SERVER_DISCONNECT);
+            return true;
+        }
+        return false;
+    }
+
+    private void publish(DbdLogMonitor.Event.Type type) {
+        eventHandler.handleEvent(type, logTime, null, null, null, null, 0);
+    }
+
+    public void resetKiller() {
+        lastPlayer = null;
+        lastKillerPlayer = null;
+        lastKiller = null;
+    }
+
+}
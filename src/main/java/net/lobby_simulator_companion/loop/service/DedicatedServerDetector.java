@@ -0,0 +1,254 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The initial handshake with the dedicated server hosting the match (including lobby) is through WireGuard protocol:
+ * https://www.wireguard.com/protocol/
+ * <p>
+ * The handshakes also give us the latency to the server: the response (message type 2) carries, as receiver index,
+ * the sender index of the initiation it answers. The initiation is sent again every couple of minutes (rekeying),
+ * which gives a new sample each time.
+ *
+ * @author NickyRamone
+ */
+final class DedicatedServerDetector implements ConnectionDetector {
+
+    /**
+     * We only look at the headers and the first bytes of the payload, so there's no point in copying more than
+     * that from the kernel: Ethernet (14) + two VLAN tags (8) + IPv4 with options (60) + UDP (8) + message type
+     * and indexes (12).
+     */
+    private static final int CAPTURED_PACKET_SIZE = 102;
+    private static final int CONNECTION_TIMEOUT_MS = 5000;
+    private static final int WIREGUARD_HANDSHAKE_INIT_PREFIX = 0x01000000;
+    private static final int WIREGUARD_HANDSHAKE_RESPONSE_PREFIX = 0x02000000;
+    private static final int WIREGUARD_SENDER_INDEX_OFFSET = 4;
+    private static final int WIREGUARD_RECEIVER_INDEX_OFFSET = 8;
+    private static final Logger logger = LoggerFactory.getLogger(DedicatedServerDetector.class);
+
+    /**
+     * Berkley Packet Filter (BPF):
+     * http://biot.com/capstats/bpf.html
+     * https://www.tcpdump.org/manpages/pcap-filter.7.html
+     * <p>
+     * While idle, we only want the WireGuard handshake initiation sent by us: message type 1 followed by three
+     * reserved zero bytes, at the start of the UDP payload (offset 8 of the UDP header); and the handshake responses
+     * (type 2) sent to us, in case the response arrives before the connected filter is in place.
+     * Once connected, we only want the traffic of the match connection (its 5-tuple), in both directions: it's what
+     * the traffic counters measure, and it includes the handshakes of every rekeying. Only the headers are copied
+     * (see {@link #CAPTURED_PACKET_SIZE}), so it stays cheap even at the packet rate of a match.
+     * The filters are swapped as the state changes, so that the kernel drops everything else and only
+     * the packets that matter are copied to us.
+     * <p>
+     * Note that libpcap only supports indexing into UDP headers over IPv4, which is what the game uses.
+     */
+    private static final String BPF__IDLE = "udp and udp[9:2] = 0 and udp[11] = 0"
+            + " and ((src host %1$s and udp[8] = 1) or (dst host %1$s and udp[8] = 2))";
+    private static final String BPF__CONNECTED = "udp and ("
+            + "(src host %1$s and src port %2$d and dst host %3$s and dst port %4$d)"
+            + " or (src host %3$s and src port %4$d and dst host %1$s and dst port %2$d))";
+
+
+    private enum State {Idle, Connected}
+
+    private CaptureEngine engine;
+    private InetAddress localAddr;
+    private long localAddrHigh;
+    private long localAddrLow;
+    private SnifferListener snifferListener;
+    private TimingWheel timingWheel;
+    private long serverAddrHigh;
+    private long serverAddrLow;
+    private volatile Connection matchConn;
+    private volatile TimingWheel.Timeout matchTimeout;
+    private volatile LatencyTracker matchLatency;
+    private State state = State.Idle;
+
+
+    /**
+     * Expiry of the match connection. Its timeout runs on the timing wheel thread, which queues this to disconnect
+     * on the processing thread.
+     */
+    private final class MatchExpiry implements Runnable {
+        final Connection conn;
+        TimingWheel.Timeout timeout;
+
+        MatchExpiry(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void run() {
+            handleMatchTimeout(this);
+        }
+    }
+
+
+    @Override
+    public void attach(CaptureEngine engine) {
+        this.engine = engine;
+        this.localAddr = engine.getLocalAddr();
+        this.localAddrHigh = engine.getLocalAddrHigh();
+        this.localAddrLow = engine.getLocalAddrLow();
+        this.snifferListener = engine.getListener();
+        this.timingWheel = engine.getTimingWheel();
+    }
+
+    @Override
+    public int getSnapLength() {
+        return CAPTURED_PACKET_SIZE;
+    }
+
+    @Override
+    public String getFilter() {
+        Connection conn = matchConn;
+
+        return state == State.Connected && conn != null
+                ? String.format(BPF__CONNECTED, conn.getRemoteAddr().getHostAddress(), conn.getRemotePort(),
+                localAddr.getHostAddress(), conn.getLocalPort())
+                : String.format(BPF__IDLE, localAddr.getHostAddress());
+    }
+
+
+    @Override
+    public void processPacket(PacketRing.Slot packet) {
+        PacketHeader header = packet.header;
+
+        if (isMatchConnect(packet)) {
+            if (!engine.isReplay()) {
+                logger.debug("Connected to match (detected {} us after capture).",
+                        LiveCapture.currentTimeMicros() - packet.captureTime);
+            } else {
+                logger.debug("Connected to match.");
+            }
+            state = State.Connected;
+            serverAddrHigh = header.getDstAddrHigh();
+            serverAddrLow = header.getDstAddrLow();
+            InetAddress serverAddr = PacketHeader.toInetAddress(serverAddrHigh, serverAddrLow);
+            Connection conn = new Connection(localAddr, header.getSrcPort(), serverAddr, header.getDstPort(),
+                    packet.captureTime / 1000);
+            matchConn = conn;
+            matchTimeout = newMatchTimeout(conn);
+            LatencyTracker latency = new LatencyTracker();
+            latency.requestSent(packet.payloadInt(WIREGUARD_SENDER_INDEX_OFFSET), 0, packet.captureTime);
+            matchLatency = latency;
+            conn.getTraffic().countOutgoing(header.getPayloadLength());
+            engine.updateFilter();
+            snifferListener.notifyMatchConnect(conn);
+
+        } else if (isFromMatchServer(header)) {
+            if (!matchTimeout.refresh()) {
+                // expired, but the disconnection was not processed yet: it's back just in time
+                matchTimeout = newMatchTimeout(matchConn);
+            }
+            matchConn.getTraffic().countIncoming(packet.captureTime, header.getPayloadLength());
+            if (isWireGuardHandshakeResponse(packet)) {
+                matchLatency.responseReceived(packet.payloadInt(WIREGUARD_RECEIVER_INDEX_OFFSET), 0,
+                        packet.captureTime);
+            }
+
+        } else if (isToMatchServer(header)) {
+            matchConn.getTraffic().countOutgoing(header.getPayloadLength());
+            if (isWireGuardHandshakeInit(packet)) {
+                // rekeying
+                matchLatency.requestSent(packet.payloadInt(WIREGUARD_SENDER_INDEX_OFFSET), 0, packet.captureTime);
+            }
+        }
+    }
+
+    private TimingWheel.Timeout newMatchTimeout(Connection conn) {
+        MatchExpiry expiry = new MatchExpiry(conn);
+        expiry.timeout = timingWheel.newTimeout(CONNECTION_TIMEOUT_MS, () -> engine.runOnProcessor(expiry));
+
+        return expiry.timeout;
+    }
+
+    /**
+     * Runs on the processing thread when no traffic was seen from the match server for a while.
+     */
+    private void handleMatchTimeout(MatchExpiry expiry) {
+        // the connection may have been given a new timeout after this one expired
+        if (state == State.Connected && matchConn == expiry.conn && matchTimeout == expiry.timeout) {
+            logger.debug("Detected match disconnection.");
+            matchConn = null;
+            matchTimeout = null;
+            matchLatency = null;
+            state = State.Idle;
+            engine.updateFilter();
+            snifferListener.notifyMatchDisconnect();
+        }
+    }
+
+    private boolean isMatchConnect(PacketRing.Slot packet) {
+        return state == State.Idle && isWireGuardHandshakeInit(packet);
+    }
+
+    private boolean isWireGuardHandshakeInit(PacketRing.Slot packet) {
+        PacketHeader header = packet.header;
+
+        return header.isUdp()
+                && header.isFrom(localAddrHigh, localAddrLow)
+                && packet.payloadPrefix == WIREGUARD_HANDSHAKE_INIT_PREFIX
+                && packet.hasPayload(WIREGUARD_SENDER_INDEX_OFFSET, 4);
+    }
+
+    private boolean isWireGuardHandshakeResponse(PacketRing.Slot packet) {
+        return packet.payloadPrefix == WIREGUARD_HANDSHAKE_RESPONSE_PREFIX
+                && packet.hasPayload(WIREGUARD_RECEIVER_INDEX_OFFSET, 4);
+    }
+
+    private boolean isFromMatchServer(PacketHeader header) {
+        Connection conn = matchConn;
+
+        return (state == State.Connected)
+                && header.isUdp()
+                && header.isFrom(serverAddrHigh, serverAddrLow) && header.getSrcPort() == conn.getRemotePort()
+                && header.getDstPort() == conn.getLocalPort();
+    }
+
+    private boolean isToMatchServer(PacketHeader header) {
+        Connection conn = matchConn;
+
+        return (state == State.Connected)
+                && header.isUdp()
+                && header.isTo(serverAddrHigh, serverAddrLow) && header.getDstPort() == conn.getRemotePort()
+                && header.getSrcPort() == conn.getLocalPort();
+    }
+
+
+    @Override
+    public List<Connection> getConnections() {
+        Connection conn = matchConn;
+
+        return conn != null ? Collections.singletonList(conn) : Collections.emptyList();
+    }
+
+    @Override
+    public LatencyTracker getLatency() {
+        return matchLatency;
+    }
+
+    @Override
+    public TrafficCounters getTraffic() {
+        Connection conn = matchConn;
+
+        return conn != null ? conn.getTraffic() : null;
+    }
+
+    @Override
+    public void close() {
+        TimingWheel.Timeout timeout = matchTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+
+/**
+ * Sits between the {@link DbdLogParser} and whoever handles its events, and, while enabled, merges runs of
+ * consecutive events of the same type that only describe a state, so that only the resulting state is passed on:
+ * <ul>
+ * <li>{@link DbdLogMonitor.Event.Type#MATCH_WAIT} and {@link DbdLogMonitor.Event.Type#MATCH_WAIT_CANCEL}:
+ * only the first one of a run counts (the rest are no-ops for the session logic), so that one is kept.</li>
+ * <li>{@link DbdLogMonitor.Event.Type#KILLER_CHARACTER} and {@link DbdLogMonitor.Event.Type#MAP_GENERATE}:
+ * only the last value matters, so the last one is kept.</li>
+ * </ul>
+ * Every other event marks a transition, so it is always passed on, after any pending merged event.
+ * Since a merged event can't be passed on until the run ends, the last one is held until the next event
+ * arrives or until {@link #flush()}.
+ * <p>
+ * This class is not thread-safe; it's meant to be used from the thread that runs the parser.
+ *
+ * @author NickyRamone
+ */
+final class EventCoalescer implements DbdLogParser.EventHandler {
+
+    private final DbdLogParser.EventHandler downstream;
+    private LogMonitorMetrics metrics;
+    private boolean enabled;
+    private DbdLogMonitor.Event.Type pendingType;
+    private long pendingTime;
+    private Killer pendingKiller;
+    private String pendingMapId;
+
+
+    EventCoalescer(DbdLogParser.EventHandler downstream) {
+        this.downstream = downstream;
+    }
+
+    /**
+     * @param metrics Where to count the merged events (the ones of the parser that feeds this).
+     */
+    void setMetrics(LogMonitorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setEnabled(boolean enabled) {
+        if (!enabled) {
+            flush();
+        }
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void handleEvent(DbdLogMonitor.Event.Type type, long time, Killer killer, PlayerDto player,
+                            String mapId, String serverAddress, int serverPort) {
+        if (!enabled || !isStateEvent(type)) {
+            flush();
+            downstream.handleEvent(type, time, killer, player, mapId, serverAddress, serverPort);
+            return;
+        }
+
+        if (type == pendingType) {
+            if (metrics != null) {
+                metrics.recordCoalescedEvent();
+            }
+            if (keepsFirst(type)) {
+                return;
+            }
+        } else {
+            flush();
+        }
+
+        pendingType = type;
+        pendingTime = time;
+        pendingKiller = killer;
+        pendingMapId = mapId;
+    }
+
+    /**
+     * Passes on the pending merged event, if any.
+     */
+    void flush() {
+        if (pendingType != null) {
+            DbdLogMonitor.Event.Type type = pendingType;
+            pendingType = null;
+            downstream.handleEvent(type, pendingTime, pendingKiller, null, pendingMapId, null, 0);
+        }
+    }
+
+    private static boolean isStateEvent(DbdLogMonitor.Event.Type type) {
+        return keepsFirst(type)
+                || type == DbdLogMonitor.Event.Type.KILLER_CHARACTER
+                || type == DbdLogMonitor.Event.Type.MAP_GENERATE;
+    }
+
+    private static boolean keepsFirst(DbdLogMonitor.Event.Type type) {
+        return type == DbdLogMonitor.Event.Type.MATCH_WAIT || type == DbdLogMonitor.Event.Type.MATCH_WAIT_CANCEL;
+    }
+
+}
@@ -0,0 +1,160 @@
+package net.lobby_simulator_companion.loop.service;
+
+/**
+ * Follows a game session (searching for a lobby, waiting in it, playing the match) out of the events of the
+ * DBD log, and keeps track of how long every stage took. Times are those of the log events (epoch millis).
+ * <p>
+ * Shared by the main window, for the live log, and by the {@link LogImporter}, for archived ones, so that
+ * both count the same way. Every event method returns whether the event applies to the current state; if it
+ * doesn't, it is ignored.
+ *
+ * @author NickyRamone
+ */
+public final class GameSession {
+
+    public enum State {
+        IDLE,
+        SEARCHING_LOBBY,
+        IN_LOBBY,
+        IN_MATCH,
+        AFTER_MATCH
+    }
+
+    private State state = State.IDLE;
+    private Long queueStartTime;
+    private Integer queueTime;
+    private Long matchWaitStartTime;
+    private int matchWaitTime;
+    private Long matchStartTime;
+    private int matchTime;
+    private int lastMatchWaitTime;
+
+
+    public boolean waitForMatch(long time) {
+        if (state != State.IDLE) {
+            return false;
+        }
+        queueStartTime = time;
+        matchWaitStartTime = time;
+        state = State.SEARCHING_LOBBY;
+
+        return true;
+    }
+
+    public boolean cancelMatchWait(long time) {
+        if (state != State.SEARCHING_LOBBY && state != State.IN_LOBBY) {
+            return false;
+        }
+        reset(time);
+
+        return true;
+    }
+
+    public boolean joinLobby(long time) {
+        if (state != State.SEARCHING_LOBBY) {
+            return false;
+        }
+        queueTime = secondsBetween(queueStartTime, time);
+        queueStartTime = null;
+        state = State.IN_LOBBY;
+
+        return true;
+    }
+
+    public boolean startMatch(long time) {
+        if (state != State.IN_LOBBY) {
+            return false;
+        }
+        matchWaitTime += secondsBetween(matchWaitStartTime, time);
+        matchWaitStartTime = null;
+        matchStartTime = time;
+        state = State.IN_MATCH;
+
+        return true;
+    }
+
+    public boolean endMatch(long time) {
+        if (state != State.IN_MATCH) {
+            return false;
+        }
+        matchTime = getMatchDuration(time);
+        lastMatchWaitTime = matchWaitTime;
+        matchWaitTime = 0;
+        state = State.AFTER_MATCH;
+
+        return true;
+    }
+
+    public boolean disconnect(long time) {
+        if (state != State.IN_MATCH && state != State.AFTER_MATCH && state != State.IN_LOBBY) {
+            return false;
+        }
+        reset(time);
+
+        return true;
+    }
+
+    /**
+     * Goes back to idle, whatever the state (for example, when the user disconnects manually).
+     */
+    public void reset(long time) {
+        queueStartTime = null;
+        queueTime = null;
+        matchWaitTime += matchWaitStartTime != null ? secondsBetween(matchWaitStartTime, time) : 0;
+        matchWaitStartTime = null;
+        state = State.IDLE;
+    }
+
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Time at which we started searching for a lobby, or null if we are not searching.
+     */
+    public Long getQueueStartTime() {
+        return queueStartTime;
+    }
+
+    /**
+     * @return Seconds spent searching for the current lobby, or null if we are not in one.
+     */
+    public Integer getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * @return Seconds waited for a match since the last one ended, including searches that were cancelled.
+     * Only final once the match starts.
+     */
+    public int getMatchWaitTime() {
+        return matchWaitTime;
+    }
+
+    /**
+     * @return Seconds since the current match started, until the given time; 0 if no match was started yet.
+     */
+    public int getMatchDuration(long time) {
+        return matchStartTime == null ? 0 : secondsBetween(matchStartTime, time);
+    }
+
+    /**
+     * @return Duration (in seconds) of the last match that ended.
+     */
+    public int getMatchTime() {
+        return matchTime;
+    }
+
+    /**
+     * @return What {@link #getMatchWaitTime()} was for the last match that ended.
+     */
+    public int getLastMatchWaitTime() {
+        return lastMatchWaitTime;
+    }
+
+    public static int secondsBetween(long startTime, long endTime) {
+        return (int) (Math.max(0, endTime - startTime) / 1000);
+    }
+
+}
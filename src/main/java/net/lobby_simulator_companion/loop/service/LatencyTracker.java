@@ -0,0 +1,172 @@
+package net.lobby_simulator_companion.loop.service;
+
+/**
+ * Passive round-trip time (RTT) estimation for a connection.
+ * <p>
+ * Requests that the game sends anyway (STUN binding requests, WireGuard handshakes) are remembered by a key that
+ * the response echoes back (the STUN transaction id, the WireGuard sender index), so that when the response is
+ * captured, the time between both is an RTT sample. No packets are ever sent by us.
+ * <p>
+ * The last samples are kept in a fixed-size ring, from which the average and the jitter (mean difference between
+ * consecutive samples) are calculated. Requests and responses must be reported from one thread (the packet
+ * processing one), while the statistics can be read from any thread.
+ *
+ * @author NickyRamone
+ */
+public final class LatencyTracker {
+
+    public static final int DEFAULT_WINDOW = 32;
+    public static final long NO_SAMPLE = -1;
+
+    /**
+     * Requests that are not answered within this time are forgotten.
+     */
+    private static final long MAX_RTT_MICROS = 5_000_000;
+    private static final int MAX_PENDING_REQUESTS = 8;
+
+    private final long[] pendingKeyHigh = new long[MAX_PENDING_REQUESTS];
+    private final long[] pendingKeyLow = new long[MAX_PENDING_REQUESTS];
+    private final long[] pendingTime = new long[MAX_PENDING_REQUESTS];
+    private int nextPending;
+
+    private final long[] samples;
+    private long sampleCount;
+
+
+    public LatencyTracker() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window Number of samples that the statistics are calculated from.
+     */
+    public LatencyTracker(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        samples = new long[window];
+    }
+
+
+    /**
+     * @param time Capture time of the request (epoch microseconds).
+     */
+    void requestSent(long keyHigh, long keyLow, long time) {
+        int i = findPending(keyHigh, keyLow);
+        if (i >= 0) {
+            // a retransmission: we can't tell which one the response will be for (Karn's algorithm)
+            pendingTime[i] = 0;
+            return;
+        }
+
+        i = nextPending;
+        nextPending = (nextPending + 1) % MAX_PENDING_REQUESTS;
+        pendingKeyHigh[i] = keyHigh;
+        pendingKeyLow[i] = keyLow;
+        pendingTime[i] = time;
+    }
+
+    /**
+     * @param time Capture time of the response (epoch microseconds).
+     * @return true if it answered a pending request, in which case a new sample was taken.
+     */
+    boolean responseReceived(long keyHigh, long keyLow, long time) {
+        int i = findPending(keyHigh, keyLow);
+        if (i < 0) {
+            return false;
+        }
+
+        long rtt = time - pendingTime[i];
+        pendingTime[i] = 0;
+        if (rtt < 0 || rtt > MAX_RTT_MICROS) {
+            return false;
+        }
+        addSample(rtt);
+
+        return true;
+    }
+
+    private int findPending(long keyHigh, long keyLow) {
+        for (int i = 0; i < MAX_PENDING_REQUESTS; i++) {
+            if (pendingTime[i] != 0 && pendingKeyHigh[i] == keyHigh && pendingKeyLow[i] == keyLow) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    synchronized void addSample(long rtt) {
+        samples[(int) (sampleCount % samples.length)] = rtt;
+        sampleCount++;
+    }
+
+
+    /**
+     * @return Total number of samples taken (including those that already left the window).
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return Last RTT sample in microseconds, or {@link #NO_SAMPLE}.
+     */
+    public synchronized long getLastRtt() {
+        return sampleCount == 0 ? NO_SAMPLE : samples[(int) ((sampleCount - 1) % samples.length)];
+    }
+
+    /**
+     * @return Average RTT of the samples in the window, in microseconds, or {@link #NO_SAMPLE}.
+     */
+    public synchronized long getAverageRtt() {
+        int n = windowSize();
+        if (n == 0) {
+            return NO_SAMPLE;
+        }
+
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += samples[i];
+        }
+
+        return sum / n;
+    }
+
+    /**
+     * @return Mean absolute difference between consecutive samples in the window, in microseconds,
+     * or {@link #NO_SAMPLE} if there are less than two samples.
+     */
+    public synchronized long getJitter() {
+        int n = windowSize();
+        if (n < 2) {
+            return NO_SAMPLE;
+        }
+
+        // oldest sample first
+        int start = (int) (sampleCount % samples.length);
+        if (n < samples.length) {
+            start = 0;
+        }
+        long sum = 0;
+        long previous = samples[start];
+        for (int k = 1; k < n; k++) {
+            long sample = samples[(start + k) % samples.length];
+            sum += Math.abs(sample - previous);
+            previous = sample;
+        }
+
+        return sum / (n - 1);
+    }
+
+    private int windowSize() {
+        return (int) Math.min(sampleCount, samples.length);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LatencyTracker{samples=" + sampleCount + ", last=" + getLastRtt() + ", average=" + getAverageRtt()
+                + ", jitter=" + getJitter() + "}";
+    }
+
+}
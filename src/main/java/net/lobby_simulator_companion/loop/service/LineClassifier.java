@@ -0,0 +1,245 @@
+package net.lobby_simulator_companion.loop.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Finds, in a single pass over a line, which rules could possibly match it.
+ * <p>
+ * Every rule is described by one or more literal anchors (substrings that any line matched by the rule must
+ * contain). All the anchors are compiled into an Aho-Corasick automaton [1], so that a line is scanned only once,
+ * regardless of the number of rules, and the (more expensive) rule-specific parsing only needs to run for the
+ * rules whose anchors were found.
+ * <p>
+ * Anchors are restricted to ASCII characters, which allows classifying both decoded strings and raw bytes
+ * with the same automaton: any non-ASCII character (or byte belonging to a multi-byte UTF-8 sequence) can never
+ * be part of an anchor, so it simply takes the automaton back to its root state.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * <p>
+ * References:
+ * [1]: https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm
+ *
+ * @author NickyRamone
+ */
+public final class LineClassifier {
+
+    public static final int MAX_RULES = Integer.SIZE;
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int ROOT = 0;
+
+    /**
+     * Maps every byte value to its symbol class. Characters that don't appear in any anchor are all
+     * indistinguishable to the automaton, so they share class zero; this keeps the transition table small
+     * enough to stay in the CPU caches.
+     */
+    private final byte[] byteClasses;
+
+    /**
+     * Transition table of the automaton (a full DFA), indexed by (state offset + symbol class), where the
+     * state offset is (state * number of classes).
+     * Every entry holds the offset of the target state, or its bitwise complement if that state has outputs.
+     */
+    private final int[] transitions;
+
+    /**
+     * For every state offset, the bit mask of the rules whose anchors end at that state (including those reached
+     * through failure links).
+     */
+    private final int[] outputs;
+
+    private final int ruleCount;
+
+
+    private LineClassifier(byte[] byteClasses, int[] transitions, int[] outputs, int ruleCount) {
+        this.byteClasses = byteClasses;
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.ruleCount = ruleCount;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return A bit mask where bit "i" is set if the anchors of rule "i" were found in the given text.
+     */
+    public int classify(CharSequence text) {
+        byte[] classes = byteClasses;
+        int[] delta = transitions;
+        int state = ROOT;
+        int mask = 0;
+
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            state = delta[state + (c < ALPHABET_SIZE ? classes[c] : 0)];
+
+            if (state < 0) {
+                state = ~state;
+                mask |= outputs[state];
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Same as {@link #classify(CharSequence)}, but working over raw (ASCII-compatible, like UTF-8) bytes.
+     */
+    public int classify(byte[] data, int offset, int length) {
+        byte[] classes = byteClasses;
+        int[] delta = transitions;
+        int state = ROOT;
+        int mask = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            state = delta[state + classes[data[i] & 0xFF]];
+
+            if (state < 0) {
+                state = ~state;
+                mask |= outputs[state];
+            }
+        }
+
+        return mask;
+    }
+
+
+    public static final class Builder {
+
+        private final List<String[]> rules = new ArrayList<>();
+
+        /**
+         * Adds a rule, which will be identified by the order in which it was added (starting at zero).
+         *
+         * @param anchors Literal substrings; finding any of them in a line flags the rule as a candidate.
+         */
+        public Builder addRule(String... anchors) {
+            if (rules.size() == MAX_RULES) {
+                throw new IllegalStateException("Cannot define more than " + MAX_RULES + " rules.");
+            }
+            if (anchors.length == 0) {
+                throw new IllegalArgumentException("A rule needs at least one anchor.");
+            }
+            for (String anchor : anchors) {
+                if (anchor.isEmpty() || !anchor.chars().allMatch(c -> c < ALPHABET_SIZE)) {
+                    throw new IllegalArgumentException("Anchors must be non-empty ASCII strings: " + anchor);
+                }
+            }
+            rules.add(anchors.clone());
+
+            return this;
+        }
+
+        public LineClassifier build() {
+            // 1) build the trie
+            List<int[]> trie = new ArrayList<>();
+            List<Integer> outputs = new ArrayList<>();
+            trie.add(newNode());
+            outputs.add(0);
+
+            for (int rule = 0; rule < rules.size(); rule++) {
+                for (String anchor : rules.get(rule)) {
+                    int state = ROOT;
+                    for (int i = 0; i < anchor.length(); i++) {
+                        int symbol = anchor.charAt(i);
+                        if (trie.get(state)[symbol] == -1) {
+                            trie.get(state)[symbol] = trie.size();
+                            trie.add(newNode());
+                            outputs.add(0);
+                        }
+                        state = trie.get(state)[symbol];
+                    }
+                    outputs.set(state, outputs.get(state) | (1 << rule));
+                }
+            }
+
+            // 2) compute failure links breadth-first and turn the trie into a full DFA
+            int stateCount = trie.size();
+            int[] dfa = new int[stateCount * ALPHABET_SIZE];
+            int[] outputMasks = new int[stateCount];
+            int[] failure = new int[stateCount];
+            Queue<Integer> queue = new ArrayDeque<>();
+
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                int child = trie.get(ROOT)[symbol];
+                if (child == -1) {
+                    dfa[symbol] = ROOT;
+                } else {
+                    dfa[symbol] = child;
+                    failure[child] = ROOT;
+                    queue.add(child);
+                }
+            }
+            outputMasks[ROOT] = outputs.get(ROOT);
+
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                outputMasks[state] = outputs.get(state) | outputMasks[failure[state]];
+
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    int child = trie.get(state)[symbol];
+                    int fallback = dfa[failure[state] * ALPHABET_SIZE + symbol];
+
+                    if (child == -1) {
+                        dfa[state * ALPHABET_SIZE + symbol] = fallback;
+                    } else {
+                        dfa[state * ALPHABET_SIZE + symbol] = child;
+                        failure[child] = fallback;
+                        queue.add(child);
+                    }
+                }
+            }
+
+            // 3) compress the alphabet: one class per character used in the anchors, plus class zero for the rest
+            byte[] byteClasses = new byte[256];
+            int classCount = 1;
+            for (String[] anchors : rules) {
+                for (String anchor : anchors) {
+                    for (int i = 0; i < anchor.length(); i++) {
+                        char c = anchor.charAt(i);
+                        if (byteClasses[c] == 0) {
+                            byteClasses[c] = (byte) classCount++;
+                        }
+                    }
+                }
+            }
+            // any character with no class of its own behaves as one that is absent from all the anchors
+            char unusedSymbol = 0;
+            while (byteClasses[unusedSymbol] != 0) {
+                unusedSymbol++;
+            }
+
+            int[] transitions = new int[stateCount * classCount];
+            int[] offsetOutputs = new int[stateCount * classCount];
+
+            for (int state = 0; state < stateCount; state++) {
+                offsetOutputs[state * classCount] = outputMasks[state];
+
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    if (symbol != unusedSymbol && byteClasses[symbol] == 0) {
+                        continue;
+                    }
+                    int target = dfa[state * ALPHABET_SIZE + symbol];
+                    int targetOffset = target * classCount;
+                    transitions[state * classCount + byteClasses[symbol]] =
+                            outputMasks[target] != 0 ? ~targetOffset : targetOffset;
+                }
+            }
+
+            return new LineClassifier(byteClasses, transitions, offsetOutputs, rules.size());
+        }
+
+        private static int[] newNode() {
+            int[] node = new int[ALPHABET_SIZE];
+            Arrays.fill(node, -1);
+            return node;
+        }
+    }
+
+}
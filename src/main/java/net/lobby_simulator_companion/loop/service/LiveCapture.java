@@ -0,0 +1,128 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.core.Pcaps;
+import org.pcap4j.core.RawPacketListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.time.Instant;
+
+/**
+ * Live capture on the network interface that owns a given local address.
+ * <p>
+ * The handle is opened in immediate mode, so that every packet is handed to us as soon as it passes the filter,
+ * instead of waiting in the kernel buffer until it fills up or the read timeout expires (which used to delay
+ * the detection of a match connection by up to a second).
+ * Packets are read in batches with {@link PcapHandle#dispatch(int, RawPacketListener)}, which returns after
+ * every read from the kernel buffer, so that the capture can be stopped between batches.
+ *
+ * @author NickyRamone
+ */
+final class LiveCapture extends PcapCapture {
+
+    /**
+     * In immediate mode, this only bounds how long a read waits when no packets arrive.
+     */
+    private static final int READ_TIMEOUT_MS = 100;
+    private static final Logger logger = LoggerFactory.getLogger(LiveCapture.class);
+
+    private final int dispatchBatchSize;
+    private volatile boolean running;
+
+
+    private LiveCapture(PcapHandle handle, int dispatchBatchSize) {
+        super(handle);
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
+
+    /**
+     * @param snaplen Maximum number of bytes copied from every packet.
+     */
+    static LiveCapture open(InetAddress localAddr, int snaplen, CaptureOptions options)
+            throws PcapNativeException, InvalidNetworkInterfaceException {
+        PcapNetworkInterface networkInterface = Pcaps.getDevByAddress(localAddr);
+        if (networkInterface == null) {
+            throw new InvalidNetworkInterfaceException();
+        }
+
+        PcapHandle handle;
+        try {
+            handle = openHandle(networkInterface, snaplen, options, options.getTimestampPrecision());
+        } catch (PcapNativeException e) {
+            if (options.getTimestampPrecision() == PcapHandle.TimestampPrecision.MICRO) {
+                throw e;
+            }
+            logger.warn("Failed to open capture handle with {} timestamp precision. Falling back to {}.",
+                    options.getTimestampPrecision(), PcapHandle.TimestampPrecision.MICRO, e);
+            handle = openHandle(networkInterface, snaplen, options, PcapHandle.TimestampPrecision.MICRO);
+        }
+        logger.info("Opened capture handle on {} ({}, timestamp precision: {}).",
+                networkInterface.getName(), options, handle.getTimestampPrecision());
+
+        return new LiveCapture(handle, options.getDispatchBatchSize());
+    }
+
+    private static PcapHandle openHandle(PcapNetworkInterface networkInterface, int snaplen, CaptureOptions options,
+                                         PcapHandle.TimestampPrecision timestampPrecision)
+            throws PcapNativeException {
+        return new PcapHandle.Builder(networkInterface.getName())
+                .snaplen(snaplen)
+                .promiscuousMode(PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS)
+                .timeoutMillis(READ_TIMEOUT_MS)
+                .immediateMode(true)
+                .bufferSize(options.getBufferSize())
+                .timestampPrecision(timestampPrecision)
+                .build();
+    }
+
+
+    /**
+     * Handles packets until the capture is stopped.
+     */
+    @Override
+    public void run(RawPacketListener listener) throws PcapNativeException, NotOpenException {
+        running = true;
+        try {
+            while (running) {
+                applyPendingFilter();
+                handle.dispatch(dispatchBatchSize, listener);
+            }
+        } catch (InterruptedException e) {
+            // can be interrupted on purpose
+        }
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public void stop() throws NotOpenException {
+        running = false;
+        handle.breakLoop();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        super.close();
+    }
+
+    /**
+     * @return The current time in epoch microseconds (as precise as the platform clock allows), to compare with
+     * capture times.
+     */
+    static long currentTimeMicros() {
+        Instant now = Instant.now();
+
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+}
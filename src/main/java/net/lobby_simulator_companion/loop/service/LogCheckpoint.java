@@ -0,0 +1,129 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps track of how far the log monitor has read the DBD log, so that a restarted app can resume from there
+ * instead of skipping everything that was written while it was not running.
+ * <p>
+ * The checkpoint is only valid for the same log file it was taken from. Since DBD recreates the log with the same
+ * name on every start, a file is identified by its creation time (or file key) plus a fingerprint of its first line (which
+ * contains the time at which the log was opened). The creation time alone is not enough: on Windows, a file that
+ * is re-created shortly after the old one is renamed inherits the old creation time ("file system tunneling").
+ *
+ * @author NickyRamone
+ */
+public class LogCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogCheckpoint.class);
+    private static final String PROPERTY__FILE_ID = "log.file.id";
+    private static final String PROPERTY__OFFSET = "log.offset";
+    private static final int MAX_FINGERPRINT_SIZE = 256;
+
+    private final File file;
+    private String savedFileId;
+    private long savedOffset = -1;
+
+
+    public LogCheckpoint(File file) {
+        this.file = file;
+        load();
+    }
+
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            savedFileId = properties.getProperty(PROPERTY__FILE_ID);
+            savedOffset = Long.parseLong(properties.getProperty(PROPERTY__OFFSET, "-1"));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Ignoring invalid log checkpoint.", e);
+            savedFileId = null;
+            savedOffset = -1;
+        }
+    }
+
+    /**
+     * @return The offset from which the given log file can be resumed, or -1 if there is no valid checkpoint for it.
+     */
+    public long getResumeOffset(String fileId, long fileSize) {
+        if (fileId == null || !fileId.equals(savedFileId) || savedOffset < 0 || savedOffset > fileSize) {
+            return -1;
+        }
+
+        return savedOffset;
+    }
+
+    public void save(String fileId, long offset) {
+        if (offset == savedOffset && fileId.equals(savedFileId)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY__FILE_ID, fileId);
+        properties.setProperty(PROPERTY__OFFSET, String.valueOf(offset));
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try {
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                properties.store(out, null);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedFileId = fileId;
+            savedOffset = offset;
+        } catch (IOException e) {
+            logger.error("Failed to save log checkpoint.", e);
+        }
+    }
+
+    /**
+     * Calculates an identifier for the given log file that survives the file growing, but not being re-created.
+     */
+    public static String identify(Path logPath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(logPath, BasicFileAttributes.class);
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_FINGERPRINT_SIZE);
+            channel.read(buffer, 0);
+            byte[] data = buffer.array();
+            int len = 0;
+
+            while (len < buffer.position() && data[len] != '\n') {
+                len++;
+            }
+            crc.update(data, 0, len);
+        }
+
+        // where available (not on Windows), the file key is more reliable, since some file systems
+        // report the last modification time as the creation time
+        Object fileKey = attributes.fileKey();
+        String fileOrigin = fileKey != null ? fileKey.toString() : String.valueOf(attributes.creationTime().toMillis());
+
+        return fileOrigin + "-" + Long.toHexString(crc.getValue());
+    }
+
+}
@@ -0,0 +1,192 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the events detected by the {@link DbdLogMonitor} to any number of subscribers.
+ * <p>
+ * Events are written into a preallocated ring of reusable {@link DbdLogMonitor.Event} slots by a single producer
+ * (the log monitor thread), which never blocks nor allocates per event: if a subscriber falls so far behind that
+ * the ring wraps around, the events it missed are counted as dropped.
+ * <p>
+ * Every subscriber has its own cursor over the ring and its own {@link Executor}, which can be the EDT
+ * ({@code SwingUtilities::invokeLater}), a background thread, or the producer thread itself ({@code Runnable::run}).
+ * The executor is only handed a task when the subscriber goes from idle to having pending events, and that task
+ * delivers everything that is pending, so a burst of events costs a single hand-off.
+ * Subscribers receive a private copy of each slot, which is only valid during the callback.
+ *
+ * @author NickyRamone
+ */
+public final class LogEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogEventBus.class);
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Events delivered later than this after being published are counted as late.
+     */
+    private static final long LATE_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final DbdLogMonitor.Event[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+
+    public LogEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of slots in the ring; rounded up to a power of two.
+     */
+    public LogEventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new DbdLogMonitor.Event[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            ring[i] = new DbdLogMonitor.Event();
+        }
+    }
+
+
+    public Subscription subscribe(Executor executor, Consumer<DbdLogMonitor.Event> listener) {
+        Subscription subscription = new Subscription(executor, listener, published.get());
+        subscriptions.add(subscription);
+
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Publishes an event. Must only be called from the producer thread.
+     *
+     * @param time When the event happened, according to the log (epoch millis).
+     */
+    public void publish(DbdLogMonitor.Event.Type type, long time, Killer killer, PlayerDto player,
+                        String mapId, String serverAddress, int serverPort) {
+        long seq = published.get();
+        DbdLogMonitor.Event slot = ring[(int) seq & mask];
+
+        slot.sequence = -1;
+        slot.type = type;
+        slot.time = time;
+        slot.killer = killer;
+        slot.player = player;
+        slot.mapId = mapId;
+        slot.serverAddress = serverAddress;
+        slot.serverPort = serverPort;
+        slot.publishNanos = System.nanoTime();
+        slot.sequence = seq;
+        published.lazySet(seq + 1);
+
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    public void publish(DbdLogMonitor.Event.Type type, long time) {
+        publish(type, time, null, null, null, null, 0);
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getDroppedCount() {
+        return subscriptions.stream().mapToLong(Subscription::getDroppedCount).sum();
+    }
+
+    public long getLateCount() {
+        return subscriptions.stream().mapToLong(Subscription::getLateCount).sum();
+    }
+
+
+    public final class Subscription {
+
+        private final Executor executor;
+        private final Consumer<DbdLogMonitor.Event> listener;
+        private final DbdLogMonitor.Event scratch = new DbdLogMonitor.Event();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final Runnable drainTask = this::drain;
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong late = new AtomicLong();
+
+        /**
+         * Sequence of the next event to deliver. Only accessed by the drain task, of which there's never more
+         * than one running at a time.
+         */
+        private long cursor;
+
+
+        private Subscription(Executor executor, Consumer<DbdLogMonitor.Event> listener, long cursor) {
+            this.executor = executor;
+            this.listener = listener;
+            this.cursor = cursor;
+        }
+
+        private void signal() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(drainTask);
+            }
+        }
+
+        private void drain() {
+            do {
+                long end = published.get();
+
+                while (cursor < end) {
+                    long seq = cursor++;
+
+                    if (end - seq > ring.length) {
+                        // the ring has wrapped around since this event was published
+                        dropped.addAndGet(end - ring.length - seq);
+                        cursor = end - ring.length;
+                        continue;
+                    }
+                    if (!ring[(int) seq & mask].copyTo(scratch, seq)) {
+                        // overwritten while we were reading it
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    if (System.nanoTime() - scratch.publishNanos > LATE_THRESHOLD_NANOS) {
+                        late.incrementAndGet();
+                    }
+
+                    try {
+                        listener.accept(scratch);
+                    } catch (RuntimeException e) {
+                        logger.error("Event listener failed to process {}.", scratch, e);
+                    }
+                }
+
+                scheduled.set(false);
+                // events published after our last check may have found us still scheduled
+            } while (cursor < published.get() && scheduled.compareAndSet(false, true));
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        public long getLateCount() {
+            return late.get();
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.domain.stats.GlobalStats;
+import net.lobby_simulator_companion.loop.domain.stats.PeriodStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds stats and player records out of archived DBD logs.
+ * <p>
+ * Every log file is processed as an independent task on a {@link ForkJoinPool} (a game session never spans
+ * more than one file), running the same rules as the live monitor ({@link DbdLogParser}) and replaying the
+ * resulting events through a headless version of the session logic of the main window.
+ * Each task produces a partial {@link Result} (stats bucketed by day, plus player records), and partial results
+ * are merged as the tasks are joined.
+ * <p>
+ * Only activity that happened before a given cutoff time is imported. Passing the time at which we started
+ * collecting stats avoids counting twice what was already recorded live.
+ *
+ * @author NickyRamone
+ */
+public class LogImporter {
+
+    public interface ProgressListener {
+        void onProgress(long bytesProcessed, long bytesTotal);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(LogImporter.class);
+    private static final String LOG_FILE_PATTERN = "DeadByDaylight*.log";
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_REPORT_BYTES = 16 * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int minMatchSeconds;
+
+
+    public LogImporter(ForkJoinPool pool, int minMatchSeconds) {
+        this.pool = pool;
+        this.minMatchSeconds = minMatchSeconds;
+    }
+
+
+    public static List<Path> findLogs(Path logDir) throws IOException {
+        List<Path> result = new ArrayList<>();
+
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(logDir, LOG_FILE_PATTERN)) {
+            for (Path path : dirStream) {
+                if (Files.isRegularFile(path)) {
+                    result.add(path);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param cutoffTime Activity at or after this time (epoch millis) is ignored.
+     */
+    public Result importLogs(List<Path> logFiles, long cutoffTime, ProgressListener progressListener)
+            throws IOException {
+        long totalBytes = 0;
+        for (Path logFile : logFiles) {
+            totalBytes += Files.size(logFile);
+        }
+
+        long startTime = System.nanoTime();
+        ImportContext context = new ImportContext(cutoffTime, totalBytes, progressListener);
+        Result result;
+        try {
+            result = logFiles.isEmpty() ? new Result() : pool.invoke(new ImportTask(context, logFiles));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long elapsedMs = (System.nanoTime() - startTime) / 1_000_000;
+        logger.info("Imported {} log files ({} bytes, {} lines) in {} ms: {} lobbies, {} matches, {} players.",
+                result.files, result.bytes, result.lines, elapsedMs,
+                result.lobbies, result.matches, result.players.size());
+
+        return result;
+    }
+
+
+    /**
+     * Everything that a set of logs contributed.
+     */
+    public static final class Result {
+        private final Map<LocalDate, PeriodStats> statsByDay = new HashMap<>();
+        private final Map<String, Player> players = new HashMap<>();
+        private int files;
+        private long bytes;
+        private long lines;
+        private int lobbies;
+        private int matches;
+
+        private PeriodStats getDayStats(long time) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+
+            return statsByDay.computeIfAbsent(dateTime.toLocalDate(),
+                    d -> new GlobalStats(d.atStartOfDay()));
+        }
+
+        private Result merge(Result other) {
+            other.statsByDay.forEach((day, stats) -> statsByDay.merge(day, stats, (s1, s2) -> {
+                s1.merge(s2);
+                return s1;
+            }));
+            other.players.forEach((steamId, player) -> players.merge(steamId, player, (p1, p2) -> {
+                p1.merge(p2);
+                return p1;
+            }));
+            files += other.files;
+            bytes += other.bytes;
+            lines += other.lines;
+            lobbies += other.lobbies;
+            matches += other.matches;
+
+            return this;
+        }
+
+        /**
+         * @return Stats collected per day (in the local time zone).
+         */
+        public Map<LocalDate, PeriodStats> getStatsByDay() {
+            return statsByDay;
+        }
+
+        /**
+         * @return Killer players found, by Steam id.
+         */
+        public Map<String, Player> getPlayers() {
+            return players;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getLobbies() {
+            return lobbies;
+        }
+
+        public int getMatches() {
+            return matches;
+        }
+    }
+
+
+    private static final class ImportContext {
+        final long cutoffTime;
+        final long totalBytes;
+        final ProgressListener progressListener;
+        final AtomicLong bytesProcessed = new AtomicLong();
+
+        ImportContext(long cutoffTime, long totalBytes, ProgressListener progressListener) {
+            this.cutoffTime = cutoffTime;
+            this.totalBytes = totalBytes;
+            this.progressListener = progressListener;
+        }
+
+        void reportProgress(long bytes) {
+            long processed = bytesProcessed.addAndGet(bytes);
+            if (progressListener != null) {
+                progressListener.onProgress(processed, totalBytes);
+            }
+        }
+    }
+
+
+    private final class ImportTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final ImportContext context;
+        private final List<Path> logFiles;
+
+        ImportTask(ImportContext context, List<Path> logFiles) {
+            this.context = context;
+            this.logFiles = logFiles;
+        }
+
+        @Override
+        protected Result compute() {
+            if (logFiles.size() == 1) {
+                try {
+                    return importLog(logFiles.get(0));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            int mid = logFiles.size() / 2;
+            ImportTask left = new ImportTask(context, logFiles.subList(0, mid));
+            ImportTask right = new ImportTask(context, logFiles.subList(mid, logFiles.size()));
+            left.fork();
+
+            return right.compute().merge(left.join());
+        }
+
+        private Result importLog(Path logFile) throws IOException {
+            Result result = new Result();
+            SessionReplay replay = new SessionReplay(result, context.cutoffTime);
+            DbdLogParser parser = new DbdLogParser(replay);
+            replay.parser = parser;
+            LogLineReader reader = new LogLineReader(parser.getClassifier(), parser, READ_BUFFER_SIZE);
+            long unreportedBytes = 0;
+
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                int n;
+                while ((n = reader.read(channel)) > 0) {
+                    unreportedBytes += n;
+                    if (unreportedBytes >= PROGRESS_REPORT_BYTES) {
+                        context.reportProgress(unreportedBytes);
+                        unreportedBytes = 0;
+                    }
+                }
+            }
+            context.reportProgress(unreportedBytes);
+            logger.debug("Imported log file {}.", logFile);
+
+            result.files = 1;
+            result.bytes = reader.getBytesRead();
+            result.lines = reader.getLinesRead();
+
+            return result;
+        }
+    }
+
+
+    /**
+     * Follows the events of a single log with a {@link GameSession}, the same way the main window does with
+     * the live log, and records the outcome of every game session into a {@link Result}.
+     */
+    private final class SessionReplay implements DbdLogParser.EventHandler {
+
+        private final Result result;
+        private final long cutoffTime;
+        private final GameSession session = new GameSession();
+        private DbdLogParser parser;
+        private Player killerPlayer;
+        private Killer killer = Killer.UNIDENTIFIED;
+        private RealmMap realmMap = RealmMap.UNIDENTIFIED;
+
+        SessionReplay(Result result, long cutoffTime) {
+            this.result = result;
+            this.cutoffTime = cutoffTime;
+        }
+
+        @Override
+        public void handleEvent(DbdLogMonitor.Event.Type type, long time, Killer killer, PlayerDto player,
+                                String mapId, String serverAddress, int serverPort) {
+            if (time >= cutoffTime) {
+                return;
+            }
+
+            switch (type) {
+                case MATCH_WAIT:
+                    session.waitForMatch(time);
+                    break;
+                case MATCH_WAIT_CANCEL:
+                    if (session.cancelMatchWait(time)) {
+                        turnToIdle();
+                    }
+                    break;
+                case SERVER_CONNECT:
+                    if (session.joinLobby(time)) {
+                        PeriodStats stats = result.getDayStats(time);
+                        stats.incrementLobbiesFound();
+                        stats.incrementSecondsQueued(session.getQueueTime());
+                        result.lobbies++;
+                        killerPlayer = null;
+                        this.killer = Killer.UNIDENTIFIED;
+                        realmMap = RealmMap.UNIDENTIFIED;
+                    }
+                    break;
+                case KILLER_PLAYER:
+                    if (session.getState() == GameSession.State.IN_LOBBY) {
+                        killerPlayer = result.players.computeIfAbsent(player.getSteamId(), id -> {
+                            Player p = new Player(time);
+                            p.setSteamId64(id);
+                            p.setDbdPlayerId(player.getDbdId());
+                            return p;
+                        });
+                        killerPlayer.updateSeen(time);
+                        killerPlayer.incrementTimesEncountered();
+                    }
+                    break;
+                case KILLER_CHARACTER:
+                    if (session.getState() == GameSession.State.IN_LOBBY) {
+                        this.killer = killer;
+                    }
+                    break;
+                case MAP_GENERATE:
+                    realmMap = RealmMap.fromDbdId(mapId);
+                    break;
+                case MATCH_START:
+                    if (session.startMatch(time)) {
+                        result.getDayStats(time).incrementSecondsWaited(session.getMatchWaitTime());
+                    }
+                    break;
+                case MATCH_END:
+                    if (session.endMatch(time)) {
+                        recordMatch(time);
+                    }
+                    break;
+                case SERVER_DISCONNECT:
+                    if (session.disconnect(time)) {
+                        turnToIdle();
+                    }
+                    break;
+            }
+        }
+
+        private void recordMatch(long time) {
+            int matchSeconds = session.getMatchTime();
+            if (matchSeconds < minMatchSeconds) {
+                return;
+            }
+
+            PeriodStats stats = result.getDayStats(time);
+            stats.incrementMatchesPlayed(killer, realmMap);
+            stats.incrementSecondsPlayed(matchSeconds, killer, realmMap);
+            result.matches++;
+
+            if (killerPlayer != null) {
+                killerPlayer.incrementMatchesPlayed();
+                killerPlayer.incrementSecondsPlayed(matchSeconds);
+            }
+        }
+
+        private void turnToIdle() {
+            killerPlayer = null;
+            parser.resetKiller();
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package net.lobby_simulator_companion.loop.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads lines from a log file that is still being written, working directly on the raw bytes.
+ * <p>
+ * The data is read into a single reusable buffer, where line boundaries are located and each line is run
+ * through a {@link LineClassifier}. Only the lines that are candidates for at least one rule are decoded into
+ * a {@link String}; all the rest (which is the vast majority) are skipped without allocating anything.
+ * <p>
+ * A trailing line with no line terminator is considered incomplete (the writer may be in the middle of it),
+ * so it is kept in the buffer until its terminator arrives.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author NickyRamone
+ */
+public final class LogLineReader {
+
+    public interface LineHandler {
+
+        /**
+         * @param line       The decoded line, without its terminator.
+         * @param candidates Bit mask of the rules whose anchors were found in the line (never zero).
+         */
+        void handleLine(String line, int candidates);
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Lines longer than this are discarded; we don't want a corrupt file to make the buffer grow indefinitely.
+     */
+    private static final int MAX_LINE_SIZE = 1024 * 1024;
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final LineClassifier classifier;
+    private final LineHandler handler;
+    private ByteBuffer buffer;
+    private long position;
+    private boolean skippingLongLine;
+    private long linesRead;
+    private long bytesRead;
+
+
+    public LogLineReader(LineClassifier classifier, LineHandler handler) {
+        this(classifier, handler, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LogLineReader(LineClassifier classifier, LineHandler handler, int bufferSize) {
+        this.classifier = classifier;
+        this.handler = handler;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+
+    /**
+     * Sets the file position from which the next read will start, discarding any incomplete line.
+     */
+    public void reset(long position) {
+        this.position = position;
+        buffer.clear();
+        skippingLongLine = false;
+    }
+
+    /**
+     * Reads the available data from the current position, and processes all the complete lines in it.
+     *
+     * @return The number of bytes read, or zero if we are at the end of the file.
+     */
+    public int read(FileChannel channel) throws IOException {
+        int n = channel.read(buffer, position);
+
+        if (n <= 0) {
+            return 0;
+        }
+        position += n;
+        bytesRead += n;
+
+        byte[] data = buffer.array();
+        int limit = buffer.position();
+        int lineStart = 0;
+
+        for (int i = 0; i < limit; i++) {
+            if (data[i] != LF) {
+                continue;
+            }
+
+            if (skippingLongLine) {
+                skippingLongLine = false;
+            } else {
+                int lineEnd = i > lineStart && data[i - 1] == CR ? i - 1 : i;
+                processLine(data, lineStart, lineEnd - lineStart);
+            }
+            lineStart = i + 1;
+        }
+
+        buffer.flip();
+        buffer.position(lineStart);
+        buffer.compact();
+
+        if (!buffer.hasRemaining()) {
+            handleBufferOverflow();
+        }
+
+        return n;
+    }
+
+    private void processLine(byte[] data, int offset, int length) {
+        linesRead++;
+        int candidates = classifier.classify(data, offset, length);
+
+        if (candidates != 0) {
+            handler.handleLine(new String(data, offset, length, StandardCharsets.UTF_8), candidates);
+        }
+    }
+
+    /**
+     * The buffer is full and there's not a single line terminator in it.
+     */
+    private void handleBufferOverflow() {
+        if (buffer.capacity() < MAX_LINE_SIZE) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_LINE_SIZE));
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        } else {
+            // drop what we have so far and ignore the rest of the line, until we find its end
+            buffer.clear();
+            skippingLongLine = true;
+        }
+    }
+
+    /**
+     * @return The file position up to which data has been read (including any incomplete line).
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The file position where the last complete line ends (i.e., excluding any incomplete line).
+     */
+    public long getLinePosition() {
+        return position - buffer.position();
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+}
@@ -0,0 +1,217 @@
+package net.lobby_simulator_companion.loop.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters about the processing of the DBD log: how much is read, how often every rule of the
+ * {@link DbdLogParser} is a candidate for a line and actually matches it, and how long it takes.
+ * <p>
+ * A rule that keeps being a candidate but never matches anymore (or that gets much slower) is a hint that a game
+ * patch changed the format of the log.
+ * <p>
+ * Counters are {@link LongAdder}s, so that updating them from the log processing thread(s) stays cheap, while
+ * the values are merged only when read (for example, from the debug panel or over JMX).
+ * <p>
+ * Per-line times are only measured for candidate lines (those that contain the anchors of some rule), since
+ * the rest are just classified and skipped; their cost is included in the overall processing rate.
+ *
+ * @author NickyRamone
+ */
+public final class LogMonitorMetrics implements LogMonitorMetricsMBean {
+
+    public static final String OBJECT_NAME = "net.lobby_simulator_companion.loop:type=LogMonitorMetrics";
+
+    /**
+     * Bucket "i" of the histogram counts the times between 2^(i-1) (inclusive) and 2^i (exclusive) nanoseconds.
+     * The last bucket also takes anything slower than that (a second or more).
+     */
+    private static final int HISTOGRAM_BUCKETS = 31;
+
+    private final String[] ruleNames;
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder candidateLines = new LongAdder();
+    private final LongAdder[] ruleCandidates;
+    private final LongAdder[] ruleHits;
+    private final LongAdder[] ruleNanos;
+    private final LongAdder[] lineNanosHistogram = newAdders(HISTOGRAM_BUCKETS);
+    private final LongAdder coalescedEvents = new LongAdder();
+    private final LongAdder catchUps = new LongAdder();
+    private volatile long readerLag;
+    private volatile boolean catchingUp;
+
+
+    public LogMonitorMetrics(List<String> ruleNames) {
+        this.ruleNames = ruleNames.toArray(new String[0]);
+        ruleCandidates = newAdders(ruleNames.size());
+        ruleHits = newAdders(ruleNames.size());
+        ruleNanos = newAdders(ruleNames.size());
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+
+
+    void recordRead(long bytes, long lines, long nanos) {
+        bytesRead.add(bytes);
+        linesRead.add(lines);
+        readNanos.add(nanos);
+    }
+
+    void recordRule(int ruleIdx, boolean hit, long nanos) {
+        ruleCandidates[ruleIdx].increment();
+        ruleNanos[ruleIdx].add(nanos);
+        if (hit) {
+            ruleHits[ruleIdx].increment();
+        }
+    }
+
+    void recordCandidateLine(long nanos) {
+        candidateLines.increment();
+        lineNanosHistogram[histogramBucket(nanos)].increment();
+    }
+
+    void recordReaderLag(long bytes) {
+        readerLag = bytes;
+    }
+
+    void recordCatchUp(boolean catchingUp) {
+        if (catchingUp && !this.catchingUp) {
+            catchUps.increment();
+        }
+        this.catchingUp = catchingUp;
+    }
+
+    void recordCoalescedEvent() {
+        coalescedEvents.increment();
+    }
+
+    static int histogramBucket(long nanos) {
+        return Math.min(Long.SIZE - Long.numberOfLeadingZeros(nanos), HISTOGRAM_BUCKETS - 1);
+    }
+
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getCandidateLines() {
+        return candidateLines.sum();
+    }
+
+    @Override
+    public double getProcessingLinesPerSecond() {
+        long nanos = readNanos.sum();
+
+        return nanos == 0 ? 0 : linesRead.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getReaderLagBytes() {
+        return readerLag;
+    }
+
+    @Override
+    public boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+    @Override
+    public long getCatchUpCount() {
+        return catchUps.sum();
+    }
+
+    @Override
+    public long getCoalescedEvents() {
+        return coalescedEvents.sum();
+    }
+
+    @Override
+    public String[] getRuleNames() {
+        return ruleNames.clone();
+    }
+
+    @Override
+    public long[] getRuleCandidates() {
+        return sums(ruleCandidates);
+    }
+
+    @Override
+    public long[] getRuleHits() {
+        return sums(ruleHits);
+    }
+
+    @Override
+    public long[] getRuleNanos() {
+        return sums(ruleNanos);
+    }
+
+    @Override
+    public long[] getLineNanosHistogram() {
+        return sums(lineNanosHistogram);
+    }
+
+    /**
+     * @param percentile Between 0 and 1.
+     * @return Upper bound (in nanoseconds) of the histogram bucket where the given percentile of the candidate
+     * line times falls, or zero if no lines have been recorded.
+     */
+    public long getLineNanosPercentile(double percentile) {
+        long[] histogram = getLineNanosHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile);
+        long accumulated = 0;
+        for (int i = 0; i < histogram.length && total > 0; i++) {
+            accumulated += histogram[i];
+            if (accumulated >= threshold) {
+                return 1L << i;
+            }
+        }
+
+        return 0;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            result[i] = adders[i].sum();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        linesRead.reset();
+        bytesRead.reset();
+        readNanos.reset();
+        candidateLines.reset();
+        coalescedEvents.reset();
+        catchUps.reset();
+        for (LongAdder[] adders : new LongAdder[][]{ruleCandidates, ruleHits, ruleNanos, lineNanosHistogram}) {
+            for (LongAdder adder : adders) {
+                adder.reset();
+            }
+        }
+    }
+
+}
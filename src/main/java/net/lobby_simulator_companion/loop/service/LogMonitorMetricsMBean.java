@@ -0,0 +1,55 @@
+package net.lobby_simulator_companion.loop.service;
+
+/**
+ * JMX view of the {@link LogMonitorMetrics}.
+ * Per-rule arrays are indexed like {@link #getRuleNames()}.
+ *
+ * @author NickyRamone
+ */
+public interface LogMonitorMetricsMBean {
+
+    long getLinesRead();
+
+    long getBytesRead();
+
+    long getCandidateLines();
+
+    /**
+     * @return Lines processed per second of actual work (that is, not counting the time spent waiting for the game
+     * to write to the log).
+     */
+    double getProcessingLinesPerSecond();
+
+    /**
+     * @return How far the reader is from the end of the log, as of the last read.
+     */
+    long getReaderLagBytes();
+
+    boolean isCatchingUp();
+
+    /**
+     * @return Number of times that the reader fell far enough behind to switch to catch-up mode.
+     */
+    long getCatchUpCount();
+
+    /**
+     * @return Number of events that were merged into others while catching up.
+     */
+    long getCoalescedEvents();
+
+    String[] getRuleNames();
+
+    long[] getRuleCandidates();
+
+    long[] getRuleHits();
+
+    long[] getRuleNanos();
+
+    /**
+     * @return Number of candidate lines whose processing took between 2^(i-1) and 2^i nanoseconds, for every i.
+     */
+    long[] getLineNanosHistogram();
+
+    void reset();
+
+}
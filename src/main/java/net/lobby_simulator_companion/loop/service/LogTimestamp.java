@@ -0,0 +1,80 @@
+package net.lobby_simulator_companion.loop.service;
+
+/**
+ * Parses the timestamp with which the game prefixes its log entries, like in:
+ * <pre>
+ * [2020.06.11-18.24.15:123][ 42]LogNet: ...
+ * </pre>
+ * The game writes these timestamps in UTC.
+ * <p>
+ * Since this runs for every relevant log line, the conversion to epoch milliseconds is done with plain
+ * arithmetic on the characters (no formatters, calendars nor temporary objects).
+ *
+ * @author NickyRamone
+ */
+public final class LogTimestamp {
+
+    private static final String PATTERN = "[0000.00.00-00.00.00:000]";
+    private static final int LENGTH = PATTERN.length();
+    private static final long MILLIS_PER_DAY = 24L * 3600 * 1000;
+
+    private LogTimestamp() {
+    }
+
+
+    /**
+     * @return The timestamp of the given log line in epoch milliseconds, or the given default value if the line
+     * does not start with a valid timestamp (as it happens, for example, with multi-line entries).
+     */
+    public static long parse(CharSequence line, long defaultValue) {
+        if (line.length() < LENGTH) {
+            return defaultValue;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char expected = PATTERN.charAt(i);
+            char c = line.charAt(i);
+            if (expected == '0' ? c < '0' || c > '9' : c != expected) {
+                return defaultValue;
+            }
+        }
+
+        int year = digits(line, 1, 4);
+        int month = digits(line, 6, 2);
+        int day = digits(line, 9, 2);
+        int hour = digits(line, 12, 2);
+        int minute = digits(line, 15, 2);
+        int second = digits(line, 18, 2);
+        int millis = digits(line, 21, 3);
+
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+            return defaultValue;
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+    }
+
+    private static int digits(CharSequence s, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Number of days since 1970-01-01 for the given date of the proleptic Gregorian calendar.
+     * See: http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+}
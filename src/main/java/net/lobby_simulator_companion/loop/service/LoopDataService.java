@@ -4,19 +4,43 @@ import net.lobby_simulator_companion.loop.domain.LoopData;
 import net.lobby_simulator_companion.loop.domain.Player;
 import net.lobby_simulator_companion.loop.domain.stats.Stats;
 import net.lobby_simulator_companion.loop.repository.LoopRepository;
+import net.lobby_simulator_companion.loop.repository.PlayerRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service for managing data related to players and servers.
+ * <p>
+ * Changes are saved periodically to the repository's journal. The whole data is only saved again (compacting
+ * the journal into it) once the journal grows as large as the last full save, so that the cost of rewriting
+ * everything is spread among many changes.
+ * <p>
+ * The data is modified in place by a single thread (the EDT), without locks. To save it, that thread takes copies
+ * of what changed (which only takes a moment), and a dedicated writer thread serializes and writes the copies,
+ * so that the UI never waits for the disk. If the writer falls behind, the newer copies are merged into the ones
+ * still waiting to be written, so at most one batch of copies is pending at any time.
+ * <p>
+ * Players are not loaded all at once, but read from the {@link PlayerRepository} when looked up, and kept in a
+ * bounded cache of the most recently used ones. Players with unsaved changes are saved with the rest of the
+ * changes, or as soon as they are evicted from the cache.
  *
  * @author NickyRamone
  */
@@ -24,16 +48,96 @@ public class LoopDataService {
 
     private static final Logger logger = LoggerFactory.getLogger(LoopDataService.class);
     private static final long SAVE_PERIOD_MS = 5000;
+    private static final long MIN_JOURNAL_SIZE_TO_COMPACT = 1024 * 1024;
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+    private static final int PLAYER_CACHE_SIZE = 1000;
 
     private final LoopRepository repository;
+    private final PlayerRepository playerRepository;
+    private final Executor dataExecutor;
+    private final ExecutorService writer;
+    private final Timer timer;
 
     private LoopData loopData;
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
-    private boolean dirty;
 
+    /**
+     * Most recently used players, by steam id (the least recent one first).
+     * Also guards the modifications of {@link #dirtyPlayers} and {@link #pendingBatch}, since players are looked up
+     * from other threads besides the data thread.
+     */
+    private final Map<String, Player> players = new LinkedHashMap<>(16, 0.75f, true);
+    private final int playerCacheSize;
+    private final Set<Player> dirtyPlayers = ConcurrentHashMap.newKeySet();
 
-    public LoopDataService(LoopRepository loopRepository) throws IOException {
+    /**
+     * Copies of players waiting for the writer, by steam id (so that they are found even if they are evicted
+     * from the cache before being written).
+     */
+    private final Map<String, Player> unwrittenPlayers = new ConcurrentHashMap<>();
+    private volatile boolean statsDirty;
+
+    /**
+     * Set when so much changed that it's better to save everything (or when changes were not tracked one by one).
+     */
+    private volatile boolean compactionPending;
+
+    /**
+     * Copies taken by the data thread, waiting for the writer.
+     */
+    private final AtomicReference<SaveBatch> pendingBatch = new AtomicReference<>();
+
+
+    /**
+     * Copies of the data to be saved. Nobody else holds a reference to them, so the writer can serialize them
+     * while the originals keep changing.
+     */
+    private static final class SaveBatch {
+        /**
+         * The whole data (other than players), if it's to be saved in full. Otherwise, null.
+         */
+        LoopData snapshot;
+
+        /**
+         * Players that changed, by steam id.
+         */
+        final Map<String, Player> players = new LinkedHashMap<>();
+
+        /**
+         * The stats, if they changed (after the snapshot, if any). Otherwise, null.
+         */
+        Stats stats;
+
+        /**
+         * @param newer A batch taken after this one.
+         */
+        void merge(SaveBatch newer) {
+            if (newer.snapshot != null) {
+                snapshot = newer.snapshot;
+                stats = null;
+            }
+            players.putAll(newer.players);
+            if (newer.stats != null) {
+                stats = newer.stats;
+            }
+        }
+    }
+
+
+    /**
+     * @param dataExecutor Runs tasks on the thread that modifies the data (for example,
+     *                     {@code SwingUtilities::invokeLater} for the EDT).
+     */
+    public LoopDataService(LoopRepository loopRepository, PlayerRepository playerRepository, Executor dataExecutor)
+            throws IOException {
+        this(loopRepository, playerRepository, dataExecutor, PLAYER_CACHE_SIZE);
+    }
+
+    LoopDataService(LoopRepository loopRepository, PlayerRepository playerRepository, Executor dataExecutor,
+                    int playerCacheSize) throws IOException {
         repository = loopRepository;
+        this.playerRepository = playerRepository;
+        this.dataExecutor = dataExecutor;
+        this.playerCacheSize = playerCacheSize;
         try {
             loopData = repository.load();
         } catch (FileNotFoundException e) {
@@ -41,14 +145,8 @@ public class LoopDataService {
             repository.save(loopData);
         }
 
-        for (Player player : loopData.getPlayers()) {
-            // backwards compatibility: supporting the legacy UUID field
-            if (player.getUID() != null && !player.getUID().isEmpty()) {
-                player.setSteamId64(player.getUID());
-                player.setUID(null);
-                dirty = true;
-            }
-            players.put(player.getSteamId64(), player);
+        if (!loopData.getPlayers().isEmpty()) {
+            movePlayersToRepository();
         }
 
         // backwards compatibility: support new 'secondsQueued' and 'lobbiesFound' fields
@@ -59,56 +157,263 @@ public class LoopDataService {
                 int waitTime = queueTime + 120 * s.getMatchesPlayed();
                 s.setSecondsQueued(queueTime);
                 s.setSecondsWaited(waitTime);
-                dirty = true;
+                compactionPending = true;
             }
 
             if (s.getLobbiesFound() == 0 && s.getMatchesPlayed() != 0) {
                 // approximation
                 s.setLobbiesFound(s.getMatchesPlayed());
-                dirty = true;
+                compactionPending = true;
             }
         });
 
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "data-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         // schedule thread for saving dirty data
-        Timer timer = new Timer();
+        timer = new Timer("data-saver", true);
         timer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
-                save();
+                dataExecutor.execute(LoopDataService.this::save);
             }
         }, SAVE_PERIOD_MS, SAVE_PERIOD_MS);
     }
 
+    /**
+     * Older versions kept the players in the main data file. They are moved to the player repository, and the data
+     * file is saved again without them; both before going on, so that if the app dies in between, the move is just
+     * done again the next time.
+     */
+    private void movePlayersToRepository() throws IOException {
+        Collection<Player> legacyPlayers = loopData.getPlayers();
+        logger.info("Moving {} players to the player repository...", legacyPlayers.size());
+
+        for (Player player : legacyPlayers) {
+            // backwards compatibility: supporting the legacy UUID field
+            if (player.getUID() != null && !player.getUID().isEmpty()) {
+                player.setSteamId64(player.getUID());
+                player.setUID(null);
+            }
+        }
+        playerRepository.save(legacyPlayers);
+
+        LoopData dataWithoutPlayers = new LoopData();
+        dataWithoutPlayers.getStats().copyFrom(loopData.getStats());
+        repository.save(dataWithoutPlayers);
+        loopData = dataWithoutPlayers;
+    }
+
     public Stats getStats() {
         return loopData.getStats();
     }
 
+    /**
+     * @return The stored player, or null if there's none with that id.
+     * @throws UncheckedIOException If the player could not be read (rather than taking it as a new one, which would
+     *                              overwrite it).
+     */
     public Player getPlayerBySteamId(String steamId) {
-        return players.get(steamId);
+        synchronized (players) {
+            Player player = players.get(steamId);
+            if (player == null) {
+                player = readPlayer(steamId);
+                if (player != null) {
+                    players.put(steamId, player);
+                    evictPlayers();
+                }
+            }
+
+            return player;
+        }
+    }
+
+    private Player readPlayer(String steamId) {
+        Player unwrittenPlayer = unwrittenPlayers.get(steamId);
+        if (unwrittenPlayer != null) {
+            // the copy belongs to the writer
+            return unwrittenPlayer.clone();
+        }
+
+        try {
+            return playerRepository.find(steamId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read player " + steamId, e);
+        }
     }
 
-    public void addPlayer(String steamId, Player player) {
-        players.put(steamId, player);
-        dirty = true;
+    public void addPlayer(Player player) {
+        notifyChange(player);
     }
 
+    /**
+     * Evicts the least recently used players that don't fit in the cache. The ones with unsaved changes are queued
+     * to be written.
+     */
+    private void evictPlayers() {
+        if (players.size() <= playerCacheSize) {
+            return;
+        }
+        SaveBatch batch = new SaveBatch();
+
+        for (Iterator<Player> it = players.values().iterator(); players.size() > playerCacheSize; ) {
+            Player player = it.next();
+            it.remove();
+            if (dirtyPlayers.remove(player)) {
+                batch.players.put(player.getSteamId64(), player.clone());
+            }
+        }
+        if (!batch.players.isEmpty()) {
+            queue(batch);
+        }
+    }
+
+    /**
+     * Merges the data imported from archived logs. Must be called from the EDT, which is the thread where
+     * stats are updated.
+     */
+    public void mergeImport(LogImporter.Result importResult) {
+        Stats stats = loopData.getStats();
+        importResult.getStatsByDay().forEach((day, dayStats) -> stats.merge(day.atStartOfDay(), dayStats));
+        importResult.getPlayers().forEach((steamId, player) -> {
+            Player storedPlayer = getPlayerBySteamId(steamId);
+            if (storedPlayer != null) {
+                storedPlayer.merge(player);
+                notifyChange(storedPlayer);
+            } else {
+                addPlayer(player);
+            }
+        });
+        compactionPending = true;
+    }
+
+    /**
+     * Notifies that the stats were modified.
+     */
     public void notifyChange() {
-        dirty = true;
+        statsDirty = true;
+    }
+
+    /**
+     * Notifies that a stored player was modified.
+     */
+    public void notifyChange(Player player) {
+        synchronized (players) {
+            players.put(player.getSteamId64(), player);
+            dirtyPlayers.add(player);
+            evictPlayers();
+        }
     }
 
-    public synchronized void save() {
-        if (!dirty) {
+    /**
+     * Takes copies of what changed and queues them to be written in the background.
+     * Must be called from the thread where the data is modified.
+     */
+    public void save() {
+        SaveBatch batch = new SaveBatch();
+
+        synchronized (players) {
+            if (compactionPending) {
+                compactionPending = false;
+                statsDirty = false;
+                batch.snapshot = new LoopData();
+                batch.snapshot.getStats().copyFrom(loopData.getStats());
+            } else if (statsDirty) {
+                statsDirty = false;
+                batch.stats = loopData.getStats().clone();
+            }
+            for (Iterator<Player> it = dirtyPlayers.iterator(); it.hasNext(); ) {
+                Player player = it.next();
+                it.remove();
+                batch.players.put(player.getSteamId64(), player.clone());
+            }
+
+            if (batch.snapshot != null || !batch.players.isEmpty() || batch.stats != null) {
+                queue(batch);
+            } else if (pendingBatch.get() != null) {
+                // retrying a batch that failed
+                writer.execute(this::writePendingBatch);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of {@link #players}.
+     */
+    private void queue(SaveBatch batch) {
+        unwrittenPlayers.putAll(batch.players);
+        SaveBatch pending = pendingBatch.getAndSet(null);
+        if (pending != null) {
+            // the writer didn't get to it yet
+            pending.merge(batch);
+            batch = pending;
+        }
+        pendingBatch.set(batch);
+        writer.execute(this::writePendingBatch);
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void writePendingBatch() {
+        SaveBatch batch = pendingBatch.getAndSet(null);
+        if (batch == null) {
+            // already written along with a previous one
             return;
         }
 
-        loopData.getPlayers().clear();
-        loopData.addPlayers(new ArrayList<>(players.values()));
         try {
-            repository.save(loopData);
-            dirty = false;
-            logger.debug("Saved Loop data.");
+            if (batch.snapshot != null) {
+                repository.save(batch.snapshot);
+                logger.debug("Saved Loop data.");
+            }
+            if (!batch.players.isEmpty()) {
+                playerRepository.save(batch.players.values());
+                batch.players.forEach(unwrittenPlayers::remove);
+                logger.debug("Saved {} changed players.", batch.players.size());
+            }
+            if (batch.stats != null) {
+                repository.saveChanges(Collections.emptyList(), batch.stats);
+                logger.debug("Saved stats.");
+            }
+        } catch (IOException e) {
+            logger.error("Failed to save data. Will try again.", e);
+            synchronized (players) {
+                SaveBatch newer = pendingBatch.getAndSet(null);
+                if (newer != null) {
+                    batch.merge(newer);
+                }
+                pendingBatch.set(batch);
+            }
+            return;
+        }
+
+        if (repository.getJournalSize() >= Math.max(MIN_JOURNAL_SIZE_TO_COMPACT, repository.getSnapshotSize())) {
+            compactionPending = true;
+        }
+    }
+
+    /**
+     * Saves what changed and waits until it's written. Must be called from the thread where the data is modified.
+     */
+    public void close() {
+        timer.cancel();
+        save();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.error("Timed out waiting for data to be saved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            playerRepository.close();
         } catch (IOException e) {
-            logger.error("Failed to save data.", e);
+            logger.error("Failed to save the player index.", e);
         }
     }
 
@@ -0,0 +1,113 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.Pcaps;
+import org.pcap4j.core.RawPacketListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the packets of a capture file (.pcap, or .pcapng if libpcap supports it), so that the connection
+ * managers can be run against recorded lobbies and matches, without a network nor the game.
+ * <p>
+ * Packets are replayed either as fast as possible, or at the pace at which they were recorded.
+ *
+ * @author NickyRamone
+ */
+public final class OfflineCapture extends PcapCapture {
+
+    public enum Pace {
+        AS_FAST_AS_POSSIBLE,
+        RECORDED
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineCapture.class);
+
+    private final File file;
+    private final Pace pace;
+    private volatile boolean running;
+    private long packetCount;
+
+
+    private OfflineCapture(PcapHandle handle, File file, Pace pace) {
+        super(handle);
+        this.file = file;
+        this.pace = pace;
+    }
+
+    public static OfflineCapture open(File file, Pace pace) throws PcapNativeException {
+        PcapHandle handle = Pcaps.openOffline(file.getPath(), PcapHandle.TimestampPrecision.NANO);
+
+        return new OfflineCapture(handle, file, pace);
+    }
+
+
+    /**
+     * Replays packets until the end of the file or until stopped.
+     */
+    @Override
+    public void run(RawPacketListener listener) throws PcapNativeException, NotOpenException {
+        long firstCaptureTime = -1;
+        long startNanos = System.nanoTime();
+        running = true;
+        logger.info("Replaying {} ({}).", file, pace);
+
+        try {
+            while (running) {
+                applyPendingFilter();
+                byte[] frame;
+                try {
+                    frame = handle.getNextRawPacketEx();
+                } catch (TimeoutException e) {
+                    continue;
+                }
+
+                if (pace == Pace.RECORDED) {
+                    long captureTime = getCaptureTime();
+                    if (firstCaptureTime < 0) {
+                        firstCaptureTime = captureTime;
+                    }
+                    waitUntil(startNanos + TimeUnit.MICROSECONDS.toNanos(captureTime - firstCaptureTime));
+                }
+                listener.gotPacket(frame);
+                packetCount++;
+            }
+        } catch (EOFException e) {
+            logger.info("Replayed {} packets from {} in {} ms.", packetCount, file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    private void waitUntil(long nanoTime) {
+        long waitNanos;
+        while (running && (waitNanos = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+        }
+    }
+
+    /**
+     * @return Number of packets replayed so far (that passed the filter).
+     */
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+}
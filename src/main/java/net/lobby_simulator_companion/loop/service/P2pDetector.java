@@ -0,0 +1,281 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Detects P2P matches (including lobbies), where we exchange STUN binding requests and responses with every peer.
+ * We are connected as long as we keep sending requests to at least one peer.
+ *
+ * @author NickyRamone
+ */
+final class P2pDetector implements ConnectionDetector {
+
+    /**
+     * Only the headers are needed (the UDP length field tells the payload size, even if it's not captured), plus
+     * the STUN header to pair requests and responses for the latency:
+     * Ethernet (14) + two VLAN tags (8) + IPv4 with options (60) + UDP (8) + STUN (20).
+     */
+    private static final int CAPTURED_PACKET_SIZE = 110;
+    private static final int CONNECTION_TIMEOUT_MS = 6000;
+
+    /**
+     * Magic cookie (4 bytes) and transaction id (12 bytes), which the response echoes.
+     */
+    private static final int STUN_TRANSACTION_OFFSET = 4;
+    private static final int STUN_TRANSACTION_SIZE = 16;
+    private static final InetAddress UNKNOWN_ADDR = PacketHeader.toInetAddress(0, 0xFFFFL << 32); // 0.0.0.0
+
+    /**
+     * Berkley Packet Filter (BPF):
+     * http://biot.com/capstats/bpf.html
+     * https://www.tcpdump.org/manpages/pcap-filter.7.html
+     * <p>
+     * STUN binding requests to peers (56-byte payload) and their responses (68-byte payload), identified by
+     * the UDP length field (header + payload), so that it does not depend on the link layer or the IP options.
+     * Once there is a host, also the whole traffic of the connection to it (its 5-tuple), in both directions,
+     * which is what the traffic counters measure. Only the headers are copied, so it stays cheap.
+     */
+    private static final String BPF_EXPR__UDP =
+            "udp and ((src host %1$s and udp[4:2] = 64) or (dst host %1$s and udp[4:2] = 76))";
+    private static final String BPF_EXPR__HOST_CONNECTION =
+            " or (udp and ((src host %1$s and src port %2$d and dst host %3$s and dst port %4$d)"
+                    + " or (src host %3$s and src port %4$d and dst host %1$s and dst port %2$d)))";
+
+    private static final Logger logger = LoggerFactory.getLogger(P2pDetector.class);
+
+    private CaptureEngine engine;
+    private InetAddress localAddr;
+    private long localAddrHigh;
+    private long localAddrLow;
+    private SnifferListener snifferListener;
+    private TimingWheel timingWheel;
+    private final PeerTable peers = new PeerTable();
+    private boolean connected;
+
+    /**
+     * The host is the first peer we exchanged packets with (the one whose lobby we joined), or the oldest one
+     * left if it goes away.
+     */
+    private long hostAddrHigh;
+    private long hostAddrLow;
+    private volatile LatencyTracker hostLatency;
+    private volatile TrafficCounters hostTraffic;
+    private String hostFilter;
+
+
+    /**
+     * Expiry of a peer. Its timeout runs on the timing wheel thread, which queues this to remove the peer on the
+     * processing thread (the only one that modifies the peer table).
+     */
+    private final class PeerExpiry implements Runnable {
+        final long addrHigh;
+        final long addrLow;
+        TimingWheel.Timeout timeout;
+
+        PeerExpiry(long addrHigh, long addrLow) {
+            this.addrHigh = addrHigh;
+            this.addrLow = addrLow;
+        }
+
+        @Override
+        public void run() {
+            removePeer(this);
+        }
+    }
+
+
+    @Override
+    public void attach(CaptureEngine engine) {
+        this.engine = engine;
+        this.localAddr = engine.getLocalAddr();
+        this.localAddrHigh = engine.getLocalAddrHigh();
+        this.localAddrLow = engine.getLocalAddrLow();
+        this.snifferListener = engine.getListener();
+        this.timingWheel = engine.getTimingWheel();
+    }
+
+    @Override
+    public int getSnapLength() {
+        return CAPTURED_PACKET_SIZE;
+    }
+
+    @Override
+    public String getFilter() {
+        String filter = String.format(BPF_EXPR__UDP, localAddr.getHostAddress());
+
+        return hostFilter != null ? filter + hostFilter : filter;
+    }
+
+
+    @Override
+    public void processPacket(PacketRing.Slot packet) {
+        PacketHeader header = packet.header;
+        if (isStunResponseFromRemotePeer(header)) {
+            processStunResponse(packet);
+            return;
+        }
+        if (!isStunRequestToRemotePeer(header)) {
+            processPeerTraffic(packet);
+            return;
+        }
+        long timestamp = packet.captureTime / 1000;
+
+        long addrHigh = header.getDstAddrHigh();
+        long addrLow = header.getDstAddrLow();
+        int index = peers.find(addrHigh, addrLow);
+
+        if (index < 0) {
+            logger.debug("New peer detected.");
+            index = peers.insert(addrHigh, addrLow, header.getSrcPort(), header.getDstPort(), timestamp);
+            peers.setTimeout(index, newPeerTimeout(addrHigh, addrLow));
+            if (hostLatency == null) {
+                setHost(index);
+            }
+        } else {
+            peers.touch(index, timestamp);
+            if (!peers.getTimeout(index).refresh()) {
+                // expired, but not removed yet: it's back just in time
+                peers.setTimeout(index, newPeerTimeout(addrHigh, addrLow));
+            }
+        }
+
+        peers.getTraffic(index).countOutgoing(header.getPayloadLength());
+        if (packet.hasPayload(STUN_TRANSACTION_OFFSET, STUN_TRANSACTION_SIZE)) {
+            peers.getLatency(index).requestSent(packet.payloadLong(STUN_TRANSACTION_OFFSET),
+                    packet.payloadLong(STUN_TRANSACTION_OFFSET + 8), packet.captureTime);
+        }
+
+        // once the host is known, so that listeners can already get its latency and traffic
+        if (!connected) {
+            if (!engine.isReplay()) {
+                logger.debug("Connected to match (detected {} us after capture).",
+                        LiveCapture.currentTimeMicros() - packet.captureTime);
+            }
+            connected = true;
+            Connection dummyConnection = new Connection(localAddr, 0, UNKNOWN_ADDR, 0, timestamp);
+            snifferListener.notifyMatchConnect(dummyConnection);
+        }
+    }
+
+    private void processStunResponse(PacketRing.Slot packet) {
+        int index = peers.find(packet.header.getSrcAddrHigh(), packet.header.getSrcAddrLow());
+        if (index < 0) {
+            return;
+        }
+
+        peers.getTraffic(index).countIncoming(packet.captureTime, packet.header.getPayloadLength());
+        if (packet.hasPayload(STUN_TRANSACTION_OFFSET, STUN_TRANSACTION_SIZE)) {
+            peers.getLatency(index).responseReceived(packet.payloadLong(STUN_TRANSACTION_OFFSET),
+                    packet.payloadLong(STUN_TRANSACTION_OFFSET + 8), packet.captureTime);
+        }
+    }
+
+    /**
+     * Any other packet exchanged with a known peer (the filter only lets through the ones of the host connection).
+     */
+    private void processPeerTraffic(PacketRing.Slot packet) {
+        PacketHeader header = packet.header;
+        if (!header.isUdp()) {
+            return;
+        }
+
+        if (header.isFrom(localAddrHigh, localAddrLow)) {
+            int index = peers.find(header.getDstAddrHigh(), header.getDstAddrLow());
+            if (index >= 0) {
+                peers.getTraffic(index).countOutgoing(header.getPayloadLength());
+            }
+        } else if (header.isTo(localAddrHigh, localAddrLow)) {
+            int index = peers.find(header.getSrcAddrHigh(), header.getSrcAddrLow());
+            if (index >= 0) {
+                peers.getTraffic(index).countIncoming(packet.captureTime, header.getPayloadLength());
+            }
+        }
+    }
+
+    private void setHost(int index) {
+        if (index < 0) {
+            hostLatency = null;
+            hostTraffic = null;
+            hostFilter = null;
+        } else {
+            hostAddrHigh = peers.getAddrHigh(index);
+            hostAddrLow = peers.getAddrLow(index);
+            hostLatency = peers.getLatency(index);
+            hostTraffic = peers.getTraffic(index);
+            hostFilter = String.format(BPF_EXPR__HOST_CONNECTION,
+                    PacketHeader.toInetAddress(hostAddrHigh, hostAddrLow).getHostAddress(),
+                    peers.getRemotePort(index), localAddr.getHostAddress(), peers.getLocalPort(index));
+        }
+        engine.updateFilter();
+    }
+
+    private TimingWheel.Timeout newPeerTimeout(long addrHigh, long addrLow) {
+        PeerExpiry expiry = new PeerExpiry(addrHigh, addrLow);
+        expiry.timeout = timingWheel.newTimeout(CONNECTION_TIMEOUT_MS, () -> engine.runOnProcessor(expiry));
+
+        return expiry.timeout;
+    }
+
+    private void removePeer(PeerExpiry expiry) {
+        int index = peers.find(expiry.addrHigh, expiry.addrLow);
+
+        // the peer may have been given a new timeout after this one expired
+        if (index >= 0 && peers.getTimeout(index) == expiry.timeout) {
+            peers.remove(index);
+            if (expiry.addrHigh == hostAddrHigh && expiry.addrLow == hostAddrLow) {
+                setHost(peers.oldest());
+            }
+
+            if (connected && peers.size() == 0) {
+                logger.debug("Detected match disconnection.");
+                connected = false;
+                snifferListener.notifyMatchDisconnect();
+            }
+        }
+    }
+
+
+    private boolean isStunRequestToRemotePeer(PacketHeader header) {
+        return header.isUdp()
+                && header.isFrom(localAddrHigh, localAddrLow)
+                && header.getPayloadLength() == 56;
+    }
+
+    private boolean isStunResponseFromRemotePeer(PacketHeader header) {
+        return header.isUdp()
+                && header.isTo(localAddrHigh, localAddrLow)
+                && header.getPayloadLength() == 68;
+    }
+
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return A snapshot of the peers we are currently exchanging packets with.
+     */
+    @Override
+    public List<Connection> getConnections() {
+        return peers.snapshot(localAddr);
+    }
+
+    @Override
+    public LatencyTracker getLatency() {
+        return hostLatency;
+    }
+
+    @Override
+    public TrafficCounters getTraffic() {
+        return hostTraffic;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
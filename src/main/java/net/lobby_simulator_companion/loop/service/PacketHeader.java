@@ -0,0 +1,307 @@
+package net.lobby_simulator_companion.loop.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Reads the link, network and transport headers of a captured frame straight from its raw bytes.
+ * <p>
+ * The connection managers only need a handful of header fields to decide whether a packet matters to them,
+ * so instead of decoding every frame into a tree of packet objects, this reads those fields at their fixed
+ * offsets into a single reusable instance.
+ * <p>
+ * Addresses are kept as two longs in IPv6 form. IPv4 addresses are mapped into that space (::ffff:a.b.c.d),
+ * so comparing any two addresses takes just two long comparisons, regardless of their version.
+ * <p>
+ * Supported: Ethernet (with up to two 802.1Q/802.1ad VLAN tags), BSD loopback and raw IP link types,
+ * IPv4 (non-fragmented, or first fragment) and IPv6 (without extension headers), and TCP and UDP.
+ * <p>
+ * This class is not thread-safe; every capture thread needs its own instance.
+ *
+ * @author NickyRamone
+ */
+final class PacketHeader {
+
+    static final int LINK_TYPE_NULL = 0;
+    static final int LINK_TYPE_ETHERNET = 1;
+    static final int LINK_TYPE_RAW = 101;
+
+    static final int PROTOCOL_TCP = 6;
+    static final int PROTOCOL_UDP = 17;
+
+    private static final int ETHER_TYPE_IPV4 = 0x0800;
+    private static final int ETHER_TYPE_IPV6 = 0x86DD;
+    private static final int ETHER_TYPE_VLAN = 0x8100;
+    private static final int ETHER_TYPE_QINQ = 0x88A8;
+    private static final int ETHERNET_HEADER_SIZE = 14;
+    private static final int VLAN_TAG_SIZE = 4;
+    private static final int IPV6_HEADER_SIZE = 40;
+    private static final int UDP_HEADER_SIZE = 8;
+    private static final int MIN_TCP_HEADER_SIZE = 20;
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    private int ipVersion;
+    private int protocol;
+    private long srcAddrHigh;
+    private long srcAddrLow;
+    private long dstAddrHigh;
+    private long dstAddrLow;
+    private int srcPort;
+    private int dstPort;
+    private int payloadOffset;
+    private int payloadLength;
+
+
+    /**
+     * @param linkType The data link type (DLT) of the capture.
+     * @return true if the frame is a TCP or UDP packet over IPv4 or IPv6, in which case the rest of the fields
+     * are valid; false otherwise.
+     */
+    boolean parse(byte[] frame, int linkType) {
+        return parse(frame, 0, frame.length, linkType);
+    }
+
+    boolean parse(byte[] frame, int offset, int length, int linkType) {
+        int end = offset + length;
+        int ipOffset;
+
+        switch (linkType) {
+            case LINK_TYPE_ETHERNET:
+                ipOffset = parseEthernet(frame, offset, end);
+                break;
+            case LINK_TYPE_NULL:
+                // 4-byte address family in host byte order; the IP version is checked later anyway
+                ipOffset = offset + 4;
+                break;
+            case LINK_TYPE_RAW:
+                ipOffset = offset;
+                break;
+            default:
+                return false;
+        }
+
+        if (ipOffset < 0 || ipOffset >= end) {
+            return false;
+        }
+
+        int transportOffset;
+        ipVersion = (frame[ipOffset] & 0xFF) >>> 4;
+        if (ipVersion == 4) {
+            transportOffset = parseIpV4(frame, ipOffset, end);
+        } else if (ipVersion == 6) {
+            transportOffset = parseIpV6(frame, ipOffset, end);
+        } else {
+            return false;
+        }
+
+        if (transportOffset < 0) {
+            return false;
+        }
+
+        if (protocol == PROTOCOL_UDP) {
+            return parseUdp(frame, transportOffset, end);
+        } else if (protocol == PROTOCOL_TCP) {
+            return parseTcp(frame, transportOffset, end);
+        }
+
+        return false;
+    }
+
+    private static int parseEthernet(byte[] frame, int offset, int end) {
+        int typeOffset = offset + 12;
+
+        for (int tags = 0; tags <= 2; tags++) {
+            if (typeOffset + 2 > end) {
+                return -1;
+            }
+            int etherType = readUnsignedShort(frame, typeOffset);
+
+            if (etherType == ETHER_TYPE_IPV4 || etherType == ETHER_TYPE_IPV6) {
+                return typeOffset + 2;
+            } else if (etherType != ETHER_TYPE_VLAN && etherType != ETHER_TYPE_QINQ) {
+                return -1;
+            }
+            typeOffset += VLAN_TAG_SIZE;
+        }
+
+        return -1;
+    }
+
+    private int parseIpV4(byte[] frame, int offset, int end) {
+        int headerLength = (frame[offset] & 0x0F) * 4;
+        if (headerLength < 20 || offset + headerLength > end) {
+            return -1;
+        }
+
+        int fragmentOffset = readUnsignedShort(frame, offset + 6) & 0x1FFF;
+        if (fragmentOffset != 0) {
+            // no transport header in here
+            return -1;
+        }
+
+        protocol = frame[offset + 9] & 0xFF;
+        srcAddrHigh = 0;
+        srcAddrLow = IPV4_MAPPED_PREFIX | (readInt(frame, offset + 12) & 0xFFFFFFFFL);
+        dstAddrHigh = 0;
+        dstAddrLow = IPV4_MAPPED_PREFIX | (readInt(frame, offset + 16) & 0xFFFFFFFFL);
+
+        return offset + headerLength;
+    }
+
+    private int parseIpV6(byte[] frame, int offset, int end) {
+        if (offset + IPV6_HEADER_SIZE > end) {
+            return -1;
+        }
+
+        protocol = frame[offset + 6] & 0xFF;
+        srcAddrHigh = readLong(frame, offset + 8);
+        srcAddrLow = readLong(frame, offset + 16);
+        dstAddrHigh = readLong(frame, offset + 24);
+        dstAddrLow = readLong(frame, offset + 32);
+
+        return offset + IPV6_HEADER_SIZE;
+    }
+
+    private boolean parseUdp(byte[] frame, int offset, int end) {
+        if (offset + UDP_HEADER_SIZE > end) {
+            return false;
+        }
+
+        srcPort = readUnsignedShort(frame, offset);
+        dstPort = readUnsignedShort(frame, offset + 2);
+        payloadOffset = offset + UDP_HEADER_SIZE;
+        // the capture may be truncated (snaplen), but the length field still tells the actual size
+        payloadLength = readUnsignedShort(frame, offset + 4) - UDP_HEADER_SIZE;
+
+        return payloadLength >= 0;
+    }
+
+    private boolean parseTcp(byte[] frame, int offset, int end) {
+        if (offset + MIN_TCP_HEADER_SIZE > end) {
+            return false;
+        }
+
+        srcPort = readUnsignedShort(frame, offset);
+        dstPort = readUnsignedShort(frame, offset + 2);
+        int headerLength = ((frame[offset + 12] & 0xFF) >>> 4) * 4;
+        payloadOffset = offset + headerLength;
+        payloadLength = Math.max(0, end - payloadOffset);
+
+        return headerLength >= MIN_TCP_HEADER_SIZE;
+    }
+
+
+    int getIpVersion() {
+        return ipVersion;
+    }
+
+    int getProtocol() {
+        return protocol;
+    }
+
+    boolean isUdp() {
+        return protocol == PROTOCOL_UDP;
+    }
+
+    long getSrcAddrHigh() {
+        return srcAddrHigh;
+    }
+
+    long getSrcAddrLow() {
+        return srcAddrLow;
+    }
+
+    long getDstAddrHigh() {
+        return dstAddrHigh;
+    }
+
+    long getDstAddrLow() {
+        return dstAddrLow;
+    }
+
+    boolean isFrom(long addrHigh, long addrLow) {
+        return srcAddrLow == addrLow && srcAddrHigh == addrHigh;
+    }
+
+    boolean isTo(long addrHigh, long addrLow) {
+        return dstAddrLow == addrLow && dstAddrHigh == addrHigh;
+    }
+
+    int getSrcPort() {
+        return srcPort;
+    }
+
+    int getDstPort() {
+        return dstPort;
+    }
+
+    /**
+     * @return Offset of the transport payload within the frame.
+     */
+    int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    /**
+     * @return Length of the transport payload. For UDP, this is the length declared in the header,
+     * which may be more than what was actually captured.
+     */
+    int getPayloadLength() {
+        return payloadLength;
+    }
+
+
+    static long addressHigh(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        return bytes.length == 4 ? 0 : readLong(bytes, 0);
+    }
+
+    static long addressLow(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        return bytes.length == 4 ? IPV4_MAPPED_PREFIX | (readInt(bytes, 0) & 0xFFFFFFFFL) : readLong(bytes, 8);
+    }
+
+    static InetAddress toInetAddress(long addrHigh, long addrLow) {
+        byte[] bytes;
+
+        if (addrHigh == 0 && (addrLow & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX) {
+            bytes = new byte[4];
+            writeInt(bytes, 0, (int) addrLow);
+        } else {
+            bytes = new byte[16];
+            writeInt(bytes, 0, (int) (addrHigh >>> 32));
+            writeInt(bytes, 4, (int) addrHigh);
+            writeInt(bytes, 8, (int) (addrLow >>> 32));
+            writeInt(bytes, 12, (int) addrLow);
+        }
+
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // can't happen: the length is always valid
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        return (readInt(data, offset) & 0xFFFFFFFFL) << 32 | (readInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+}
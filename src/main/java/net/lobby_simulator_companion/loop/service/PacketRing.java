@@ -0,0 +1,235 @@
+package net.lobby_simulator_companion.loop.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands captured packets over from the capture thread to the thread that processes them.
+ * <p>
+ * This is a bounded single-producer/single-consumer ring of preallocated {@link Slot}s. The capture thread parses
+ * the headers of each packet straight into the next free slot, so it never allocates, locks nor waits for the
+ * processing thread: if the ring is full, the packet is counted as dropped and the capture moves on.
+ * <p>
+ * Producer methods ({@link #claim()}, {@link #publish()}) must only be called from one thread, and consumer methods
+ * ({@link #drain(Consumer)}, {@link #await(long)}) from another one.
+ * Counters can be read from any thread.
+ *
+ * @author NickyRamone
+ */
+public final class PacketRing {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    static final int NO_PAYLOAD_PREFIX = -1;
+
+    /**
+     * Header fields (and the start of the payload) of a captured packet.
+     */
+    static final class Slot {
+
+        /**
+         * Enough for the STUN header (20 bytes), and the WireGuard message type and indexes (12 bytes).
+         */
+        static final int PAYLOAD_HEAD_SIZE = 20;
+
+        final PacketHeader header = new PacketHeader();
+
+        /**
+         * Capture time in epoch microseconds.
+         */
+        long captureTime;
+
+        /**
+         * First 4 bytes of the payload (big-endian), or {@link #NO_PAYLOAD_PREFIX} if they were not captured.
+         */
+        int payloadPrefix;
+
+        /**
+         * First bytes of the payload; only the first {@link #payloadHeadLength} are valid.
+         */
+        final byte[] payloadHead = new byte[PAYLOAD_HEAD_SIZE];
+        int payloadHeadLength;
+
+        /**
+         * @return true if the frame is a TCP or UDP packet (see {@link PacketHeader#parse(byte[], int)}).
+         */
+        boolean parse(byte[] frame, int linkType) {
+            if (!header.parse(frame, linkType)) {
+                return false;
+            }
+
+            int offset = header.getPayloadOffset();
+            payloadHeadLength = Math.max(0, Math.min(PAYLOAD_HEAD_SIZE,
+                    Math.min(header.getPayloadLength(), frame.length - offset)));
+            System.arraycopy(frame, offset, payloadHead, 0, payloadHeadLength);
+            payloadPrefix = payloadHeadLength >= 4 ? payloadInt(0) : NO_PAYLOAD_PREFIX;
+
+            return true;
+        }
+
+        /**
+         * @return true if the given range of the payload was captured.
+         */
+        boolean hasPayload(int offset, int length) {
+            return offset + length <= payloadHeadLength;
+        }
+
+        /**
+         * @return The big-endian int at the given offset of the payload, which must have been captured.
+         */
+        int payloadInt(int offset) {
+            byte[] b = payloadHead;
+            return (b[offset] & 0xFF) << 24 | (b[offset + 1] & 0xFF) << 16
+                    | (b[offset + 2] & 0xFF) << 8 | b[offset + 3] & 0xFF;
+        }
+
+        /**
+         * @return The big-endian long at the given offset of the payload, which must have been captured.
+         */
+        long payloadLong(int offset) {
+            return (long) payloadInt(offset) << 32 | payloadInt(offset + 4) & 0xFFFFFFFFL;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+
+    /**
+     * Sequence of the next slot to be published. Only written by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence of the next slot to be consumed. Only written by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile long published;
+    private volatile long dropped;
+    private volatile int highWaterMark;
+
+
+    PacketRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of slots in the ring; rounded up to a power of two.
+     */
+    PacketRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new Slot[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+
+    /**
+     * @return The next free slot, to be filled and then published; or null if the ring is full, in which case
+     * the packet is counted as dropped.
+     */
+    Slot claim() {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return null;
+        }
+
+        return slots[(int) t & mask];
+    }
+
+    /**
+     * For producers that would rather wait than drop packets.
+     */
+    boolean isFull() {
+        return tail.get() - head.get() > mask;
+    }
+
+    /**
+     * Makes the last claimed slot visible to the consumer.
+     */
+    void publish() {
+        long t = tail.get() + 1;
+        tail.set(t);
+        published++;
+
+        int size = (int) (t - head.get());
+        if (size > highWaterMark) {
+            highWaterMark = size;
+        }
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Passes every published slot, oldest first, to the given handler, and then frees it.
+     *
+     * @return Number of slots handled.
+     */
+    int drain(Consumer<Slot> handler) {
+        long h = head.get();
+        long t = tail.get();
+
+        for (long seq = h; seq < t; seq++) {
+            handler.accept(slots[(int) seq & mask]);
+            head.lazySet(seq + 1);
+        }
+
+        return (int) (t - h);
+    }
+
+    /**
+     * Waits until there is a published slot, the given time elapses or the thread is interrupted.
+     */
+    void await(long timeoutMillis) {
+        waitingConsumer = Thread.currentThread();
+        if (head.get() == tail.get()) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+        waitingConsumer = null;
+    }
+
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return Number of packets waiting to be processed.
+     */
+    public int getSize() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return Highest number of packets that were waiting to be processed at the same time.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public long getPublishedCount() {
+        return published;
+    }
+
+    /**
+     * @return Number of packets that were discarded because the ring was full.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketRing{capacity=" + getCapacity() + ", size=" + getSize() + ", highWaterMark=" + highWaterMark
+                + ", published=" + published + ", dropped=" + dropped + "}";
+    }
+}
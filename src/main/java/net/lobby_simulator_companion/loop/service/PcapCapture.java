@@ -0,0 +1,78 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.pcap4j.core.BpfProgram;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+
+/**
+ * What the capture sources backed by a libpcap handle have in common.
+ *
+ * @author NickyRamone
+ */
+abstract class PcapCapture implements CaptureSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PcapCapture.class);
+
+    protected final PcapHandle handle;
+    private final int linkType;
+    private volatile String pendingFilter;
+
+
+    PcapCapture(PcapHandle handle) {
+        this.handle = handle;
+        this.linkType = handle.getDlt().value();
+    }
+
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public void setFilter(String filterExpr) throws PcapNativeException, NotOpenException {
+        handle.setFilter(filterExpr, BpfProgram.BpfCompileMode.OPTIMIZE);
+    }
+
+    /**
+     * Handles must not be used from two threads at the same time, so the filter is only stored here,
+     * and applied by the capture thread when it calls {@link #applyPendingFilter()}.
+     */
+    @Override
+    public void requestFilter(String filterExpr) {
+        pendingFilter = filterExpr;
+    }
+
+    protected void applyPendingFilter() throws NotOpenException {
+        String filterExpr = pendingFilter;
+        if (filterExpr == null) {
+            return;
+        }
+        pendingFilter = null;
+
+        try {
+            setFilter(filterExpr);
+            logger.debug("Applied capture filter: {}", filterExpr);
+        } catch (PcapNativeException e) {
+            logger.error("Failed to apply capture filter: {}", filterExpr, e);
+        }
+    }
+
+    @Override
+    public long getCaptureTime() {
+        Timestamp timestamp = handle.getTimestamp();
+
+        return Math.floorDiv(timestamp.getTime(), 1000) * 1_000_000 + timestamp.getNanos() / 1000;
+    }
+
+    @Override
+    public void close() {
+        handle.close();
+    }
+
+}
@@ -0,0 +1,319 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Peers we are exchanging packets with, keyed by their address in the two-long form of {@link PacketHeader}
+ * (which covers both IPv4 and IPv6).
+ * <p>
+ * This is an open-addressing hash table with linear probing, where the fields of every peer are kept
+ * in parallel primitive arrays (ports are packed into a single int), so that looking up and updating a peer
+ * for every packet does not allocate nor follow any references. Removal shifts the following entries back
+ * instead of leaving tombstones, so a table where peers keep coming and going does not grow nor degrade:
+ * it only grows with the number of peers present at the same time.
+ * <p>
+ * The table must only be modified from one thread. Other threads can take a consistent {@link #snapshot}:
+ * structural changes (insertions and removals) take a {@link StampedLock}, which readers first try to do without
+ * (optimistic read), only locking if a change happened while they were copying. Updates of the last-seen time are
+ * not guarded, so a snapshot may see a slightly older value for some peers.
+ *
+ * @author NickyRamone
+ */
+final class PeerTable {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int ENTRY_FIELDS = 5;
+
+    private boolean[] used;
+    private long[] addrHigh;
+    private long[] addrLow;
+    private int[] ports;
+    private long[] created;
+    private long[] lastSeen;
+    private TimingWheel.Timeout[] timeouts;
+    private LatencyTracker[] latencies;
+    private TrafficCounters[] traffic;
+    private int mask;
+    private int size;
+    private final StampedLock lock = new StampedLock();
+
+
+    PeerTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of slots; rounded up to a power of two. The table doubles it when it gets half full.
+     */
+    PeerTable(int capacity) {
+        allocate(Integer.highestOneBit(Math.max(2, capacity) - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        used = new boolean[capacity];
+        addrHigh = new long[capacity];
+        addrLow = new long[capacity];
+        ports = new int[capacity];
+        created = new long[capacity];
+        lastSeen = new long[capacity];
+        timeouts = new TimingWheel.Timeout[capacity];
+        latencies = new LatencyTracker[capacity];
+        traffic = new TrafficCounters[capacity];
+        mask = capacity - 1;
+    }
+
+
+    /**
+     * @return The index of the peer with the given address, or -1 if there is none.
+     */
+    int find(long high, long low) {
+        for (int i = slot(high, low); used[i]; i = (i + 1) & mask) {
+            if (addrHigh[i] == high && addrLow[i] == low) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Adds a peer that is not in the table yet.
+     *
+     * @param time Time at which it was first seen (epoch millis).
+     * @return Its index. Indexes are only valid until the next insertion or removal.
+     */
+    int insert(long high, long low, int localPort, int remotePort, long time) {
+        long stamp = lock.writeLock();
+        if ((size + 1) * 2 > used.length) {
+            resize();
+        }
+
+        int i = slot(high, low);
+        while (used[i]) {
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        addrHigh[i] = high;
+        addrLow[i] = low;
+        ports[i] = localPort << 16 | remotePort & 0xFFFF;
+        created[i] = time;
+        lastSeen[i] = time;
+        timeouts[i] = null;
+        latencies[i] = new LatencyTracker();
+        traffic[i] = new TrafficCounters();
+        size++;
+        lock.unlockWrite(stamp);
+
+        return i;
+    }
+
+    void remove(int index) {
+        long stamp = lock.writeLock();
+        int i = index;
+        int j = index;
+
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) {
+                break;
+            }
+            int home = slot(addrHigh[j], addrLow[j]);
+            boolean inPlace = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!inPlace) {
+                move(j, i);
+                i = j;
+            }
+        }
+        used[i] = false;
+        timeouts[i] = null;
+        latencies[i] = null;
+        traffic[i] = null;
+        size--;
+        lock.unlockWrite(stamp);
+    }
+
+    private void move(int from, int to) {
+        used[to] = true;
+        addrHigh[to] = addrHigh[from];
+        addrLow[to] = addrLow[from];
+        ports[to] = ports[from];
+        created[to] = created[from];
+        lastSeen[to] = lastSeen[from];
+        timeouts[to] = timeouts[from];
+        latencies[to] = latencies[from];
+        traffic[to] = traffic[from];
+    }
+
+    private void resize() {
+        boolean[] oldUsed = used;
+        long[] oldAddrHigh = addrHigh;
+        long[] oldAddrLow = addrLow;
+        int[] oldPorts = ports;
+        long[] oldCreated = created;
+        long[] oldLastSeen = lastSeen;
+        TimingWheel.Timeout[] oldTimeouts = timeouts;
+        LatencyTracker[] oldLatencies = latencies;
+        TrafficCounters[] oldTraffic = traffic;
+        allocate(oldUsed.length * 2);
+
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldAddrHigh[j], oldAddrLow[j]);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                used[i] = true;
+                addrHigh[i] = oldAddrHigh[j];
+                addrLow[i] = oldAddrLow[j];
+                ports[i] = oldPorts[j];
+                created[i] = oldCreated[j];
+                lastSeen[i] = oldLastSeen[j];
+                timeouts[i] = oldTimeouts[j];
+                latencies[i] = oldLatencies[j];
+                traffic[i] = oldTraffic[j];
+            }
+        }
+    }
+
+    private int slot(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+
+        return (int) h & mask;
+    }
+
+
+    long getAddrHigh(int index) {
+        return addrHigh[index];
+    }
+
+    long getAddrLow(int index) {
+        return addrLow[index];
+    }
+
+    int getLocalPort(int index) {
+        return ports[index] >>> 16;
+    }
+
+    int getRemotePort(int index) {
+        return ports[index] & 0xFFFF;
+    }
+
+    void touch(int index, long time) {
+        lastSeen[index] = time;
+    }
+
+    TimingWheel.Timeout getTimeout(int index) {
+        return timeouts[index];
+    }
+
+    void setTimeout(int index, TimingWheel.Timeout timeout) {
+        timeouts[index] = timeout;
+    }
+
+    LatencyTracker getLatency(int index) {
+        return latencies[index];
+    }
+
+    TrafficCounters getTraffic(int index) {
+        return traffic[index];
+    }
+
+    /**
+     * @return The index of the peer that was first seen the earliest, or -1 if the table is empty.
+     */
+    int oldest() {
+        int result = -1;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i] && (result < 0 || created[i] < created[result])) {
+                result = i;
+            }
+        }
+
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return used.length;
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return A copy of the peers in the table, as connections from the given local address.
+     */
+    List<Connection> snapshot(InetAddress localAddr) {
+        long stamp = lock.tryOptimisticRead();
+        TrafficCounters[] trafficCopy = new TrafficCounters[size];
+        long[] copy = copyEntries(trafficCopy);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                trafficCopy = new TrafficCounters[size];
+                copy = copyEntries(trafficCopy);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int count = copy.length / ENTRY_FIELDS;
+        List<Connection> result = new ArrayList<>(count);
+        for (int k = 0; k < count * ENTRY_FIELDS; k += ENTRY_FIELDS) {
+            int packedPorts = (int) copy[k + 2];
+            Connection connection = new Connection(localAddr, packedPorts >>> 16,
+                    PacketHeader.toInetAddress(copy[k], copy[k + 1]), packedPorts & 0xFFFF, copy[k + 3],
+                    trafficCopy[k / ENTRY_FIELDS]);
+            connection.setLastSeen(copy[k + 4]);
+            result.add(connection);
+        }
+
+        return result;
+    }
+
+    /**
+     * Copies the fields of every entry, and their traffic counters into the given array (as many as fit).
+     * Without the lock, the arrays may be replaced halfway by a resize, so the result may be garbage (but it's
+     * discarded in that case).
+     */
+    private long[] copyEntries(TrafficCounters[] trafficCopy) {
+        boolean[] used = this.used;
+        long[] addrHigh = this.addrHigh;
+        long[] addrLow = this.addrLow;
+        int[] ports = this.ports;
+        long[] created = this.created;
+        long[] lastSeen = this.lastSeen;
+        TrafficCounters[] traffic = this.traffic;
+        int n = Math.min(used.length, Math.min(addrHigh.length, Math.min(addrLow.length,
+                Math.min(ports.length, Math.min(created.length, Math.min(lastSeen.length, traffic.length))))));
+        long[] copy = new long[n * ENTRY_FIELDS];
+        int k = 0;
+
+        for (int i = 0; i < n && k < trafficCopy.length * ENTRY_FIELDS; i++) {
+            if (used[i]) {
+                trafficCopy[k / ENTRY_FIELDS] = traffic[i];
+                copy[k++] = addrHigh[i];
+                copy[k++] = addrLow[i];
+                copy[k++] = ports[i];
+                copy[k++] = created[i];
+                copy[k++] = lastSeen[i];
+            }
+        }
+
+        return Arrays.copyOf(copy, k);
+    }
+
+}
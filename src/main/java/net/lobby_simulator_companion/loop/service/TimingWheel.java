@@ -0,0 +1,270 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel for connection expiry:
+ * http://www.cs.columbia.edu/~nahum/w6998/papers/sosp87-timing-wheels.pdf
+ * <p>
+ * Time is divided in ticks, and every {@link Timeout} sits in the bucket of the tick in which it is due, so that
+ * on every tick only the timeouts of one bucket are looked at, no matter how many are registered.
+ * <p>
+ * Timeouts are meant to be pushed back on every packet, so {@link Timeout#refresh()} only stores the new deadline
+ * and does not move the timeout to another bucket. That happens lazily, when the wheel reaches the old bucket and
+ * finds that the timeout is not due yet. Cancelling works the same way.
+ * As a consequence, refreshing and cancelling are a single write that can be done from any thread,
+ * while the wheel itself is only touched by its own thread.
+ * <p>
+ * Expiry callbacks run on the wheel thread, at most one tick after the deadline, so they should be quick.
+ *
+ * @author NickyRamone
+ */
+public final class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final long DEFAULT_TICK_MS = 20;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final LongSupplier SYSTEM_CLOCK = () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+
+    private static final class DefaultHolder {
+        static final TimingWheel INSTANCE = new TimingWheel();
+
+        static {
+            INSTANCE.start();
+        }
+    }
+
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+    private volatile boolean running;
+    private long currentTick = -1;
+    private int timeoutCount;
+    private volatile long manualTime;
+
+
+    public TimingWheel() {
+        this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param tickMillis Resolution of the timeouts.
+     * @param wheelSize  Number of buckets; rounded up to a power of two.
+     * @param clock      Source of the current time in milliseconds (not necessarily since the epoch).
+     *                   If null, time only moves with {@link #advanceTo(long)}.
+     */
+    TimingWheel(long tickMillis, int wheelSize, LongSupplier clock) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.clock = clock != null ? clock : () -> manualTime;
+        buckets = new Timeout[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            Timeout head = new Timeout(this, 0, null);
+            head.prev = head;
+            head.next = head;
+            buckets[i] = head;
+        }
+    }
+
+    /**
+     * @return A wheel shared by the whole application, already started.
+     */
+    public static TimingWheel getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+
+    /**
+     * @return A wheel without its own thread nor clock, where time is whatever is given to {@link #advanceTo(long)}.
+     * Used to replay captures, where time is given by the capture times of the packets.
+     */
+    static TimingWheel manual() {
+        return new TimingWheel(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, null);
+    }
+
+
+    /**
+     * Starts the thread that advances the wheel.
+     */
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::run, "timing-wheel");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Registers a task to be run after the given delay, unless the returned timeout is refreshed or cancelled
+     * before that. Can be called from any thread.
+     */
+    public Timeout newTimeout(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(this, delayMillis, task);
+        timeout.deadline = clock.getAsLong() + delayMillis;
+        pending.add(timeout);
+        LockSupport.unpark(thread);
+
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            advance();
+
+            if (timeoutCount == 0 && pending.isEmpty()) {
+                LockSupport.park(this);
+            } else {
+                long nextTickTime = (currentTick + 1) * tickMillis;
+                long waitMillis = Math.max(1, nextTickTime - clock.getAsLong());
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMillis));
+            }
+        }
+    }
+
+    /**
+     * Registers pending timeouts and expires the ones that are due, ticking the wheel up to the current time.
+     */
+    void advance() {
+        long now = clock.getAsLong();
+        long nowTick = now / tickMillis;
+
+        if (timeoutCount == 0 || currentTick < 0) {
+            // nothing can be due in the ticks that went by while idle
+            currentTick = nowTick;
+        }
+
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.cancelled) {
+                insert(timeout, Math.max(timeout.deadline / tickMillis, currentTick));
+                timeoutCount++;
+            }
+        }
+
+        // if we fell behind by more than a whole turn, visiting every bucket once is enough
+        long firstTick = Math.max(currentTick, nowTick - mask);
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            expireBucket(tick, now, nowTick);
+        }
+        currentTick = nowTick + 1;
+    }
+
+    /**
+     * Sets the time of a {@link #manual()} wheel and ticks it up to that time (on the calling thread).
+     */
+    void advanceTo(long timeMillis) {
+        manualTime = timeMillis;
+        advance();
+    }
+
+    private void expireBucket(long tick, long now, long nowTick) {
+        Timeout head = buckets[(int) tick & mask];
+        Timeout timeout = head.next;
+
+        while (timeout != head) {
+            Timeout next = timeout.next;
+            long deadline = timeout.deadline;
+
+            if (timeout.cancelled) {
+                remove(timeout);
+                timeoutCount--;
+            } else if (deadline <= now) {
+                remove(timeout);
+                timeoutCount--;
+                timeout.expired = true;
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Timeout task failed.", e);
+                }
+            } else {
+                // refreshed: move it to the bucket of its new deadline (unless it's this one, a few turns later)
+                long dueTick = Math.max(deadline / tickMillis, nowTick + 1);
+                if ((dueTick & mask) != (tick & mask)) {
+                    remove(timeout);
+                    insert(timeout, dueTick);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout timeout, long tick) {
+        Timeout head = buckets[(int) tick & mask];
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    private static void remove(Timeout timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * @return Number of registered timeouts (including pending and cancelled ones that were not yet cleaned up).
+     * Only meant for diagnostics, since it's not synchronized with the wheel thread.
+     */
+    public int getTimeoutCount() {
+        return timeoutCount + pending.size();
+    }
+
+
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final long delayMillis;
+        private final Runnable task;
+        private volatile long deadline;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, long delayMillis, Runnable task) {
+            this.wheel = wheel;
+            this.delayMillis = delayMillis;
+            this.task = task;
+        }
+
+        /**
+         * Pushes the deadline back to the original delay from now.
+         *
+         * @return false if the timeout already expired or was cancelled (in which case it stays that way).
+         */
+        public boolean refresh() {
+            deadline = wheel.clock.getAsLong() + delayMillis;
+
+            return !expired && !cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+
+}
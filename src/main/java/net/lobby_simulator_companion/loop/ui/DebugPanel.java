@@ -6,6 +6,8 @@ import net.lobby_simulator_companion.loop.domain.stats.KillerStats;
 import net.lobby_simulator_companion.loop.domain.stats.MapStats;
 import net.lobby_simulator_companion.loop.domain.stats.Stats;
 import net.lobby_simulator_companion.loop.service.DbdLogMonitor;
+import net.lobby_simulator_companion.loop.service.LogImporter;
+import net.lobby_simulator_companion.loop.service.LogMonitorMetrics;
 import net.lobby_simulator_companion.loop.service.LoopDataService;
 import net.lobby_simulator_companion.loop.util.TimeUtil;
 import org.slf4j.Logger;
@@ -14,13 +16,20 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -34,12 +43,21 @@ import static java.util.stream.Collectors.toList;
 public class DebugPanel extends JPanel {
 
     private static final Logger logger = LoggerFactory.getLogger(ServerPanel.class);
+    private static final DateTimeFormatter LOG_TIMESTAMP_FORMATTER =
+            DateTimeFormatter.ofPattern("'['yyyy.MM.dd-HH.mm.ss:SSS']'").withZone(ZoneOffset.UTC);
+    private static final int METRICS_REFRESH_MS = 1000;
     private JFrame frame;
     private FileWriter logWriter;
+    private DbdLogMonitor logMonitor;
     private LoopDataService dataService;
+    private JProgressBar importProgressBar;
+    private JTextArea metricsTextArea;
+    private long lastLinesRead;
+    private long lastBytesRead;
 
 
     public DebugPanel(DbdLogMonitor logMonitor, LoopDataService dataService) throws Exception {
+        this.logMonitor = logMonitor;
         this.dataService = dataService;
         this.logWriter = new FileWriter(logMonitor.getLogFile());
         logger.debug("Monitoring log file: {}", logMonitor.getLogFile());
@@ -55,7 +73,7 @@ public class DebugPanel extends JPanel {
         frame.setAlwaysOnTop(true);
         frame.pack();
         frame.setLocation(800, 300);
-        frame.setSize(new Dimension(400, 300));
+        frame.setSize(new Dimension(450, 600));
         frame.setVisible(true);
 
         JPanel contentPanel = new JPanel();
@@ -63,6 +81,9 @@ public class DebugPanel extends JPanel {
         addComponents(contentPanel);
 
         frame.setContentPane(contentPanel);
+
+        Timer metricsTimer = new Timer(METRICS_REFRESH_MS, e -> refreshMetrics());
+        metricsTimer.start();
     }
 
     private void addComponents(JPanel container) {
@@ -127,6 +148,21 @@ public class DebugPanel extends JPanel {
         button = new JButton("Export killer stats to clipboard");
         button.addActionListener(e -> exportKillerStats());
         statsPanel.add(button);
+
+        JPanel importPanel = new JPanel();
+        importPanel.setLayout(new BoxLayout(importPanel, BoxLayout.X_AXIS));
+        container.add(importPanel);
+        button = new JButton("Import archived logs...");
+        button.addActionListener(e -> importLogs());
+        importPanel.add(button);
+        importProgressBar = new JProgressBar(0, 100);
+        importProgressBar.setStringPainted(true);
+        importPanel.add(importProgressBar);
+
+        metricsTextArea = new JTextArea(16, 40);
+        metricsTextArea.setEditable(false);
+        metricsTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        container.add(new JScrollPane(metricsTextArea));
     }
 
     private void simulateMatchSearch() {
@@ -173,7 +209,7 @@ public class DebugPanel extends JPanel {
 
     private void writeLog(String s) {
         try {
-            logWriter.write(s + "\n");
+            logWriter.write(LOG_TIMESTAMP_FORMATTER.format(Instant.now()) + "[  0]" + s + "\n");
             logWriter.flush();
         } catch (IOException e) {
             logger.error("Failed to write to log file", e);
@@ -181,6 +217,71 @@ public class DebugPanel extends JPanel {
     }
 
 
+    private void refreshMetrics() {
+        LogMonitorMetrics metrics = logMonitor.getMetrics();
+        long linesRead = metrics.getLinesRead();
+        long bytesRead = metrics.getBytesRead();
+        double seconds = METRICS_REFRESH_MS / 1000.0;
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Lines: %d (%.0f/s)   Bytes: %d (%.0f/s)%n",
+                linesRead, (linesRead - lastLinesRead) / seconds, bytesRead, (bytesRead - lastBytesRead) / seconds));
+        text.append(String.format("Processing rate: %.0f lines/s%n", metrics.getProcessingLinesPerSecond()));
+        text.append(String.format("Reader lag: %d bytes%s   Catch-ups: %d   Merged events: %d%n",
+                metrics.getReaderLagBytes(), metrics.isCatchingUp() ? " (catching up)" : "",
+                metrics.getCatchUpCount(), metrics.getCoalescedEvents()));
+        text.append(String.format("Candidate lines: %d   p50: %d ns   p99: %d ns%n%n", metrics.getCandidateLines(),
+                metrics.getLineNanosPercentile(0.5), metrics.getLineNanosPercentile(0.99)));
+        text.append(String.format("%-18s %10s %10s %6s %10s%n", "Rule", "Candidates", "Hits", "Hit%", "Avg ns"));
+
+        String[] ruleNames = metrics.getRuleNames();
+        long[] candidates = metrics.getRuleCandidates();
+        long[] hits = metrics.getRuleHits();
+        long[] nanos = metrics.getRuleNanos();
+        for (int i = 0; i < ruleNames.length; i++) {
+            text.append(String.format("%-18s %10d %10d %6.1f %10d%n", ruleNames[i], candidates[i], hits[i],
+                    candidates[i] == 0 ? 0 : hits[i] * 100.0 / candidates[i],
+                    candidates[i] == 0 ? 0 : nanos[i] / candidates[i]));
+        }
+
+        metricsTextArea.setText(text.toString());
+        lastLinesRead = linesRead;
+        lastBytesRead = bytesRead;
+    }
+
+    private void importLogs() {
+        JFileChooser fileChooser = new JFileChooser(logMonitor.getLogFile().getAbsoluteFile().getParentFile());
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path logDir = fileChooser.getSelectedFile().toPath();
+
+        // only import what happened before we started collecting stats, since the rest was already recorded
+        long cutoffTime = dataService.getStats().get(Stats.Period.GLOBAL).getPeriodStart()
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        LogImporter importer = new LogImporter(ForkJoinPool.commonPool(), MainWindow.DEFAULT_MIN_MATCH_SECONDS);
+
+        Thread thread = new Thread(() -> {
+            try {
+                LogImporter.Result result = importer.importLogs(LogImporter.findLogs(logDir), cutoffTime,
+                        (processed, total) -> SwingUtilities.invokeLater(() ->
+                                importProgressBar.setValue(total == 0 ? 100 : (int) (processed * 100 / total))));
+
+                SwingUtilities.invokeLater(() -> {
+                    dataService.mergeImport(result);
+                    JOptionPane.showMessageDialog(frame, String.format(
+                            "Imported %d log files: %d lobbies, %d matches, %d killer players.",
+                            result.getFiles(), result.getLobbies(), result.getMatches(), result.getPlayers().size()));
+                });
+            } catch (IOException e) {
+                logger.error("Failed to import logs.", e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private void exportMapStats() {
         Map<RealmMap, MapStats> mapStats = dataService.getStats().get(Stats.Period.YEARLY).getMapStats();
 
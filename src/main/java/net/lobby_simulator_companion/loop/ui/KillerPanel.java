@@ -297,7 +297,7 @@ public class KillerPanel extends JPanel {
 
             if (!Objects.equals(newNotes, killerPlayer.getDescription())) {
                 killerPlayer.setDescription(newNotes);
-                dataService.notifyChange();
+                dataService.notifyChange(killerPlayer);
                 firePropertyChange(EVENT_KILLER_UPDATE, null, null);
             }
         }
@@ -375,14 +375,14 @@ public class KillerPanel extends JPanel {
             player.setDbdPlayerId(playerDto.getDbdId());
             player.addName(playerName);
             player.incrementTimesEncountered();
-            dataService.addPlayer(steamId, player);
+            dataService.addPlayer(player);
         } else {
             logger.debug("User '{}' (id '{}') found in the storage. Updating entry...", playerName, steamId);
             player = storedPlayer;
             player.updateLastSeen();
             player.addName(playerName);
             player.incrementTimesEncountered();
-            dataService.notifyChange();
+            dataService.notifyChange(player);
         }
 
         // the player info is received from an app thread, so we need to push it to the UI thread (EDT)
@@ -496,7 +496,7 @@ public class KillerPanel extends JPanel {
         } else {
             killerPlayer.setRating(Player.Rating.UNRATED);
         }
-        dataService.notifyChange();
+        dataService.notifyChange(killerPlayer);
         updateRating();
         firePropertyChange(EVENT_KILLER_UPDATE, null, null);
     }
@@ -542,9 +542,8 @@ public class KillerPanel extends JPanel {
         if (killerPlayer != null) {
             killerPlayer.incrementSecondsPlayed(matchTime);
             statsContainer.get(InfoType.TIME_PLAYED_AGAINST).setText(TimeUtil.formatTimeUpToHours(killerPlayer.getSecondsPlayed()));
+            dataService.notifyChange(killerPlayer);
         }
-
-        dataService.notifyChange();
     }
 
     public void notifySurvivalAgainstCurrentKiller(Boolean escaped) {
@@ -557,7 +556,7 @@ public class KillerPanel extends JPanel {
         } else {
             killerPlayer.incrementDeaths();
         }
-        dataService.notifyChange();
+        dataService.notifyChange(killerPlayer);
 
         // make sure the buffered description is on the Player object
         updatePlayerDescription();
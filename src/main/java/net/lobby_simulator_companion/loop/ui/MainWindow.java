@@ -5,7 +5,9 @@ import net.lobby_simulator_companion.loop.config.Settings;
 import net.lobby_simulator_companion.loop.domain.Killer;
 import net.lobby_simulator_companion.loop.domain.Player;
 import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.service.ConnectionManager;
 import net.lobby_simulator_companion.loop.service.DbdLogMonitor;
+import net.lobby_simulator_companion.loop.service.GameSession;
 import net.lobby_simulator_companion.loop.service.LoopDataService;
 import net.lobby_simulator_companion.loop.service.PlayerDto;
 import net.lobby_simulator_companion.loop.ui.common.Colors;
@@ -24,11 +26,8 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.net.InetSocketAddress;
 import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.Queue;
 
 import static net.lobby_simulator_companion.loop.ui.common.ResourceFactory.Icon;
@@ -37,7 +36,7 @@ import static net.lobby_simulator_companion.loop.ui.common.ResourceFactory.Icon;
 /**
  * @author NickyRamone
  */
-public class MainWindow extends JFrame implements Observer {
+public class MainWindow extends JFrame {
 
     public static final String PROPERTY_EXIT_REQUEST = "exit.request";
 
@@ -58,37 +57,32 @@ public class MainWindow extends JFrame implements Observer {
     /**
      * Minimum time connected from which we can assume that a match has taken place.
      */
-    private static final int DEFAULT_MIN_MATCH_SECONDS = 60;
+    static final int DEFAULT_MIN_MATCH_SECONDS = 60;
     private static final int DEBUG_MIN_MATCH_SECONDS = 1;
     private static final int MAX_KILLER_PLAYER_NAME_LEN = 25;
     private static final int SURVIVAL_INPUT_WINDOW_DELAY = 3000;
 
 
-    private enum GameState {
-        IDLE,
-        SEARCHING_LOBBY,
-        IN_LOBBY,
-        IN_MATCH,
-        AFTER_MATCH
-    }
-
     private final Settings settings;
     private final AppProperties appProperties;
     private final DbdLogMonitor dbdLogMonitor;
     private final LoopDataService dataService;
+    private final ConnectionManager connectionManager;
     private final ServerPanel serverPanel;
     private final KillerPanel killerPanel;
     private final StatsPanel statsPanel;
 
     private int minMatchSeconds;
-    private GameState gameState = GameState.IDLE;
+    private final GameSession session = new GameSession();
     private Timer queueTimer;
-    private Long queueStartTime;
-    private Integer queueTime;
-    private Long matchWaitStartTime;
-    private int matchWaitTime;
     private Timer matchTimer;
-    private Long matchStartTime;
+
+    /**
+     * Durations are measured with the times at which events happened according to the log,
+     * not with the time at which we get to process them.
+     */
+    private long lastEventTime;
+    private long lastEventWallTime;
     private boolean connectionCountedAsMatch = false;
 
     private SurvivalInputPanel survivalInputPanel;
@@ -109,19 +103,28 @@ public class MainWindow extends JFrame implements Observer {
     private JPanel detailPanel;
 
 
+    /**
+     * @param connectionManager Source of the latency and traffic of the match connection; null if packets
+     *                          are not being captured.
+     */
     public MainWindow(Settings settings, AppProperties appProperties, DbdLogMonitor dbdLogMonitor, LoopDataService loopDataService,
-                      ServerPanel serverPanel, KillerPanel killerPanel, StatsPanel statsPanel) {
+                      ConnectionManager connectionManager, ServerPanel serverPanel, KillerPanel killerPanel,
+                      StatsPanel statsPanel) {
         this.settings = settings;
         this.appProperties = appProperties;
         this.dbdLogMonitor = dbdLogMonitor;
         this.dataService = loopDataService;
+        this.connectionManager = connectionManager;
         this.serverPanel = serverPanel;
         this.killerPanel = killerPanel;
         this.statsPanel = statsPanel;
 
         minMatchSeconds = appProperties.getBoolean("debug")? DEBUG_MIN_MATCH_SECONDS: DEFAULT_MIN_MATCH_SECONDS;
-        dbdLogMonitor.addObserver(this);
+        dbdLogMonitor.subscribe(SwingUtilities::invokeLater, this::handleLogEvent);
         initTimers();
+        if (connectionManager != null) {
+            startConnectionManager();
+        }
 
         serverPanel.addPropertyChangeListener(evt -> pack());
         killerPanel.addPropertyChangeListener(evt -> {
@@ -129,7 +132,7 @@ public class MainWindow extends JFrame implements Observer {
 
             if (KillerPanel.EVENT_STRUCTURE_CHANGED.equals(propertyName)) {
                 pack();
-            } else if (gameState == GameState.IN_LOBBY && KillerPanel.EVENT_KILLER_UPDATE.equals(propertyName)) {
+            } else if (session.getState() == GameSession.State.IN_LOBBY && KillerPanel.EVENT_KILLER_UPDATE.equals(propertyName)) {
                 updateKillerOnTitleBar();
             }
         });
@@ -343,6 +346,7 @@ public class MainWindow extends JFrame implements Observer {
                 new MouseAdapter() {
                     @Override
                     public void mouseClicked(MouseEvent e) {
+                        session.reset(currentEventTime());
                         turnToIdle();
                     }
                 });
@@ -411,43 +415,42 @@ public class MainWindow extends JFrame implements Observer {
     }
 
 
-    @Override
-    public void update(Observable observable, Object arg) {
-        if (observable instanceof DbdLogMonitor) {
-            DbdLogMonitor.Event event = (DbdLogMonitor.Event) arg;
-            Runnable action = null;
-
-            switch (event.type) {
-                case MATCH_WAIT:
-                    action = this::notifyWaitingForMatch;
-                    break;
-                case MATCH_WAIT_CANCEL:
-                    action = this::notifyMatchWaitCancel;
-                    break;
-                case SERVER_CONNECT:
-                    action = () -> notifyServerConnect(((InetSocketAddress) event.argument).getHostName());
-                    break;
-                case KILLER_PLAYER:
-                    action = () -> notifyNewKillerPlayer((PlayerDto) event.argument);
-                    break;
-                case KILLER_CHARACTER:
-                    action = () -> notifyNewKillerCharacter((Killer) event.argument);
-                    break;
-                case MAP_GENERATE:
-                    action = () -> notifyMapGeneration((String) event.argument);
-                    break;
-                case MATCH_START:
-                    action = this::notifyMatchStart;
-                    break;
-                case MATCH_END:
-                    action = this::notifyMatchEnd;
-                    break;
-                case SERVER_DISCONNECT:
-                    action = this::notifyServerDisconnect;
-                    break;
-            }
-
-            SwingUtilities.invokeLater(action);
+    /**
+     * Runs on the EDT.
+     */
+    private void handleLogEvent(DbdLogMonitor.Event event) {
+        long time = event.getTime();
+        lastEventTime = time;
+        lastEventWallTime = System.currentTimeMillis();
+
+        switch (event.getType()) {
+            case MATCH_WAIT:
+                notifyWaitingForMatch(time);
+                break;
+            case MATCH_WAIT_CANCEL:
+                notifyMatchWaitCancel(time);
+                break;
+            case SERVER_CONNECT:
+                notifyServerConnect(event.getServerAddress(), time);
+                break;
+            case KILLER_PLAYER:
+                notifyNewKillerPlayer(event.getPlayer());
+                break;
+            case KILLER_CHARACTER:
+                notifyNewKillerCharacter(event.getKiller());
+                break;
+            case MAP_GENERATE:
+                notifyMapGeneration(event.getMapId());
+                break;
+            case MATCH_START:
+                notifyMatchStart(time);
+                break;
+            case MATCH_END:
+                notifyMatchEnd(time);
+                break;
+            case SERVER_DISCONNECT:
+                notifyServerDisconnect(time);
+                break;
         }
     }
 
@@ -461,9 +464,16 @@ public class MainWindow extends JFrame implements Observer {
     }
 
 
+    private void startConnectionManager() {
+        serverPanel.setConnectionManager(connectionManager);
+        Thread thread = new Thread(connectionManager::start, "packet-capture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private void initTimers() {
         matchTimer = new Timer(1000, e -> {
-            int seconds = getMatchDuration();
+            int seconds = session.getMatchDuration(currentEventTime());
             displayMatchTimer(seconds);
 
             if (seconds >= minMatchSeconds && !connectionCountedAsMatch) {
@@ -473,30 +483,37 @@ public class MainWindow extends JFrame implements Observer {
         });
 
         queueTimer = new Timer(1000, e ->
-                displayQueueTimer((int) (System.currentTimeMillis() - queueStartTime) / 1000));
+                displayQueueTimer(GameSession.secondsBetween(session.getQueueStartTime(), currentEventTime())));
     }
 
-    private int getMatchDuration() {
-        return matchStartTime == null ? 0 : (int) (System.currentTimeMillis() - matchStartTime) / 1000;
+    /**
+     * Estimates the current time in the log's clock, for things that do not come from the log (like the timers
+     * on display, or the user manually disconnecting). When we are processing old entries (for example,
+     * when catching up after a restart), this is behind the wall-clock time.
+     */
+    private long currentEventTime() {
+        if (lastEventWallTime == 0) {
+            return System.currentTimeMillis();
+        }
+
+        return lastEventTime + (System.currentTimeMillis() - lastEventWallTime);
     }
 
-    private void notifyWaitingForMatch() {
-        if (gameState != GameState.IDLE) {
+    private void notifyWaitingForMatch(long time) {
+        if (!session.waitForMatch(time)) {
             return;
         }
         logger.debug("Event: waiting for match");
         disconnectButton.setVisible(true);
         changeTitleBarColor(Colors.CONNECTION_BAR_WAITING, Color.BLACK);
         connStatusLabel.setText("Waiting for match");
-        queueStartTime = System.currentTimeMillis();
+        displayQueueTimer(GameSession.secondsBetween(time, currentEventTime()));
         queueTimer.start();
-        matchWaitStartTime = queueStartTime;
         titleBarTimerContainer.setVisible(true);
-        gameState = GameState.SEARCHING_LOBBY;
     }
 
-    private void notifyMatchWaitCancel() {
-        if (gameState != GameState.SEARCHING_LOBBY && gameState != GameState.IN_LOBBY) {
+    private void notifyMatchWaitCancel(long time) {
+        if (!session.cancelMatchWait(time)) {
             return;
         }
         logger.debug("Event: match wait cancel");
@@ -504,23 +521,21 @@ public class MainWindow extends JFrame implements Observer {
         pack();
     }
 
-    private void notifyServerConnect(String serverAddress) {
+    private void notifyServerConnect(String serverAddress, long time) {
         connectToMatch(serverAddress);
-        notifyLobbyJoin();
+        notifyLobbyJoin(time);
     }
 
-    private void notifyLobbyJoin() {
-        if (gameState != GameState.SEARCHING_LOBBY) {
+    private void notifyLobbyJoin(long time) {
+        if (!session.joinLobby(time)) {
             return;
         }
 
         logger.debug("Event: lobby join");
         disconnectButton.setVisible(true);
-        queueTime = (int) (System.currentTimeMillis() - queueStartTime) / 1000;
-        queueStartTime = null;
         queueTimer.stop();
         dataService.getStats().incrementLobbiesFound();
-        dataService.getStats().incrementSecondsInQueue(queueTime);
+        dataService.getStats().incrementSecondsInQueue(session.getQueueTime());
         dataService.notifyChange();
         statsPanel.refreshStats();
         statsPanel.updateMap(RealmMap.UNIDENTIFIED);
@@ -530,11 +545,10 @@ public class MainWindow extends JFrame implements Observer {
         messagePanel.setVisible(false);
         changeTitleBarColor(Colors.CONNECTION_BAR_CONNECTED_BACKGROUND, Color.WHITE);
         pack();
-        gameState = GameState.IN_LOBBY;
     }
 
     private void notifyNewKillerPlayer(PlayerDto killerPlayer) {
-        if (gameState != GameState.IN_LOBBY) {
+        if (session.getState() != GameSession.State.IN_LOBBY) {
             return;
         }
         logger.debug("Event: new killer player");
@@ -542,7 +556,7 @@ public class MainWindow extends JFrame implements Observer {
     }
 
     private void notifyNewKillerCharacter(Killer killer) {
-        if (gameState != GameState.IN_LOBBY) {
+        if (session.getState() != GameSession.State.IN_LOBBY) {
             return;
         }
         logger.debug("Event: new killer character");
@@ -558,53 +572,46 @@ public class MainWindow extends JFrame implements Observer {
     }
 
 
-    private void notifyMatchStart() {
-        if (gameState != GameState.IN_LOBBY) {
+    private void notifyMatchStart(long time) {
+        if (!session.startMatch(time)) {
             return;
         }
         logger.debug("Event: match start");
 
-        matchWaitTime += (int) (System.currentTimeMillis() - matchWaitStartTime) / 1000;
-        matchWaitStartTime = null;
-        dataService.getStats().incrementSecondsWaited(matchWaitTime);
+        dataService.getStats().incrementSecondsWaited(session.getMatchWaitTime());
         dataService.notifyChange();
         statsPanel.refreshStats();
 
-        matchStartTime = System.currentTimeMillis();
         connStatusLabel.setText("In match");
-        displayMatchTimer(0);
+        displayMatchTimer(session.getMatchDuration(currentEventTime()));
         connectionCountedAsMatch = false;
         matchTimer.start();
         titleBarTimerContainer.setVisible(true);
-        gameState = GameState.IN_MATCH;
     }
 
-    private void notifyMatchEnd() {
-        if (gameState != GameState.IN_MATCH) {
+    private void notifyMatchEnd(long time) {
+        if (!session.endMatch(time)) {
             return;
         }
         logger.debug("Event: match end");
         matchTimer.stop();
-        reportEndOfMatchStats();
+        int matchTime = session.getMatchTime();
+        reportEndOfMatchStats(matchTime);
         titleBarTimerContainer.setVisible(false);
         killerInfoContainer.setVisible(false);
         connStatusLabel.setText("Match finished");
         connStatusLabel.setVisible(true);
         connTimerLabel.setText(TimeUtil.formatTimeUpToHours(0));
         lastConnMsgLabel.setText(String.format("Last match => actual play: %s / in queue: %s / overall wait: %s",
-                TimeUtil.formatTimeUpToHours(getMatchDuration()),
-                TimeUtil.formatTimeUpToHours(queueTime),
-                TimeUtil.formatTimeUpToHours(matchWaitTime)));
-        matchWaitTime = 0;
+                TimeUtil.formatTimeUpToHours(matchTime),
+                TimeUtil.formatTimeUpToHours(session.getQueueTime()),
+                TimeUtil.formatTimeUpToHours(session.getLastMatchWaitTime())));
         messagePanel.setVisible(true);
-        queueTime = null;
-        gameState = GameState.AFTER_MATCH;
         pack();
     }
 
-    private void reportEndOfMatchStats() {
+    private void reportEndOfMatchStats(int matchTime) {
         survivalInputPanel.reset();
-        int matchTime = getMatchDuration();
         if (matchTime >= minMatchSeconds) {
             killerPanel.notifyEndOfMatch(matchTime);
             statsPanel.notifyEndOfMatch(matchTime);
@@ -612,8 +619,8 @@ public class MainWindow extends JFrame implements Observer {
         }
     }
 
-    private void notifyServerDisconnect() {
-        if (gameState != GameState.IN_MATCH && gameState != GameState.AFTER_MATCH && gameState != GameState.IN_LOBBY) {
+    private void notifyServerDisconnect(long time) {
+        if (!session.disconnect(time)) {
             return;
         }
         logger.debug("Event: server disconnect");
@@ -627,21 +634,19 @@ public class MainWindow extends JFrame implements Observer {
         changeTitleBarColor(Colors.CONNECTION_BAR_CONNECTED_BACKGROUND, Color.WHITE);
     }
 
+    /**
+     * Updates the display once the session went back to idle.
+     */
     private void turnToIdle() {
         disconnectButton.setVisible(false);
         dbdLogMonitor.resetKiller();
-        queueStartTime = null;
-        queueTime = null;
         queueTimer.stop();
         displayQueueTimer(0);
-        matchWaitTime += matchWaitStartTime != null? (int) (System.currentTimeMillis() - matchWaitStartTime) / 1000: 0;
-        matchWaitStartTime = null;
         changeTitleBarColor(Colors.CONNECTION_BAR_DISCONNECTED_BACKGROUND, Color.WHITE);
         connStatusLabel.setText("Idle");
         connStatusLabel.setVisible(true);
         killerInfoContainer.setVisible(false);
         titleBarTimerContainer.setVisible(false);
-        gameState = GameState.IDLE;
     }
 
     private void changeTitleBarColor(Color bgColor, Color fgColor) {
@@ -672,7 +677,10 @@ public class MainWindow extends JFrame implements Observer {
 
     public void close() {
         settings.forceSave();
-        dataService.save();
+        if (connectionManager != null) {
+            connectionManager.close();
+        }
+        dataService.close();
         dispose();
     }
 
@@ -810,7 +818,7 @@ public class MainWindow extends JFrame implements Observer {
             if (killerPlayer != null) {
                 killerPlayer.setEscapesAgainst(killerPlayerBackup.getEscapesAgainst());
                 killerPlayer.setDeaths(killerPlayerBackup.getDeathsBy());
-                dataService.notifyChange();
+                dataService.notifyChange(killerPlayer);
                 killerPanel.updateKillerPlayer(killerPlayer);
             }
 
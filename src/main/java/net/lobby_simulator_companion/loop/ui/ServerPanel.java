@@ -3,7 +3,11 @@ package net.lobby_simulator_companion.loop.ui;
 import net.lobby_simulator_companion.loop.config.AppProperties;
 import net.lobby_simulator_companion.loop.config.Settings;
 import net.lobby_simulator_companion.loop.domain.Server;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+import net.lobby_simulator_companion.loop.domain.TrafficSnapshot;
 import net.lobby_simulator_companion.loop.repository.ServerDao;
+import net.lobby_simulator_companion.loop.service.ConnectionManager;
+import net.lobby_simulator_companion.loop.service.LatencyTracker;
 import net.lobby_simulator_companion.loop.ui.common.CollapsablePanel;
 import net.lobby_simulator_companion.loop.ui.common.Colors;
 import net.lobby_simulator_companion.loop.ui.common.ComponentUtils;
@@ -20,6 +24,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import static net.lobby_simulator_companion.loop.ui.common.ResourceFactory.Icon;
 
@@ -31,12 +36,16 @@ public class ServerPanel extends JPanel {
     public static final String EVENT_STRUCTURE_CHANGED = "structure_changed";
     private static final Font font = ResourceFactory.getRobotoFont();
     private static final Logger logger = LoggerFactory.getLogger(ServerPanel.class);
+    private static final int NETWORK_REFRESH_MS = 1000;
 
     private enum InfoType {
         COUNTRY("Country"),
         REGION("Region"),
         CITY("City"),
-        PROVIDER("Provider");
+        PROVIDER("Provider"),
+        PING("Ping"),
+        TRAFFIC("Traffic"),
+        LOSS("Loss");
 
         String description;
 
@@ -52,7 +61,12 @@ public class ServerPanel extends JPanel {
     private JLabel summaryLabel;
     private JLabel geoLocationLabel;
     private NameValueInfoPanel<InfoType> detailsPanel;
+    private NameValueInfoPanel<InfoType> networkPanel;
     private Server server;
+    private ConnectionManager connectionManager;
+    private Timer networkTimer;
+    private TrafficCounters lastTraffic;
+    private TrafficSnapshot lastTrafficSnapshot;
 
 
     public ServerPanel(Settings settings, AppProperties appProperties, ServerDao serverDao) {
@@ -61,11 +75,19 @@ public class ServerPanel extends JPanel {
         this.serverDao = serverDao;
 
         setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
-        detailsPanel = createDetailsPanel();
+        detailsPanel = createDetailsPanel(InfoType.COUNTRY, InfoType.REGION, InfoType.CITY, InfoType.PROVIDER);
+        // only shown once there is a connection manager to measure the connection
+        networkPanel = createDetailsPanel(InfoType.PING, InfoType.TRAFFIC, InfoType.LOSS);
+        networkPanel.setVisible(false);
+
+        JPanel contentPanel = new JPanel();
+        contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
+        contentPanel.add(detailsPanel);
+        contentPanel.add(networkPanel);
 
         JPanel collapsablePanel = new CollapsablePanel(
                 createTitleBar(),
-                detailsPanel,
+                contentPanel,
                 settings, "ui.panel.server.collapsed");
         collapsablePanel.addPropertyChangeListener(evt -> firePropertyChange(EVENT_STRUCTURE_CHANGED, null, null));
         add(collapsablePanel);
@@ -119,9 +141,9 @@ public class ServerPanel extends JPanel {
         return container;
     }
 
-    private NameValueInfoPanel createDetailsPanel() {
+    private NameValueInfoPanel<InfoType> createDetailsPanel(InfoType... infoTypes) {
         NameValueInfoPanel.Builder<InfoType> builder = new NameValueInfoPanel.Builder<>();
-        for (InfoType infoType : InfoType.values()) {
+        for (InfoType infoType : infoTypes) {
             builder.addField(infoType, infoType.description + ":");
         }
 
@@ -164,8 +186,66 @@ public class ServerPanel extends JPanel {
         setServerValue(InfoType.PROVIDER, null);
     }
 
+    /**
+     * Shows the latency and traffic of the connection to the match host or server, as measured by the given
+     * connection manager (refreshed every second).
+     */
+    public void setConnectionManager(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        if (networkTimer == null) {
+            networkTimer = new Timer(NETWORK_REFRESH_MS, e -> refreshNetworkInfo());
+            networkTimer.start();
+            networkPanel.setVisible(true);
+            firePropertyChange(EVENT_STRUCTURE_CHANGED, null, null);
+        }
+    }
+
+    private void refreshNetworkInfo() {
+        refreshLatency(connectionManager.getLatency());
+        refreshTraffic(connectionManager.getTraffic());
+    }
+
+    private void refreshLatency(LatencyTracker latency) {
+        String value = null;
+
+        if (latency != null && latency.getSampleCount() > 0) {
+            value = String.format("%d ms (avg: %d ms", toMillis(latency.getLastRtt()), toMillis(latency.getAverageRtt()));
+            long jitter = latency.getJitter();
+            value += jitter == LatencyTracker.NO_SAMPLE ? ")" : String.format(", jitter: %d ms)", toMillis(jitter));
+        }
+        setServerValue(InfoType.PING, value);
+    }
+
+    /**
+     * Shows the rates since the previous refresh.
+     */
+    private void refreshTraffic(TrafficCounters traffic) {
+        String trafficValue = null;
+        String lossValue = null;
+        TrafficSnapshot snapshot = traffic != null ? traffic.snapshot() : null;
+
+        if (snapshot != null && traffic == lastTraffic) {
+            TrafficSnapshot delta = snapshot.since(lastTrafficSnapshot);
+            double seconds = Math.max(1, delta.getTime()) / 1000.0;
+            trafficValue = String.format(Locale.US, "in: %.0f pkt/s, %.1f KB/s | out: %.0f pkt/s, %.1f KB/s",
+                    delta.getPacketsIn() / seconds, delta.getBytesIn() / seconds / 1024,
+                    delta.getPacketsOut() / seconds, delta.getBytesOut() / seconds / 1024);
+            lossValue = String.format(Locale.US, "%.1f%% (total: %.1f%%, max gap: %d ms)",
+                    delta.getLossRate() * 100, snapshot.getLossRate() * 100, toMillis(snapshot.getMaxGap()));
+        }
+        lastTraffic = traffic;
+        lastTrafficSnapshot = snapshot;
+        setServerValue(InfoType.TRAFFIC, trafficValue);
+        setServerValue(InfoType.LOSS, lossValue);
+    }
+
+    private static long toMillis(long micros) {
+        return TimeUnit.MICROSECONDS.toMillis(micros + 500);
+    }
+
     private void setServerValue(InfoType type, String value) {
-        detailsPanel.get(type).setText(value);
+        JLabel label = detailsPanel.get(type);
+        (label != null ? label : networkPanel.get(type)).setText(value);
     }
 
 }
@@ -0,0 +1,120 @@
+package net.lobby_simulator_companion.loop.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by a {@link BinaryEncoder}, from a region of a byte array.
+ * <p>
+ * Strings referenced from the dictionary are returned as the same instance every time, so repeated names are only
+ * held once in memory.
+ *
+ * @author NickyRamone
+ */
+public final class BinaryDecoder {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    private String[] dictionary = new String[0];
+
+
+    public BinaryDecoder(byte[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Region out of bounds.");
+        }
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public void setDictionary(String[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return Number of bytes left to read.
+     */
+    public int remaining() {
+        return limit - position;
+    }
+
+    private void require(int bytes) throws IOException {
+        if (limit - position < bytes) {
+            throw new IOException("Unexpected end of data.");
+        }
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if ((value & ~0xFFFF_FFFFL) != 0) {
+            throw new IOException("Malformed varint.");
+        }
+
+        return (int) value;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    public long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+
+        return value;
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        return value;
+    }
+
+    public String readStringRef() throws IOException {
+        int index = readVarInt() - 1;
+        if (index < 0) {
+            return null;
+        }
+        if (index >= dictionary.length) {
+            throw new IOException("Invalid string reference: " + index);
+        }
+
+        return dictionary[index];
+    }
+
+}
@@ -0,0 +1,146 @@
+package net.lobby_simulator_companion.loop.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes values in a compact binary form, into a growing buffer: integers as varints (7 bits per byte, so that
+ * small values take a single byte), and strings either inline or as references to a dictionary, so that repeated
+ * strings are stored only once.
+ * <p>
+ * The dictionary is collected while writing, and has to be stored separately (before the data that references it).
+ * To be read with a {@link BinaryDecoder}.
+ *
+ * @author NickyRamone
+ */
+public final class BinaryEncoder {
+
+    private final Map<String, Integer> dictionaryIndexes;
+    private final List<String> dictionary;
+    private byte[] buffer = new byte[4096];
+    private int size;
+
+
+    /**
+     * Creates an encoder with a dictionary of its own.
+     */
+    public BinaryEncoder() {
+        this(new HashMap<>(), new ArrayList<>());
+    }
+
+    private BinaryEncoder(Map<String, Integer> dictionaryIndexes, List<String> dictionary) {
+        this.dictionaryIndexes = dictionaryIndexes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return An encoder into a buffer of its own, but which shares the dictionary of this one (useful to write
+     * separate sections that reference the same dictionary).
+     */
+    public BinaryEncoder newSection() {
+        return new BinaryEncoder(dictionaryIndexes, dictionary);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes the int as unsigned: negative values always take 5 bytes.
+     */
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * Writes the long as unsigned: negative values always take 10 bytes.
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Writes the long so that values close to zero (positive or negative) take less bytes.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Writes the string itself (for strings that are not likely to repeat). It can be null.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Writes a reference to the string in the dictionary (adding it, if it's not there yet). It can be null.
+     */
+    public void writeStringRef(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = dictionaryIndexes.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionaryIndexes.put(value, index);
+            dictionary.add(value);
+        }
+        writeVarInt(index + 1);
+    }
+
+    /**
+     * @return The strings written so far as references, in the order expected by
+     * {@link BinaryDecoder#setDictionary(String[])}.
+     */
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.lobby_simulator_companion.loop.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class TrafficCountersUTest {
+
+    private final TrafficCounters counters = new TrafficCounters();
+
+
+    @Test
+    public void whenPacketsAreCounted_thenSnapshotHasTotals() {
+        for (long time = 0; time < 10 * 16_000; time += 16_000) {
+            counters.countIncoming(time, 100);
+        }
+        counters.countOutgoing(40);
+        counters.countOutgoing(60);
+
+        TrafficSnapshot snapshot = counters.snapshot();
+        assertThat(snapshot.getPacketsIn(), equalTo(10L));
+        assertThat(snapshot.getBytesIn(), equalTo(1000L));
+        assertThat(snapshot.getPacketsOut(), equalTo(2L));
+        assertThat(snapshot.getBytesOut(), equalTo(100L));
+        assertThat(snapshot.getAverageGap(), equalTo(16_000L));
+        assertThat(snapshot.getLostPackets(), equalTo(0L));
+    }
+
+    @Test
+    public void whenGapIsMuchLongerThanUsual_thenMissingPacketsAreCountedAsLost() {
+        long time = 0;
+        for (int i = 0; i < 20; i++, time += 16_000) {
+            counters.countIncoming(time, 100);
+        }
+        TrafficSnapshot before = counters.snapshot();
+
+        // 3 packets missing
+        time += 3 * 16_000;
+        counters.countIncoming(time, 100);
+        counters.countIncoming(time + 16_000, 100);
+
+        TrafficSnapshot delta = counters.snapshot().since(before);
+        assertThat(delta.getPacketsIn(), equalTo(2L));
+        assertThat(delta.getLostPackets(), equalTo(3L));
+        assertThat(delta.getLossRate(), equalTo(0.6));
+        assertThat(delta.getMaxGap(), equalTo(64_000L));
+    }
+
+    @Test
+    public void whenGapIsAPause_thenNothingIsCountedAsLost() {
+        counters.countIncoming(0, 100);
+        counters.countIncoming(16_000, 100);
+        counters.countIncoming(10_000_000, 100);
+
+        assertThat(counters.snapshot().getLostPackets(), equalTo(0L));
+
+        // the pause doesn't change the usual rate, so losses right after it are still noticed
+        long time = 10_000_000;
+        for (int i = 0; i < 3; i++) {
+            time += 16_000;
+            counters.countIncoming(time, 100);
+        }
+        counters.countIncoming(time + 4 * 16_000, 100);
+
+        assertThat(counters.snapshot().getLostPackets(), equalTo(3L));
+    }
+
+}
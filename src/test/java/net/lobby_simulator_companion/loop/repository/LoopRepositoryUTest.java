@@ -0,0 +1,218 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.Killer;
+import net.lobby_simulator_companion.loop.domain.LoopData;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.RealmMap;
+import net.lobby_simulator_companion.loop.domain.stats.PeriodStats;
+import net.lobby_simulator_companion.loop.domain.stats.Stats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LoopRepositoryUTest {
+
+    private File storageDir;
+    private LoopRepository repository;
+
+
+    @Before
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("loop-test_").toFile();
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.getPath());
+        properties.setProperty("storage.file", "loop.dat");
+        properties.setProperty("storage.file.legacy", "loop.hosts.dat");
+        properties.setProperty("storage.read.encrypted", "true");
+        properties.setProperty("storage.write.encrypted", "true");
+        repository = new LoopRepository(new AppProperties(properties));
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : storageDir.listFiles()) {
+            file.delete();
+        }
+        storageDir.delete();
+    }
+
+    @Test
+    public void whenChangesAreSaved_thenTheyAreReplayedOnLoad() throws IOException {
+        LoopData loopData = new LoopData();
+        Player alice = newPlayer("1", "alice");
+        loopData.addPlayers(Collections.singletonList(alice));
+        repository.save(loopData);
+
+        alice.setRating(Player.Rating.THUMBS_DOWN);
+        Player bob = newPlayer("2", "bob");
+        repository.saveChanges(Arrays.asList(alice, bob), null);
+        alice.incrementTimesEncountered();
+        Stats stats = new Stats();
+        stats.incrementMatchesPlayed(Killer.NURSE, RealmMap.UNIDENTIFIED);
+        repository.saveChanges(Collections.singletonList(alice), stats);
+
+        LoopData loaded = repository.load();
+
+        assertThat(loaded.getPlayers().size(), equalTo(2));
+        Player loadedAlice = loaded.getPlayer("1");
+        assertThat(loadedAlice.getSteamId64(), equalTo("1"));
+        assertThat(loadedAlice.getRating(), equalTo(Player.Rating.THUMBS_DOWN));
+        assertThat(loadedAlice.getTimesEncountered(), equalTo(2));
+        assertThat(loaded.getPlayer("2").getMostRecentName(), equalTo("bob"));
+        assertThat(loaded.getStats().get(Stats.Period.GLOBAL).getMatchesPlayed(), equalTo(1));
+    }
+
+    @Test
+    public void whenLastRecordIsTorn_thenPreviousOnesAreKept() throws IOException {
+        repository.save(new LoopData());
+        repository.saveChanges(Collections.singletonList(newPlayer("1", "alice")), null);
+        long validSize = repository.getJournalSize();
+        repository.saveChanges(Collections.singletonList(newPlayer("2", "bob")), null);
+
+        File journalFile = new File(storageDir, "loop.dat.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        LoopData loaded = repository.load();
+
+        assertThat(loaded.getPlayers().size(), equalTo(1));
+        assertThat(loaded.getPlayer("1").getMostRecentName(), equalTo("alice"));
+        assertThat(repository.getJournalSize(), equalTo(validSize));
+    }
+
+    @Test
+    public void whenEverythingIsSaved_thenJournalIsCleared() throws IOException {
+        LoopData loopData = new LoopData();
+        repository.save(loopData);
+        Player alice = newPlayer("1", "alice");
+        repository.saveChanges(Collections.singletonList(alice), null);
+
+        loopData.addPlayers(Collections.singletonList(alice));
+        repository.save(loopData);
+
+        assertThat(repository.getJournalSize(), equalTo(0L));
+        assertThat(repository.load().getPlayers().size(), equalTo(1));
+    }
+
+    @Test
+    public void whenSavedOverPreviousData_thenItIsReplacedWithoutLeavingTemporaryFiles() throws IOException {
+        LoopData loopData = new LoopData();
+        loopData.addPlayers(Collections.singletonList(newPlayer("1", "alice")));
+        repository.save(loopData);
+        loopData.addPlayers(Collections.singletonList(newPlayer("2", "bob")));
+        repository.save(loopData);
+
+        assertThat(repository.load().getPlayers().size(), equalTo(2));
+        assertThat(new File(storageDir, "loop.dat.tmp").exists(), equalTo(false));
+    }
+
+    @Test
+    public void whenDataWasWrittenByReflection_thenItIsLoaded() throws IOException {
+        String json = "{\"version\": 3, \"players\": ["
+                + "{\"steamId64\": \"765\", \"firstSeen\": 1000, \"lastSeen\": 2000, \"timesEncountered\": 3,"
+                + " \"matchesPlayed\": 2, \"secondsPlayed\": 600, \"escapes\": 1, \"deaths\": 1,"
+                + " \"names\": [\"alice\", \"bob\"], \"rating\": \"-1\", \"description\": \"camper\"},"
+                + "{\"uid\": \"111\", \"firstSeen\": 1000, \"lastSeen\": 1000, \"names\": [], \"rating\": \"0\"}],"
+                + " \"stats\": {\"global\": {\"periodStart\": 1590000000, \"matchesPlayed\": 4,"
+                + " \"killersStats\": {\"nurse\": {\"matches\": 4, \"escapes\": 1, \"deaths\": 0, \"matchTime\": 0}},"
+                + " \"mapStats\": {}}}}";
+        Files.write(new File(storageDir, "loop.dat").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.getPath());
+        properties.setProperty("storage.file", "loop.dat");
+        properties.setProperty("storage.file.legacy", "loop.hosts.dat");
+        LoopData loaded = new LoopRepository(new AppProperties(properties)).load();
+
+        Player player = loaded.getPlayer("765");
+        assertThat(player.getLastSeen(), equalTo(2000L));
+        assertThat(player.getSecondsPlayed(), equalTo(600));
+        assertThat(player.getMostRecentName(), equalTo("bob"));
+        assertThat(player.getRating(), equalTo(Player.Rating.THUMBS_DOWN));
+        assertThat(player.getDescription(), equalTo("camper"));
+        assertThat(loaded.getPlayer("111").getUID(), equalTo("111"));
+        PeriodStats globalStats = loaded.getStats().get(Stats.Period.GLOBAL);
+        assertThat(globalStats.getMatchesPlayed(), equalTo(4));
+        assertThat(globalStats.getKillersStats().get(Killer.NURSE).getMatches(), equalTo(4));
+    }
+
+    @Test
+    public void whenSavedAsBinary_thenEverythingIsLoadedBackAndCanBeConvertedToJson() throws IOException {
+        LoopData loopData = new LoopData();
+        Player alice = newPlayer("76561198000000001", "alice");
+        alice.addName("alicia");
+        alice.setDbdPlayerId("4f1d9b8e-2c3a-4e5f-8a7b-6c5d4e3f2a1b");
+        alice.setRating(Player.Rating.THUMBS_UP);
+        alice.setDescription("friendly \u00e1");
+        alice.updateSeen(alice.getFirstSeen() + 3600);
+        Player legacy = new Player();
+        legacy.setUID("0123");
+        legacy.setDbdPlayerId("not-a-uuid");
+        legacy.addName("alice");
+        loopData.addPlayers(Arrays.asList(alice, legacy, newPlayer("007", "bob")));
+        loopData.getStats().incrementMatchesPlayed(Killer.NURSE, RealmMap.UNIDENTIFIED);
+
+        // times are stored in seconds, in both formats
+        LocalDateTime periodStart = loopData.getStats().get(Stats.Period.GLOBAL).getPeriodStart()
+                .truncatedTo(ChronoUnit.SECONDS);
+
+        LoopData fromBinary = saveAndLoad(loopData, "binary");
+        LoopData fromJson = saveAndLoad(fromBinary, "json");
+
+        for (LoopData loaded : Arrays.asList(fromBinary, fromJson)) {
+            assertThat(loaded.getPlayers().size(), equalTo(3));
+            Player loadedAlice = loaded.getPlayer("76561198000000001");
+            assertThat(loadedAlice.getNames(), equalTo(Arrays.asList("alice", "alicia")));
+            assertThat(loadedAlice.getDbdPlayerId(), equalTo(alice.getDbdPlayerId()));
+            assertThat(loadedAlice.getRating(), equalTo(Player.Rating.THUMBS_UP));
+            assertThat(loadedAlice.getDescription(), equalTo(alice.getDescription()));
+            assertThat(loadedAlice.getFirstSeen(), equalTo(alice.getFirstSeen()));
+            assertThat(loadedAlice.getLastSeen(), equalTo(alice.getLastSeen()));
+            assertThat(loaded.getPlayer("0123").getDbdPlayerId(), equalTo("not-a-uuid"));
+            assertThat(loaded.getPlayer("007").getSteamId64(), equalTo("007"));
+            PeriodStats globalStats = loaded.getStats().get(Stats.Period.GLOBAL);
+            assertThat(globalStats.getMatchesPlayed(), equalTo(1));
+            assertThat(globalStats.getKillersStats().get(Killer.NURSE).getMatches(), equalTo(1));
+            assertThat(globalStats.getPeriodStart(), equalTo(periodStart));
+        }
+    }
+
+    private LoopData saveAndLoad(LoopData loopData, String format) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.getPath());
+        properties.setProperty("storage.file", "loop.dat");
+        properties.setProperty("storage.file.legacy", "loop.hosts.dat");
+        properties.setProperty("storage.read.encrypted", "true");
+        properties.setProperty("storage.write.encrypted", "true");
+        properties.setProperty("storage.format", format);
+        LoopRepository repository = new LoopRepository(new AppProperties(properties));
+        repository.save(loopData);
+
+        return repository.load();
+    }
+
+
+    private static Player newPlayer(String steamId, String name) {
+        Player player = new Player();
+        player.setSteamId64(steamId);
+        player.addName(name);
+        player.incrementTimesEncountered();
+
+        return player;
+    }
+
+}
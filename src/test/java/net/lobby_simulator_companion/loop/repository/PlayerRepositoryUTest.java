@@ -0,0 +1,158 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.Player;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class PlayerRepositoryUTest {
+
+    private File storageDir;
+    private AppProperties properties;
+
+
+    @Before
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("loop-test_").toFile();
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.getPath());
+        properties.setProperty("storage.file", "loop.dat");
+        this.properties = new AppProperties(properties);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : storageDir.listFiles()) {
+            file.delete();
+        }
+        storageDir.delete();
+    }
+
+    @Test
+    public void whenPlayersAreSavedAgain_thenTheLastVersionIsFound() throws IOException {
+        PlayerRepository repository = new PlayerRepository(properties);
+        Player alice = newPlayer("76561198000000001", "alice");
+        repository.save(Arrays.asList(alice, newPlayer("legacy-id", "bob")));
+        alice.addName("alicia");
+        repository.save(Collections.singletonList(alice));
+
+        assertThat(repository.size(), equalTo(2));
+        assertThat(repository.find("76561198000000001").getMostRecentName(), equalTo("alicia"));
+        assertThat(repository.find("legacy-id").getMostRecentName(), equalTo("bob"));
+        assertThat(repository.find("76561198000000002"), nullValue());
+    }
+
+    @Test
+    public void whenReopened_thenPlayersAreFoundWithTheStoredIndex() throws IOException {
+        PlayerRepository repository = new PlayerRepository(properties);
+        repository.save(Arrays.asList(newPlayer("1", "alice"), newPlayer("legacy-id", "bob")));
+        repository.close();
+        // saved after the index, as if the app died before closing
+        repository.save(Collections.singletonList(newPlayer("2", "carol")));
+
+        PlayerRepository reopened = new PlayerRepository(properties);
+
+        assertThat(reopened.size(), equalTo(3));
+        assertThat(reopened.find("1").getMostRecentName(), equalTo("alice"));
+        assertThat(reopened.find("legacy-id").getMostRecentName(), equalTo("bob"));
+        assertThat(reopened.find("2").getMostRecentName(), equalTo("carol"));
+    }
+
+    @Test
+    public void whenLastRecordIsTornAndThereIsNoIndex_thenPreviousOnesAreKept() throws IOException {
+        PlayerRepository repository = new PlayerRepository(properties);
+        repository.save(Collections.singletonList(newPlayer("1", "alice")));
+        long validSize = repository.getDataSize();
+        repository.save(Collections.singletonList(newPlayer("2", "bob")));
+
+        try (RandomAccessFile raf = new RandomAccessFile(new File(storageDir, "loop.dat.players"), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        PlayerRepository reopened = new PlayerRepository(properties);
+
+        assertThat(reopened.size(), equalTo(1));
+        assertThat(reopened.find("1").getMostRecentName(), equalTo("alice"));
+        assertThat(reopened.find("2"), nullValue());
+        assertThat(reopened.getDataSize(), equalTo(validSize));
+    }
+
+    @Test
+    public void whenMostOfTheFileIsOldVersions_thenItIsCompacted() throws IOException {
+        PlayerRepository repository = new PlayerRepository(properties);
+        List<Player> players = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            players.add(newPlayer(Long.toString(i), "player" + i));
+        }
+        players.add(newPlayer("legacy-id", "bob"));
+        repository.save(players);
+        long initialSize = repository.getDataSize();
+
+        for (int i = 0; i < 50; i++) {
+            players.get(0).incrementTimesEncountered();
+            repository.save(players);
+        }
+        PlayerRepository reopened = new PlayerRepository(properties);
+
+        // without compacting, it would be 51 times the initial size
+        assertThat(repository.getDataSize() < 30 * initialSize, equalTo(true));
+        assertThat(reopened.size(), equalTo(1001));
+        assertThat(reopened.find("1").getTimesEncountered(), equalTo(50));
+        assertThat(reopened.find("1000").getMostRecentName(), equalTo("player1000"));
+        assertThat(reopened.find("legacy-id").getMostRecentName(), equalTo("bob"));
+    }
+
+    @Test
+    public void whenReadingWhileCompacting_thenPlayersAreFound() throws Exception {
+        PlayerRepository repository = new PlayerRepository(properties);
+        List<Player> players = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            players.add(newPlayer(Long.toString(i), "player" + i));
+        }
+        repository.save(players);
+        AtomicReference<Exception> writerError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 50; i++) {
+                    repository.save(players);
+                }
+            } catch (IOException e) {
+                writerError.set(e);
+            }
+        });
+
+        writer.start();
+        for (int i = 1; writer.isAlive(); i = i % 1000 + 1) {
+            assertThat(repository.find(Integer.toString(i)).getMostRecentName(), equalTo("player" + i));
+        }
+        writer.join();
+
+        assertThat(writerError.get(), nullValue());
+        assertThat(repository.size(), equalTo(1000));
+    }
+
+
+    private static Player newPlayer(String steamId, String name) {
+        Player player = new Player();
+        player.setSteamId64(steamId);
+        player.addName(name);
+
+        return player;
+    }
+
+}
@@ -0,0 +1,138 @@
+package net.lobby_simulator_companion.loop.repository;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class Utf8JsonReaderUTest {
+
+    private static final String JSON = "{\"name\":\"caf\u00e9 \\\"\u4e16\u754c\\\" \\u00e9\\n\\/\",\n"
+            + "  \"id\": 76561198000000001, \"count\": -12, \"ratio\": 1.5e3, \"whole\": 2.0,\n"
+            + "  \"flag\": true, \"none\": null, \"empty\": {}, \"list\": [[], [1, \"a\"], {\"x\": [false]}],\n"
+            + "  \"players\": [{\"name\": \"alice\"}, {\"name\": \"bob\"}]}";
+
+
+    @Test
+    public void whenReadingTokens_thenTheyAreTheSameAsGsons() throws IOException {
+        List<String> expected = readTokens(new JsonReader(new StringReader(JSON)));
+
+        assertThat(readTokens(utf8Reader(JSON, 64 * 1024)), equalTo(expected));
+        // tokens that span several fills of the buffer
+        assertThat(readTokens(utf8Reader(JSON, 3)), equalTo(expected));
+    }
+
+    @Test
+    public void whenSkippingValues_thenTheNextOnesAreRead() throws IOException {
+        JsonReader reader = utf8Reader(JSON, 5);
+
+        reader.beginObject();
+        List<String> names = new ArrayList<>();
+        while (reader.hasNext()) {
+            names.add(reader.nextName());
+            reader.skipValue();
+        }
+        reader.endObject();
+
+        assertThat(names.toString(),
+                equalTo("[name, id, count, ratio, whole, flag, none, empty, list, players]"));
+        assertThat(reader.peek(), equalTo(JsonToken.END_DOCUMENT));
+    }
+
+    @Test
+    public void whenReadingPrimitives_thenNumbersAreConverted() throws IOException {
+        JsonReader reader = utf8Reader("[76561198000000001, \"42\", 2.0, 1.5e3, 7]", 4);
+
+        reader.beginArray();
+        assertThat(reader.nextLong(), equalTo(76561198000000001L));
+        assertThat(reader.nextInt(), equalTo(42));
+        assertThat(reader.nextLong(), equalTo(2L));
+        assertThat(reader.nextDouble(), equalTo(1500.0));
+        assertThat(reader.nextString(), equalTo("7"));
+        reader.endArray();
+    }
+
+    @Test
+    public void whenNamesRepeat_thenTheSameInstanceIsReturned() throws IOException {
+        JsonReader reader = utf8Reader("[{\"name\": 1}, {\"name\": 2}]", 64);
+
+        reader.beginArray();
+        reader.beginObject();
+        String first = reader.nextName();
+        reader.skipValue();
+        reader.endObject();
+        reader.beginObject();
+        String second = reader.nextName();
+
+        assertThat(second, sameInstance(first));
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void whenJsonIsMalformed_thenItFails() throws IOException {
+        JsonReader reader = utf8Reader("{\"name\" 1}", 64);
+
+        reader.beginObject();
+        reader.nextName();
+        reader.nextInt();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenTokenIsNotTheExpectedOne_thenItFails() throws IOException {
+        utf8Reader("[true]", 64).beginObject();
+    }
+
+
+    private static JsonReader utf8Reader(String json, int bufferSize) {
+        return new Utf8JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), bufferSize);
+    }
+
+    private static List<String> readTokens(JsonReader reader) throws IOException {
+        List<String> tokens = new ArrayList<>();
+
+        while (true) {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    break;
+                case NAME:
+                    tokens.add(token + ":" + reader.nextName());
+                    continue;
+                case STRING:
+                case NUMBER:
+                    tokens.add(token + ":" + reader.nextString());
+                    continue;
+                case BOOLEAN:
+                    tokens.add(token + ":" + reader.nextBoolean());
+                    continue;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                case END_DOCUMENT:
+                    return tokens;
+            }
+            tokens.add(token.toString());
+        }
+    }
+
+}
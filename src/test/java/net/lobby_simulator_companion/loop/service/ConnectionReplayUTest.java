@@ -0,0 +1,273 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import net.lobby_simulator_companion.loop.domain.TrafficCounters;
+import net.lobby_simulator_companion.loop.domain.TrafficSnapshot;
+import org.junit.Test;
+import org.pcap4j.core.RawPacketListener;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.IpVersion;
+import org.pcap4j.packet.namednumber.UdpPort;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+/**
+ * Replays synthetic captures through the capture engine, with connections expiring according to the
+ * capture times.
+ */
+public class ConnectionReplayUTest {
+
+    private static final long START_TIME = 1_600_000_000_000L;
+
+    private final Inet4Address localAddr = address("192.168.1.10");
+    private final Inet4Address serverAddr = address("35.159.49.240");
+    private final Inet4Address peerAddr1 = address("81.34.120.7");
+    private final Inet4Address peerAddr2 = address("90.160.2.33");
+    private final List<byte[]> frames = new ArrayList<>();
+    private final List<Long> captureTimes = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private final List<LatencyTracker> latencies = new ArrayList<>();
+    private final List<TrafficCounters> traffics = new ArrayList<>();
+    private CaptureEngine engine;
+
+
+    @Test
+    public void whenReplayingTwoMatches_thenDedicatedServerConnectsAndDisconnectsTwice() throws Exception {
+        for (long matchStart : new long[]{0, 60_000}) {
+            byte[] handshakeInit = new byte[148];
+            handshakeInit[0] = 1;
+            addFrame(matchStart, localAddr, 50124, serverAddr, 7779, handshakeInit);
+            for (long t = 100; t <= 3000; t += 100) {
+                addFrame(matchStart + t, serverAddr, 7779, localAddr, 50124, new byte[100]);
+            }
+        }
+
+        replay(CaptureEngine.Mode.DEDICATED_SERVER);
+
+        assertThat(events, equalTo(Arrays.asList(
+                "connect 35.159.49.240 at 0", "disconnect",
+                "connect 35.159.49.240 at 60000", "disconnect")));
+    }
+
+    @Test
+    public void whenServerAnswersHandshakes_thenLatencyIsMeasured() throws Exception {
+        addFrame(0, localAddr, 50124, serverAddr, 7779, wireGuardMessage(1, 0x1234, 0));
+        addFrame(42, serverAddr, 7779, localAddr, 50124, wireGuardMessage(2, 0x9876, 0x1234));
+        for (long t = 100; t <= 3000; t += 100) {
+            addFrame(t, serverAddr, 7779, localAddr, 50124, new byte[100]);
+            if (t == 2000) {
+                // rekeying
+                addFrame(t, localAddr, 50124, serverAddr, 7779, wireGuardMessage(1, 0x5678, 0));
+                addFrame(t + 38, serverAddr, 7779, localAddr, 50124, wireGuardMessage(2, 0x9877, 0x5678));
+            }
+        }
+
+        replay(CaptureEngine.Mode.DEDICATED_SERVER);
+
+        LatencyTracker latency = latencies.get(0);
+        assertThat(latency.getSampleCount(), equalTo(2L));
+        assertThat(latency.getLastRtt(), equalTo(38_000L));
+        assertThat(latency.getAverageRtt(), equalTo(40_000L));
+        assertThat(latency.getJitter(), equalTo(4_000L));
+        assertThat(engine.getLatency() == null, equalTo(true));
+    }
+
+    @Test
+    public void whenConnectedToServer_thenTrafficIsCountedInBothDirections() throws Exception {
+        addFrame(0, localAddr, 50124, serverAddr, 7779, wireGuardMessage(1, 0x1234, 0));
+        for (long t = 100; t <= 3000; t += 100) {
+            addFrame(t, serverAddr, 7779, localAddr, 50124, new byte[100]);
+            addFrame(t + 10, localAddr, 50124, serverAddr, 7779, new byte[40]);
+        }
+        addFrame(3100, localAddr, 50125, serverAddr, 7779, new byte[40]);   // another connection
+
+        replay(CaptureEngine.Mode.DEDICATED_SERVER);
+
+        TrafficSnapshot traffic = traffics.get(0).snapshot();
+        assertThat(traffic.getPacketsIn(), equalTo(30L));
+        assertThat(traffic.getBytesIn(), equalTo(3000L));
+        assertThat(traffic.getPacketsOut(), equalTo(31L));
+        assertThat(traffic.getBytesOut(), equalTo(148L + 30 * 40));
+    }
+
+    @Test
+    public void whenExchangingGameTrafficWithHost_thenItIsCounted() throws Exception {
+        for (long t = 0; t <= 3000; t += 500) {
+            addFrame(t, localAddr, 50123, peerAddr1, 3478, new byte[56]);
+        }
+        for (long t = 100; t <= 3000; t += 100) {
+            addFrame(t, peerAddr1, 3478, localAddr, 50123, new byte[200]);
+            addFrame(t + 10, localAddr, 50123, peerAddr1, 3478, new byte[30]);
+        }
+
+        replay(CaptureEngine.Mode.P2P);
+
+        TrafficSnapshot traffic = traffics.get(0).snapshot();
+        assertThat(traffic.getPacketsIn(), equalTo(30L));
+        assertThat(traffic.getPacketsOut(), equalTo(7L + 30));
+    }
+
+    @Test
+    public void whenReplayingPeerRequests_thenP2pDisconnectsOnceAllPeersExpire() throws Exception {
+        for (long t = 0; t <= 3000; t += 500) {
+            addFrame(t, localAddr, 50123, peerAddr1, 3478, new byte[56]);
+        }
+        // the second peer keeps the match alive after the first one goes quiet
+        for (long t = 2000; t <= 12_000; t += 500) {
+            addFrame(t, localAddr, 50123, peerAddr2, 3478, new byte[56]);
+        }
+        addFrame(12_100, localAddr, 50123, peerAddr2, 3478, new byte[30]);   // not a STUN request
+
+        replay(CaptureEngine.Mode.P2P);
+
+        assertThat(events, equalTo(Arrays.asList("connect 0.0.0.0 at 0", "disconnect")));
+        assertThat(engine.getConnections().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void whenBothModesAreEnabled_thenEachDetectorSeesItsMatch() throws Exception {
+        for (long t = 0; t <= 3000; t += 500) {
+            addFrame(t, localAddr, 50123, peerAddr1, 3478, new byte[56]);
+        }
+        addFrame(20_000, localAddr, 50124, serverAddr, 7779, wireGuardMessage(1, 0x1234, 0));
+        for (long t = 20_100; t <= 23_000; t += 100) {
+            addFrame(t, serverAddr, 7779, localAddr, 50124, new byte[100]);
+        }
+
+        replay(CaptureEngine.Mode.P2P, CaptureEngine.Mode.DEDICATED_SERVER);
+
+        assertThat(events, equalTo(Arrays.asList(
+                "connect 0.0.0.0 at 0", "disconnect",
+                "connect 35.159.49.240 at 20000", "disconnect")));
+    }
+
+    private void replay(CaptureEngine.Mode... modes) throws Exception {
+        engine = new CaptureEngine(localAddr, new ReplaySource(), modes);
+        engine.addListener(new RecordingListener());
+        engine.start();
+    }
+
+
+    private void addFrame(long time, Inet4Address src, int srcPort, Inet4Address dst, int dstPort,
+                          byte[] payload) {
+        UdpPacket.Builder udp = new UdpPacket.Builder()
+                .srcPort(UdpPort.getInstance((short) srcPort))
+                .dstPort(UdpPort.getInstance((short) dstPort))
+                .srcAddr(src)
+                .dstAddr(dst)
+                .payloadBuilder(new UnknownPacket.Builder().rawData(payload))
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+        IpV4Packet.Builder ip = new IpV4Packet.Builder()
+                .version(IpVersion.IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .ttl((byte) 64)
+                .protocol(IpNumber.UDP)
+                .srcAddr(src)
+                .dstAddr(dst)
+                .payloadBuilder(udp)
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+
+        frames.add(ip.build().getRawData());
+        captureTimes.add((START_TIME + time) * 1000);
+    }
+
+    private static byte[] wireGuardMessage(int type, int senderIndex, int receiverIndex) {
+        byte[] payload = new byte[type == 1 ? 148 : 92];
+        payload[0] = (byte) type;
+        for (int i = 0; i < 4; i++) {
+            payload[4 + i] = (byte) (senderIndex >>> (24 - 8 * i));
+            payload[8 + i] = (byte) (receiverIndex >>> (24 - 8 * i));
+        }
+
+        return payload;
+    }
+
+    private static Inet4Address address(String addr) {
+        try {
+            return (Inet4Address) InetAddress.getByName(addr);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+
+    private final class RecordingListener implements SnifferListener {
+        @Override
+        public void notifyMatchConnect(Connection connection) {
+            events.add("connect " + connection.getRemoteAddr().getHostAddress()
+                    + " at " + (connection.getCreated() - START_TIME));
+            latencies.add(engine.getLatency());
+            traffics.add(engine.getTraffic());
+        }
+
+        @Override
+        public void notifyMatchDisconnect() {
+            events.add("disconnect");
+        }
+
+        @Override
+        public void handleException(Exception e) {
+            events.add("error " + e);
+        }
+    }
+
+    /**
+     * Replays the frames (raw IP) as fast as possible.
+     */
+    private final class ReplaySource implements CaptureSource {
+        private int current;
+
+        @Override
+        public int getLinkType() {
+            return PacketHeader.LINK_TYPE_RAW;
+        }
+
+        @Override
+        public void setFilter(String filterExpr) {
+        }
+
+        @Override
+        public void requestFilter(String filterExpr) {
+        }
+
+        @Override
+        public void run(RawPacketListener listener) {
+            for (current = 0; current < frames.size(); current++) {
+                listener.gotPacket(frames.get(current));
+            }
+        }
+
+        @Override
+        public long getCaptureTime() {
+            return captureTimes.get(current);
+        }
+
+        @Override
+        public boolean isLive() {
+            return false;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.lobby_simulator_companion.loop.service.DbdLogMonitor.Event.Type.KILLER_CHARACTER;
+import static net.lobby_simulator_companion.loop.service.DbdLogMonitor.Event.Type.MAP_GENERATE;
+import static net.lobby_simulator_companion.loop.service.DbdLogMonitor.Event.Type.MATCH_START;
+import static net.lobby_simulator_companion.loop.service.DbdLogMonitor.Event.Type.MATCH_WAIT;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class EventCoalescerUTest {
+
+    private final List<String> received = new ArrayList<>();
+    private final EventCoalescer coalescer = new EventCoalescer(
+            (type, time, killer, player, mapId, address, port) ->
+                    received.add(type + "@" + time + (killer != null ? ":" + killer : "")
+                            + (mapId != null ? ":" + mapId : "")));
+
+
+    @Test
+    public void whenDisabled_thenEveryEventIsPassedOn() {
+        coalescer.handleEvent(MATCH_WAIT, 1, null, null, null, null, 0);
+        coalescer.handleEvent(MATCH_WAIT, 2, null, null, null, null, 0);
+
+        assertThat(received, equalTo(Arrays.asList("MATCH_WAIT@1", "MATCH_WAIT@2")));
+    }
+
+    @Test
+    public void whenEnabled_thenRunsOfStateEventsAreMerged() {
+        coalescer.setEnabled(true);
+        coalescer.handleEvent(MATCH_WAIT, 1, null, null, null, null, 0);
+        coalescer.handleEvent(MATCH_WAIT, 2, null, null, null, null, 0);
+        coalescer.handleEvent(KILLER_CHARACTER, 3, Killer.NURSE, null, null, null, 0);
+        coalescer.handleEvent(KILLER_CHARACTER, 4, Killer.HAG, null, null, null, 0);
+        coalescer.handleEvent(MATCH_START, 5, null, null, null, null, 0);
+        coalescer.handleEvent(MAP_GENERATE, 6, null, null, "map1", null, 0);
+        coalescer.handleEvent(MAP_GENERATE, 7, null, null, "map2", null, 0);
+        assertThat(received.size(), equalTo(3));
+
+        coalescer.setEnabled(false);
+        assertThat(received, equalTo(Arrays.asList(
+                "MATCH_WAIT@1", "KILLER_CHARACTER@4:hag", "MATCH_START@5", "MAP_GENERATE@7:map2")));
+    }
+
+}
@@ -0,0 +1,49 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LatencyTrackerUTest {
+
+    private final LatencyTracker tracker = new LatencyTracker(4);
+
+
+    @Test
+    public void whenResponsesMatchRequests_thenSamplesAreTakenRegardlessOfOrder() {
+        tracker.requestSent(1, 10, 1_000_000);
+        tracker.requestSent(2, 20, 1_010_000);
+
+        assertThat(tracker.responseReceived(2, 20, 1_050_000), equalTo(true));
+        assertThat(tracker.responseReceived(1, 10, 1_070_000), equalTo(true));
+        assertThat(tracker.responseReceived(1, 10, 1_080_000), equalTo(false));   // duplicated
+        assertThat(tracker.responseReceived(3, 30, 1_090_000), equalTo(false));   // unknown
+
+        assertThat(tracker.getSampleCount(), equalTo(2L));
+        assertThat(tracker.getLastRtt(), equalTo(70_000L));
+        assertThat(tracker.getAverageRtt(), equalTo(55_000L));
+        assertThat(tracker.getJitter(), equalTo(30_000L));
+    }
+
+    @Test
+    public void whenRequestIsRetransmitted_thenItsResponseIsNotSampled() {
+        tracker.requestSent(1, 10, 1_000_000);
+        tracker.requestSent(1, 10, 1_500_000);
+
+        assertThat(tracker.responseReceived(1, 10, 1_520_000), equalTo(false));
+        assertThat(tracker.getLastRtt(), equalTo(LatencyTracker.NO_SAMPLE));
+    }
+
+    @Test
+    public void whenWindowIsFull_thenOldestSamplesAreDiscarded() {
+        for (long rtt : new long[]{900, 10, 20, 10, 20}) {
+            tracker.addSample(rtt);
+        }
+
+        assertThat(tracker.getSampleCount(), equalTo(5L));
+        assertThat(tracker.getAverageRtt(), equalTo(15L));
+        assertThat(tracker.getJitter(), equalTo(10L));
+    }
+
+}
@@ -0,0 +1,53 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LineClassifierUTest {
+
+    private final LineClassifier classifier = new LineClassifier.Builder()
+            .addRule("//Game/Maps/ProceduralLevel")
+            .addRule("ProceduralLevelGeneration: InitLevel: Theme: ")
+            .addRule("/api/v1/queue]", "Ready button updated : 1")
+            .addRule("/api/v1/queue/cancel]")
+            .build();
+
+
+    @Test
+    public void whenLineHasNoAnchors_thenNoRuleIsCandidate() {
+        assertThat(classify("[2020.06.11-18.24.15:123][ 42]LogNet: Some unrelated entry"), equalTo(0));
+        assertThat(classify(""), equalTo(0));
+    }
+
+    @Test
+    public void whenLineHasAnyOfTheRuleAnchors_thenRuleIsCandidate() {
+        assertThat(classify("--- REQUEST: [POST https://host/api/v1/queue] ---"), equalTo(0b0100));
+        assertThat(classify("[PartyContext] Ready button updated : 1"), equalTo(0b0100));
+        assertThat(classify("--- RESPONSE: code 200 [POST https://host/api/v1/queue/cancel] ---"), equalTo(0b1000));
+    }
+
+    @Test
+    public void whenAnchorsOverlap_thenAllRulesAreCandidates() {
+        assertThat(classify("Travel to //Game/Maps/ProceduralLevelGeneration: InitLevel: Theme: Hospital"),
+                equalTo(0b0011));
+    }
+
+    @Test
+    public void whenLineHasNonAsciiCharacters_thenAnchorsAreStillFound() {
+        assertThat(classify("\u00dcn\u00efc\u00f6d\u00e9 //Game/Maps/Procedural\u00e9Level"), equalTo(0));
+        assertThat(classify("\u00dcn\u00efc\u00f6d\u00e9 //Game/Maps/ProceduralLevel \u2713"), equalTo(0b0001));
+    }
+
+    private int classify(String line) {
+        int mask = classifier.classify(line);
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        assertThat(classifier.classify(bytes, 0, bytes.length), equalTo(mask));
+
+        return mask;
+    }
+
+}
@@ -0,0 +1,68 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+
+public class LogCheckpointUTest {
+
+    private File logFile;
+    private File checkpointFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("loop-test_", ".log");
+        checkpointFile = File.createTempFile("loop-test_", ".checkpoint");
+        checkpointFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        logFile.delete();
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void whenCheckpointIsSaved_thenItCanBeResumedAfterRestart() throws IOException {
+        write("Log file open, 06/11/20 18:24:15\nsome entry\n", false);
+        String fileId = LogCheckpoint.identify(logFile.toPath());
+        new LogCheckpoint(checkpointFile).save(fileId, 33);
+
+        write("another entry\n", true);
+        LogCheckpoint checkpoint = new LogCheckpoint(checkpointFile);
+
+        assertThat(LogCheckpoint.identify(logFile.toPath()), equalTo(fileId));
+        assertThat(checkpoint.getResumeOffset(fileId, logFile.length()), equalTo(33L));
+        assertThat(checkpoint.getResumeOffset(fileId, 20), equalTo(-1L));
+    }
+
+    @Test
+    public void whenLogIsRecreated_thenCheckpointDoesNotApply() throws IOException {
+        write("Log file open, 06/11/20 18:24:15\nsome entry\n", false);
+        String fileId = LogCheckpoint.identify(logFile.toPath());
+        new LogCheckpoint(checkpointFile).save(fileId, 33);
+
+        write("Log file open, 06/11/20 19:02:51\n", false);
+        String newFileId = LogCheckpoint.identify(logFile.toPath());
+
+        assertThat(newFileId, not(equalTo(fileId)));
+        assertThat(new LogCheckpoint(checkpointFile).getResumeOffset(newFileId, logFile.length()), equalTo(-1L));
+    }
+
+    private void write(String s, boolean append) throws IOException {
+        Files.write(logFile.toPath(), s.getBytes(StandardCharsets.UTF_8), StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+}
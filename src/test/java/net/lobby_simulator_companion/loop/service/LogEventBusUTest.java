@@ -0,0 +1,63 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LogEventBusUTest {
+
+    private final LogEventBus bus = new LogEventBus(4);
+    private final List<String> received = new ArrayList<>();
+
+
+    @Test
+    public void whenEventIsPublished_thenEverySubscriberReceivesItsPayload() {
+        List<String> otherReceived = new ArrayList<>();
+        bus.subscribe(Runnable::run, e -> received.add(e.getType() + ":" + e.getKiller()));
+        bus.subscribe(Runnable::run, e -> otherReceived.add(e.getType() + ":" + e.getKiller()));
+
+        bus.publish(DbdLogMonitor.Event.Type.KILLER_CHARACTER, 0, Killer.NURSE, null, null, null, 0);
+        bus.publish(DbdLogMonitor.Event.Type.MATCH_START, 0);
+
+        List<String> expected = Arrays.asList("KILLER_CHARACTER:nurse", "MATCH_START:null");
+        assertThat(received, equalTo(expected));
+        assertThat(otherReceived, equalTo(expected));
+    }
+
+    @Test
+    public void whenSubscriberIsBusy_thenPendingEventsAreDeliveredInOneTask() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        bus.subscribe(tasks::add, e -> received.add(e.getMapId()));
+
+        bus.publish(DbdLogMonitor.Event.Type.MAP_GENERATE, 0, null, null, "map1", null, 0);
+        bus.publish(DbdLogMonitor.Event.Type.MAP_GENERATE, 0, null, null, "map2", null, 0);
+        assertThat(tasks.size(), equalTo(1));
+
+        tasks.poll().run();
+        assertThat(received, equalTo(Arrays.asList("map1", "map2")));
+    }
+
+    @Test
+    public void whenSubscriberFallsBehindTheRing_thenOldestEventsAreDropped() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        LogEventBus.Subscription subscription = bus.subscribe(tasks::add, e -> received.add(e.getMapId()));
+
+        for (int i = 1; i <= 6; i++) {
+            bus.publish(DbdLogMonitor.Event.Type.MAP_GENERATE, 0, null, null, "map" + i, null, 0);
+        }
+        tasks.poll().run();
+
+        assertThat(received, equalTo(Arrays.asList("map3", "map4", "map5", "map6")));
+        assertThat(subscription.getDroppedCount(), equalTo(2L));
+        assertThat(bus.getPublishedCount(), equalTo(6L));
+    }
+
+}
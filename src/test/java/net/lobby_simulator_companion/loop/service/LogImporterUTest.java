@@ -0,0 +1,121 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Killer;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.stats.PeriodStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LogImporterUTest {
+
+    private static final String KILLER_STEAM_ID = "76561198961125794";
+
+    private final LogImporter importer = new LogImporter(ForkJoinPool.commonPool(), 60);
+    private Path logDir;
+
+
+    @Before
+    public void setUp() throws IOException {
+        logDir = Files.createTempDirectory("loop-test_");
+        writeLog("DeadByDaylight.log", "2020.06.12-20.00");
+        writeLog("DeadByDaylight-backup-2020.06.11-18.24.15.log", "2020.06.11-18.24");
+        Files.write(logDir.resolve("unrelated.txt"), Collections.singletonList("ignored"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (File file : logDir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(logDir);
+    }
+
+    @Test
+    public void whenImportingLogs_thenSessionsOfAllFilesAreMerged() throws IOException {
+        List<Path> logFiles = LogImporter.findLogs(logDir);
+        LogImporter.Result result = importer.importLogs(logFiles, Long.MAX_VALUE, null);
+
+        assertThat(result.getFiles(), equalTo(2));
+        assertThat(result.getLobbies(), equalTo(2));
+        assertThat(result.getMatches(), equalTo(2));
+
+        PeriodStats totals = result.getStatsByDay().values().stream()
+                .reduce((s1, s2) -> {
+                    s1.merge(s2);
+                    return s1;
+                }).get();
+        assertThat(result.getStatsByDay().size(), equalTo(2));
+        assertThat(totals.getSecondsQueued(), equalTo(2 * 30));
+        assertThat(totals.getSecondsWaited(), equalTo(2 * 90));
+        assertThat(totals.getSecondsPlayed(), equalTo(2 * 600));
+        assertThat(totals.getKillersStats().get(Killer.NURSE).getMatches(), equalTo(2));
+
+        Player killerPlayer = result.getPlayers().get(KILLER_STEAM_ID);
+        assertThat(killerPlayer.getTimesEncountered(), equalTo(2));
+        assertThat(killerPlayer.getMatchesPlayed(), equalTo(2));
+        assertThat(killerPlayer.getFirstSeen(), equalTo(epochMillis("2020.06.11-18.24") + 32_000));
+    }
+
+    @Test
+    public void whenActivityIsAfterCutoff_thenItIsIgnored() throws IOException {
+        long cutoffTime = epochMillis("2020.06.12-00.00");
+        LogImporter.Result result = importer.importLogs(
+                Arrays.asList(logDir.resolve("DeadByDaylight.log")), cutoffTime, null);
+
+        assertThat(result.getFiles(), equalTo(1));
+        assertThat(result.getLobbies(), equalTo(0));
+        assertThat(result.getPlayers().isEmpty(), equalTo(true));
+    }
+
+    /**
+     * Writes a log with a single session: 30 seconds in queue, 60 seconds in the lobby, and a 10-minute match.
+     */
+    private void writeLog(String fileName, String minute) throws IOException {
+        List<String> lines = Arrays.asList(
+                "Log file open, " + minute,
+                "[" + minute + ".00:000][  1]LogHttp: --- REQUEST: [POST https://host/api/v1/queue] ---",
+                "[" + minute + ".30:000][  2]LogNet: Browse: 1.2.3.4:7777//Game/Maps/OfflineLobby?UseDedicatedServer",
+                "[" + minute + ".31:000][  3]Mirrors: [FOnlineSessionMirrors::AddSessionPlayer] "
+                        + "Session:GameSession PlayerId:ab-cd-ef-1|" + KILLER_STEAM_ID,
+                "[" + minute + ".32:000][  4]LogCustomization: --> TN_Head01",
+                "[" + minute + ".59:000][  5]ProceduralLevelGeneration: InitLevel: Theme: Hospital Map: Hos_Treatment",
+                nextMinute(minute) + ".30:000][  6]LogLoad: LoadMap: //Game/Maps/ProceduralLevel",
+                nextMinute(minute, 11) + ".30:000][  7]LogHttp: PUT https://host/api/v1/softWallet/put/analytics",
+                nextMinute(minute, 12) + ".00:000][  8]LogOnline: FOnlineAsyncTaskMirrorsDestroyMatch");
+        Files.write(logDir.resolve(fileName), lines, StandardCharsets.UTF_8);
+    }
+
+    private static String nextMinute(String minute) {
+        return nextMinute(minute, 1);
+    }
+
+    private static String nextMinute(String minute, int minutes) {
+        int hour = Integer.parseInt(minute.substring(11, 13));
+        int min = Integer.parseInt(minute.substring(14, 16)) + minutes;
+
+        return String.format("[%s%02d.%02d", minute.substring(0, 11), hour + min / 60, min % 60);
+    }
+
+    private static long epochMillis(String minute) {
+        return LocalDateTime.of(Integer.parseInt(minute.substring(0, 4)), Integer.parseInt(minute.substring(5, 7)),
+                Integer.parseInt(minute.substring(8, 10)), Integer.parseInt(minute.substring(11, 13)),
+                Integer.parseInt(minute.substring(14, 16))).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+}
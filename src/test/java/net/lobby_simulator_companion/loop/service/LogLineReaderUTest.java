@@ -0,0 +1,92 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LogLineReaderUTest {
+
+    private final LineClassifier classifier = new LineClassifier.Builder()
+            .addRule("MATCH")
+            .build();
+
+    private final List<String> lines = new ArrayList<>();
+    private File logFile;
+    private FileOutputStream writer;
+    private FileChannel channel;
+    private LogLineReader reader;
+
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("loop-test_", ".log");
+        writer = new FileOutputStream(logFile);
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+        reader = new LogLineReader(classifier, (line, candidates) -> lines.add(line), 16);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        channel.close();
+        writer.close();
+        logFile.delete();
+    }
+
+    @Test
+    public void whenLinesDoNotMatchAnyRule_thenTheyAreNotHandled() throws IOException {
+        write("ignored\r\nMATCH 1\r\nignored too\nMATCH 2\n");
+        readAll();
+
+        assertThat(lines, equalTo(Arrays.asList("MATCH 1", "MATCH 2")));
+        assertThat(reader.getLinesRead(), equalTo(4L));
+    }
+
+    @Test
+    public void whenLastLineIsIncomplete_thenItIsHandledOnlyOnceTerminated() throws IOException {
+        write("MATCH 1\nMAT");
+        readAll();
+        assertThat(lines, equalTo(Collections.singletonList("MATCH 1")));
+        assertThat(reader.getLinePosition(), equalTo(8L));
+
+        write("CH 2");
+        readAll();
+        assertThat(lines, equalTo(Collections.singletonList("MATCH 1")));
+
+        write("\n");
+        readAll();
+        assertThat(lines, equalTo(Arrays.asList("MATCH 1", "MATCH 2")));
+    }
+
+    @Test
+    public void whenLineIsLongerThanBuffer_thenBufferGrows() throws IOException {
+        String longLine = "a long line with a MATCH that does not fit in the initial buffer";
+        write(longLine + "\n");
+        readAll();
+
+        assertThat(lines, equalTo(Collections.singletonList(longLine)));
+    }
+
+    private void readAll() throws IOException {
+        while (reader.read(channel) > 0) ;
+    }
+
+    private void write(String s) throws IOException {
+        writer.write(s.getBytes(StandardCharsets.UTF_8));
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,56 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LogMonitorMetricsUTest {
+
+    private final DbdLogParser parser = new DbdLogParser((type, time, killer, player, mapId, address, port) -> {
+    });
+    private final LogMonitorMetrics metrics = parser.getMetrics();
+
+
+    @Test
+    public void whenLinesAreParsed_thenCandidatesAndHitsAreCountedPerRule() {
+        handleLine("[2020.06.11-18.24.15:123][ 42]LogNet: Browse: 1.2.3.4:7777//Game/Maps/OfflineLobby?UseDedicatedServer");
+        handleLine("[2020.06.11-18.24.16:123][ 42]LogNet: Browse: //Game/Maps/SomethingElse");
+        handleLine("[2020.06.11-18.24.17:123][ 42]LogLoad: LoadMap: //Game/Maps/ProceduralLevel");
+
+        int serverConnectIdx = Arrays.asList(metrics.getRuleNames()).indexOf("server-connect");
+        int matchStartIdx = Arrays.asList(metrics.getRuleNames()).indexOf("match-start");
+        assertThat(metrics.getRuleCandidates()[serverConnectIdx], equalTo(2L));
+        assertThat(metrics.getRuleHits()[serverConnectIdx], equalTo(1L));
+        assertThat(metrics.getRuleCandidates()[matchStartIdx], equalTo(1L));
+        assertThat(metrics.getRuleHits()[matchStartIdx], equalTo(1L));
+        assertThat(metrics.getCandidateLines(), equalTo(3L));
+        assertThat(Arrays.stream(metrics.getLineNanosHistogram()).sum(), equalTo(3L));
+
+        metrics.reset();
+        assertThat(metrics.getCandidateLines(), equalTo(0L));
+        assertThat(metrics.getRuleHits()[serverConnectIdx], equalTo(0L));
+    }
+
+    @Test
+    public void whenTimesAreRecorded_thenTheyFallInTheirPowerOfTwoBucket() {
+        assertThat(LogMonitorMetrics.histogramBucket(0), equalTo(0));
+        assertThat(LogMonitorMetrics.histogramBucket(1), equalTo(1));
+        assertThat(LogMonitorMetrics.histogramBucket(1000), equalTo(10));
+        assertThat(LogMonitorMetrics.histogramBucket(1024), equalTo(11));
+        assertThat(LogMonitorMetrics.histogramBucket(Long.MAX_VALUE), equalTo(30));
+
+        metrics.recordCandidateLine(1000);
+        metrics.recordCandidateLine(1000);
+        metrics.recordCandidateLine(100_000);
+        assertThat(metrics.getLineNanosPercentile(0.5), equalTo(1024L));
+        assertThat(metrics.getLineNanosPercentile(0.99), equalTo(131_072L));
+    }
+
+    private void handleLine(String line) {
+        parser.handleLine(line, parser.getClassifier().classify(line));
+    }
+
+}
@@ -0,0 +1,37 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LogTimestampUTest {
+
+    @Test
+    public void whenLineHasTimestamp_thenItIsParsedAsUtc() {
+        long expected = LocalDateTime.of(2020, 6, 11, 18, 24, 15, 123_000_000).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        assertThat(LogTimestamp.parse("[2020.06.11-18.24.15:123][ 42]LogNet: Browse: 1.2.3.4", -1), equalTo(expected));
+    }
+
+    @Test
+    public void whenLineHasNoValidTimestamp_thenDefaultIsReturned() {
+        assertThat(LogTimestamp.parse("LogNet: continuation of a multi-line entry", -1), equalTo(-1L));
+        assertThat(LogTimestamp.parse("[2020.06.11-18.24.15:1x3][ 42]", -1), equalTo(-1L));
+        assertThat(LogTimestamp.parse("[2020.13.11-18.24.15:123][ 42]", -1), equalTo(-1L));
+        assertThat(LogTimestamp.parse("[2020.06.11", -1), equalTo(-1L));
+    }
+
+    @Test
+    public void whenConvertingDates_thenResultMatchesJavaTime() {
+        for (LocalDate date = LocalDate.of(1999, 12, 25); date.getYear() < 2030; date = date.plusDays(17)) {
+            assertThat(LogTimestamp.daysFromCivil(date.getYear(), date.getMonthValue(), date.getDayOfMonth()),
+                    equalTo(date.toEpochDay()));
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.config.AppProperties;
+import net.lobby_simulator_companion.loop.domain.LoopData;
+import net.lobby_simulator_companion.loop.domain.Player;
+import net.lobby_simulator_companion.loop.domain.stats.Stats;
+import net.lobby_simulator_companion.loop.repository.LoopRepository;
+import net.lobby_simulator_companion.loop.repository.PlayerRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LoopDataServiceUTest {
+
+    private File storageDir;
+    private AppProperties properties;
+    private LoopRepository repository;
+
+
+    @Before
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("loop-test_").toFile();
+        Properties properties = new Properties();
+        properties.setProperty("app.home", storageDir.getPath());
+        properties.setProperty("storage.file", "loop.dat");
+        properties.setProperty("storage.file.legacy", "loop.hosts.dat");
+        properties.setProperty("storage.read.encrypted", "true");
+        properties.setProperty("storage.write.encrypted", "true");
+        this.properties = new AppProperties(properties);
+        repository = new LoopRepository(this.properties);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : storageDir.listFiles()) {
+            file.delete();
+        }
+        storageDir.delete();
+    }
+
+    @Test
+    public void whenDataChangesAfterBeingSaved_thenTheSavedCopyIsNotAffected() throws IOException {
+        LoopDataService dataService = new LoopDataService(repository, new PlayerRepository(properties),
+                Runnable::run);
+        Player player = newPlayer("1", "alice");
+        dataService.addPlayer(player);
+        dataService.getStats().incrementLobbiesFound();
+        dataService.notifyChange();
+        dataService.save();
+
+        player.addName("alice2");
+        dataService.close();
+        LoopData loaded = repository.load();
+
+        assertThat(new PlayerRepository(properties).find("1").getNames().size(), equalTo(1));
+        assertThat(loaded.getStats().get(Stats.Period.GLOBAL).getLobbiesFound(), equalTo(1));
+    }
+
+    @Test
+    public void whenChangedPlayersAreEvicted_thenTheyAreWrittenAndReadBack() throws IOException {
+        PlayerRepository playerRepository = new PlayerRepository(properties);
+        LoopDataService dataService = new LoopDataService(repository, playerRepository, Runnable::run, 2);
+        for (int i = 1; i <= 5; i++) {
+            dataService.addPlayer(newPlayer(Integer.toString(i), "player" + i));
+        }
+
+        Player evictedPlayer = dataService.getPlayerBySteamId("1");
+        evictedPlayer.incrementTimesEncountered();
+        dataService.notifyChange(evictedPlayer);
+        dataService.close();
+
+        assertThat(evictedPlayer.getMostRecentName(), equalTo("player1"));
+        assertThat(playerRepository.size(), equalTo(5));
+        assertThat(playerRepository.find("1").getTimesEncountered(), equalTo(1));
+    }
+
+    @Test
+    public void whenDataHasPlayersFromOlderVersions_thenTheyAreMovedToThePlayerRepository() throws IOException {
+        LoopData legacyData = new LoopData();
+        Player legacyPlayer = new Player();
+        legacyPlayer.setUID("2");
+        legacyPlayer.addName("bob");
+        legacyData.addPlayers(Arrays.asList(newPlayer("1", "alice"), legacyPlayer));
+        repository.save(legacyData);
+
+        LoopDataService dataService = new LoopDataService(repository, new PlayerRepository(properties),
+                Runnable::run);
+
+        assertThat(dataService.getPlayerBySteamId("1").getMostRecentName(), equalTo("alice"));
+        assertThat(dataService.getPlayerBySteamId("2").getMostRecentName(), equalTo("bob"));
+        assertThat(repository.load().getPlayers().size(), equalTo(0));
+        dataService.close();
+    }
+
+
+    private static Player newPlayer(String steamId, String name) {
+        Player player = new Player();
+        player.setSteamId64(steamId);
+        player.addName(name);
+
+        return player;
+    }
+
+}
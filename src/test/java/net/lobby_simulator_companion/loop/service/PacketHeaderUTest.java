@@ -0,0 +1,131 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.IpV6Packet;
+import org.pcap4j.packet.IpV6SimpleFlowLabel;
+import org.pcap4j.packet.IpV6SimpleTrafficClass;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.EtherType;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.IpVersion;
+import org.pcap4j.packet.namednumber.UdpPort;
+import org.pcap4j.util.MacAddress;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class PacketHeaderUTest {
+
+    private final PacketHeader header = new PacketHeader();
+
+
+    @Test
+    public void whenFrameIsUdpOverIpV4_thenHeaderFieldsAreRead() throws UnknownHostException {
+        InetAddress src = InetAddress.getByName("192.168.1.10");
+        InetAddress dst = InetAddress.getByName("35.159.49.240");
+        UdpPacket.Builder udp = udp(src, 50124, dst, 7779, new byte[]{1, 0, 0, 0, 9});
+        IpV4Packet.Builder ip = new IpV4Packet.Builder()
+                .version(IpVersion.IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .ttl((byte) 64)
+                .protocol(IpNumber.UDP)
+                .srcAddr((Inet4Address) src)
+                .dstAddr((Inet4Address) dst)
+                .payloadBuilder(udp)
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+        byte[] frame = ethernet(ip, EtherType.IPV4).getRawData();
+
+        assertThat(header.parse(frame, PacketHeader.LINK_TYPE_ETHERNET), equalTo(true));
+        assertThat(header.getIpVersion(), equalTo(4));
+        assertThat(header.isUdp(), equalTo(true));
+        assertThat(header.isFrom(PacketHeader.addressHigh(src), PacketHeader.addressLow(src)), equalTo(true));
+        assertThat(header.isTo(PacketHeader.addressHigh(dst), PacketHeader.addressLow(dst)), equalTo(true));
+        assertThat(PacketHeader.toInetAddress(header.getDstAddrHigh(), header.getDstAddrLow()), equalTo(dst));
+        assertThat(header.getSrcPort(), equalTo(50124));
+        assertThat(header.getDstPort(), equalTo(7779));
+        assertThat(header.getPayloadLength(), equalTo(5));
+        assertThat(frame[header.getPayloadOffset() + 4], equalTo((byte) 9));
+    }
+
+    @Test
+    public void whenFrameIsUdpOverIpV6_thenHeaderFieldsAreRead() throws UnknownHostException {
+        InetAddress src = InetAddress.getByName("2001:db8::10");
+        InetAddress dst = InetAddress.getByName("2001:db8:ffff::1");
+        IpV6Packet.Builder ip = new IpV6Packet.Builder()
+                .version(IpVersion.IPV6)
+                .trafficClass(IpV6SimpleTrafficClass.newInstance((byte) 0))
+                .flowLabel(IpV6SimpleFlowLabel.newInstance(0))
+                .nextHeader(IpNumber.UDP)
+                .hopLimit((byte) 64)
+                .srcAddr((Inet6Address) src)
+                .dstAddr((Inet6Address) dst)
+                .payloadBuilder(udp(src, 3478, dst, 3479, new byte[56]))
+                .correctLengthAtBuild(true);
+        byte[] frame = ethernet(ip, EtherType.IPV6).getRawData();
+
+        assertThat(header.parse(frame, PacketHeader.LINK_TYPE_ETHERNET), equalTo(true));
+        assertThat(header.getIpVersion(), equalTo(6));
+        assertThat(header.isFrom(PacketHeader.addressHigh(src), PacketHeader.addressLow(src)), equalTo(true));
+        assertThat(PacketHeader.toInetAddress(header.getDstAddrHigh(), header.getDstAddrLow()), equalTo(dst));
+        assertThat(header.getPayloadLength(), equalTo(56));
+    }
+
+    @Test
+    public void whenFrameHasVlanTag_thenItIsSkipped() {
+        byte[] frame = new byte[14 + 4 + 20 + 8];
+        frame[12] = (byte) 0x81;                         // 802.1Q
+        frame[16] = 0x08;                                // IPv4
+        frame[18] = 0x45;
+        frame[18 + 9] = PacketHeader.PROTOCOL_UDP;
+        frame[18 + 20 + 1] = 53;                         // src port
+        frame[18 + 20 + 5] = 8;                          // UDP length (no payload)
+
+        assertThat(header.parse(frame, PacketHeader.LINK_TYPE_ETHERNET), equalTo(true));
+        assertThat(header.getSrcPort(), equalTo(53));
+        assertThat(header.getPayloadLength(), equalTo(0));
+    }
+
+    @Test
+    public void whenFrameIsTruncatedOrNotIp_thenItIsRejected() {
+        byte[] arp = new byte[42];
+        arp[12] = 0x08;
+        arp[13] = 0x06;
+
+        assertThat(header.parse(arp, PacketHeader.LINK_TYPE_ETHERNET), equalTo(false));
+        assertThat(header.parse(new byte[20], PacketHeader.LINK_TYPE_ETHERNET), equalTo(false));
+        assertThat(header.parse(new byte[0], PacketHeader.LINK_TYPE_RAW), equalTo(false));
+    }
+
+    private static UdpPacket.Builder udp(InetAddress src, int srcPort, InetAddress dst, int dstPort, byte[] payload) {
+        return new UdpPacket.Builder()
+                .srcPort(UdpPort.getInstance((short) srcPort))
+                .dstPort(UdpPort.getInstance((short) dstPort))
+                .srcAddr(src)
+                .dstAddr(dst)
+                .payloadBuilder(new UnknownPacket.Builder().rawData(payload))
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+    }
+
+    private static Packet ethernet(Packet.Builder payload, EtherType type) {
+        return new EthernetPacket.Builder()
+                .srcAddr(MacAddress.getByName("00:11:22:33:44:55"))
+                .dstAddr(MacAddress.getByName("66:77:88:99:aa:bb"))
+                .type(type)
+                .payloadBuilder(payload)
+                .paddingAtBuild(true)
+                .build();
+    }
+
+}
@@ -0,0 +1,73 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class PacketRingUTest {
+
+    private final PacketRing ring = new PacketRing(4);
+    private final List<Long> received = new ArrayList<>();
+
+
+    @Test
+    public void whenSlotsArePublished_thenTheyAreDrainedInOrder() {
+        offer(1);
+        offer(2);
+        ring.claim();   // claimed but never published
+
+        assertThat(ring.drain(slot -> received.add(slot.captureTime)), equalTo(2));
+        assertThat(received, equalTo(Arrays.asList(1L, 2L)));
+        assertThat(ring.getSize(), equalTo(0));
+        assertThat(ring.drain(slot -> received.add(slot.captureTime)), equalTo(0));
+    }
+
+    @Test
+    public void whenRingIsFull_thenPacketsAreDroppedUntilItIsDrained() {
+        for (int i = 1; i <= 6; i++) {
+            offer(i);
+        }
+
+        assertThat(ring.getSize(), equalTo(4));
+        assertThat(ring.getHighWaterMark(), equalTo(4));
+        assertThat(ring.getPublishedCount(), equalTo(4L));
+        assertThat(ring.getDroppedCount(), equalTo(2L));
+
+        ring.drain(slot -> received.add(slot.captureTime));
+        offer(7);
+        ring.drain(slot -> received.add(slot.captureTime));
+        assertThat(received, equalTo(Arrays.asList(1L, 2L, 3L, 4L, 7L)));
+    }
+
+    @Test
+    public void whenSlotIsParsed_thenPayloadPrefixIsRead() {
+        byte[] frame = new byte[14 + 20 + 8 + 4];
+        frame[12] = 0x08;                       // IPv4
+        frame[14] = 0x45;                       // version 4, header of 5 words
+        frame[14 + 3] = 20 + 8 + 4;             // total length
+        frame[14 + 9] = PacketHeader.PROTOCOL_UDP;
+        frame[14 + 20 + 5] = 8 + 4;             // UDP length
+        frame[14 + 20 + 8] = 0x01;
+
+        PacketRing.Slot slot = ring.claim();
+        assertThat(slot.parse(frame, PacketHeader.LINK_TYPE_ETHERNET), equalTo(true));
+        assertThat(slot.payloadPrefix, equalTo(0x01000000));
+
+        slot.parse(Arrays.copyOf(frame, frame.length - 2), PacketHeader.LINK_TYPE_ETHERNET);
+        assertThat(slot.payloadPrefix, equalTo(PacketRing.NO_PAYLOAD_PREFIX));
+    }
+
+    private void offer(long captureTime) {
+        PacketRing.Slot slot = ring.claim();
+        if (slot != null) {
+            slot.captureTime = captureTime;
+            ring.publish();
+        }
+    }
+
+}
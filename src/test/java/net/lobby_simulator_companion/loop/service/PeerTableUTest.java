@@ -0,0 +1,82 @@
+package net.lobby_simulator_companion.loop.service;
+
+import net.lobby_simulator_companion.loop.domain.Connection;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class PeerTableUTest {
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    private final PeerTable table = new PeerTable(8);
+
+
+    @Test
+    public void whenPeersAreInsertedAndRemoved_thenOnlyRemainingOnesAreFound() {
+        for (int ip = 1; ip <= 100; ip++) {
+            table.insert(0, IPV4_MAPPED_PREFIX | ip, 5000, 6000 + ip, ip);
+        }
+        for (int ip = 1; ip <= 100; ip += 2) {
+            table.remove(table.find(0, IPV4_MAPPED_PREFIX | ip));
+        }
+
+        assertThat(table.size(), equalTo(50));
+        for (int ip = 1; ip <= 100; ip++) {
+            assertThat(table.find(0, IPV4_MAPPED_PREFIX | ip) >= 0, equalTo(ip % 2 == 0));
+        }
+        assertThat(table.find(1, IPV4_MAPPED_PREFIX | 2), equalTo(-1));
+    }
+
+    @Test
+    public void whenPeersKeepChurning_thenTableDoesNotGrow() {
+        Random random = new Random(42);
+        long[] present = new long[16];
+
+        for (int i = 0; i < present.length; i++) {
+            present[i] = random.nextLong();
+            table.insert(present[i], 0, 1, 2, 0);
+        }
+        int capacity = table.capacity();
+
+        for (int i = 0; i < 100_000; i++) {
+            int k = random.nextInt(present.length);
+            table.remove(table.find(present[k], 0));
+            present[k] = random.nextLong();
+            table.insert(present[k], 0, 1, 2, 0);
+        }
+
+        assertThat(table.capacity(), equalTo(capacity));
+        assertThat(table.size(), equalTo(present.length));
+        for (long addr : present) {
+            assertThat(table.find(addr, 0) >= 0, equalTo(true));
+        }
+    }
+
+    @Test
+    public void whenTakingSnapshot_thenPeersAreCopiedAsConnections() throws UnknownHostException {
+        InetAddress localAddr = InetAddress.getByName("192.168.1.10");
+        InetAddress peerAddr = InetAddress.getByName("81.34.120.7");
+        int index = table.insert(PacketHeader.addressHigh(peerAddr), PacketHeader.addressLow(peerAddr),
+                50123, 3478, 1000);
+        table.touch(index, 2000);
+
+        List<Connection> connections = table.snapshot(localAddr);
+
+        assertThat(connections.size(), equalTo(1));
+        Connection connection = connections.get(0);
+        assertThat(connection.getLocalAddr(), equalTo(localAddr));
+        assertThat(connection.getLocalPort(), equalTo(50123));
+        assertThat(connection.getRemoteAddr(), equalTo(peerAddr));
+        assertThat(connection.getRemotePort(), equalTo(3478));
+        assertThat(connection.getCreated(), equalTo(1000L));
+        assertThat(connection.getLastSeen(), equalTo(2000L));
+    }
+
+}
@@ -0,0 +1,74 @@
+package net.lobby_simulator_companion.loop.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class TimingWheelUTest {
+
+    private long now = 1000;
+    private final TimingWheel wheel = new TimingWheel(10, 8, () -> now);
+    private final List<String> expired = new ArrayList<>();
+
+
+    @Test
+    public void whenDeadlineIsReached_thenTaskRunsWithinOneTick() {
+        wheel.newTimeout(50, () -> expired.add("a"));
+        wheel.newTimeout(200, () -> expired.add("b"));   // more than a whole turn of the wheel
+
+        advanceTo(1049);
+        assertThat(expired.isEmpty(), equalTo(true));
+
+        advanceTo(1059);
+        assertThat(expired, equalTo(Arrays.asList("a")));
+
+        advanceTo(1209);
+        assertThat(expired, equalTo(Arrays.asList("a", "b")));
+        assertThat(wheel.getTimeoutCount(), equalTo(0));
+    }
+
+    @Test
+    public void whenTimeoutIsRefreshed_thenDeadlineIsPushedBack() {
+        TimingWheel.Timeout timeout = wheel.newTimeout(50, () -> expired.add("a"));
+
+        advanceTo(1040);
+        assertThat(timeout.refresh(), equalTo(true));
+        advanceTo(1080);
+        assertThat(timeout.refresh(), equalTo(true));
+
+        advanceTo(1129);
+        assertThat(expired.isEmpty(), equalTo(true));
+
+        advanceTo(1139);
+        assertThat(expired, equalTo(Arrays.asList("a")));
+        assertThat(timeout.isExpired(), equalTo(true));
+        assertThat(timeout.refresh(), equalTo(false));
+    }
+
+    @Test
+    public void whenTimeoutIsCancelled_thenTaskDoesNotRun() {
+        TimingWheel.Timeout timeout = wheel.newTimeout(50, () -> expired.add("a"));
+        wheel.advance();
+        timeout.cancel();
+
+        advanceTo(2000);
+        assertThat(expired.isEmpty(), equalTo(true));
+        assertThat(wheel.getTimeoutCount(), equalTo(0));
+    }
+
+    /**
+     * Ticks the wheel every millisecond up to the given time, like its thread would.
+     */
+    private void advanceTo(long time) {
+        while (now < time) {
+            now++;
+            wheel.advance();
+        }
+    }
+
+}